@@ -0,0 +1,54 @@
+package org.orthomcl.data.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.orthomcl.data.common.layout.core.BlastScore;
+import org.orthomcl.data.common.layout.core.Group;
+
+/**
+ * The parsing of the scores of a JSON layout with BlastScore(JSONObject), for the scores of a group of 1000
+ * genes; about half of them have an evalue in each direction.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BlastScoreParseBenchmark {
+
+  private static final int GENE_COUNT = 1000;
+
+  private List<JSONObject> jsScores;
+
+  @Setup
+  public void setup() throws JSONException {
+    Group group = SyntheticData.createGroup(GENE_COUNT, SyntheticData.SEED);
+    jsScores = new ArrayList<>();
+    for (BlastScore score : group.getScores().values()) {
+      jsScores.add(score.toJSON());
+    }
+  }
+
+  @Benchmark
+  public void parse(Blackhole blackhole) throws JSONException {
+    for (JSONObject jsScore : jsScores) {
+      blackhole.consume(new BlastScore(jsScore));
+    }
+  }
+}
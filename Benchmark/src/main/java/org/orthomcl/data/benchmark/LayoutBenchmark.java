@@ -0,0 +1,57 @@
+package org.orthomcl.data.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.orthomcl.data.common.layout.core.Group;
+import org.orthomcl.data.common.layout.load.LayoutEngine;
+import org.orthomcl.data.common.layout.load.OrthoMCLDataException;
+import org.orthomcl.shared.model.layout.GraphicsException;
+import org.orthomcl.shared.model.layout.Layout;
+
+/**
+ * A full layout of synthetic groups from 10 to 2000 genes, with the SpringLayout of the shared model and the
+ * other layout engines. Each layout starts from the same random seed, so that it takes the same iterations in
+ * every run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LayoutBenchmark {
+
+  @Param({ "spring", "force", "barneshut" })
+  public String engine;
+
+  @Param({ "10", "50", "200", "1000", "2000" })
+  public int geneCount;
+
+  private LayoutEngine layoutEngine;
+  private Group group;
+
+  @Setup
+  public void setup() throws OrthoMCLDataException {
+    layoutEngine = LayoutEngine.fromName(engine);
+    group = SyntheticData.createGroup(geneCount, SyntheticData.SEED);
+  }
+
+  @Benchmark
+  public Group layout() throws GraphicsException {
+    Layout layout = layoutEngine.createLayout(group, new Random(SyntheticData.SEED));
+    layout.process(null);
+    return group;
+  }
+}
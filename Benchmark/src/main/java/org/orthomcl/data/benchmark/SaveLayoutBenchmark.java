@@ -0,0 +1,51 @@
+package org.orthomcl.data.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.orthomcl.data.common.layout.core.Group;
+import org.orthomcl.data.common.layout.load.LayoutFormat;
+import org.orthomcl.data.common.layout.load.OrthoMCLDataException;
+
+/**
+ * The serialization of a laid out group in each layout format, which is what GroupFactory.saveLayout() does
+ * before the layout is inserted; the insert itself needs the database, and is left out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SaveLayoutBenchmark {
+
+  @Param({ "json", "binary", "deflate" })
+  public String format;
+
+  @Param({ "100", "1000" })
+  public int geneCount;
+
+  private LayoutFormat layoutFormat;
+  private Group group;
+
+  @Setup
+  public void setup() throws OrthoMCLDataException {
+    layoutFormat = LayoutFormat.fromName(format);
+    group = SyntheticData.createGroup(geneCount, SyntheticData.SEED);
+  }
+
+  @Benchmark
+  public String encode() {
+    return layoutFormat.encode(group);
+  }
+}
@@ -0,0 +1,86 @@
+package org.orthomcl.data.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.orthomcl.data.common.layout.core.BlastScore;
+import org.orthomcl.data.common.layout.core.Gene;
+import org.orthomcl.data.common.layout.core.Group;
+import org.orthomcl.data.common.layout.core.LogEvalue;
+
+/**
+ * The ingestion of the loaded genes and blast scores into a group, as in GroupFactory.loadGroupDetail(),
+ * either including the merge of the scores in both directions, or from the rows already merged by the
+ * database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScoreIngestionBenchmark {
+
+  @Param({ "100", "1000", "5000" })
+  public int geneCount;
+
+  private SyntheticData.ScoreRows rows;
+  private BlastScore[] merged;
+  private float[] mergedMants;
+  private int[] mergedExps;
+
+  @Setup
+  public void setup() {
+    rows = new SyntheticData.ScoreRows(geneCount, SyntheticData.SEED);
+
+    // the rows the database returns when it merges the scores, with the two evalues of each pair
+    merged = addBlastScore().getScores().values().toArray(new BlastScore[0]);
+    mergedMants = new float[merged.length * 2];
+    mergedExps = new int[merged.length * 2];
+    for (int i = 0; i < merged.length; i++) {
+      mergedMants[2 * i] = LogEvalue.getMant(merged[i].getLogEvalue());
+      mergedExps[2 * i] = LogEvalue.getExp(merged[i].getLogEvalue());
+      mergedMants[2 * i + 1] = LogEvalue.getMant(merged[i].getLogEvalue2());
+      mergedExps[2 * i + 1] = LogEvalue.getExp(merged[i].getLogEvalue2());
+    }
+  }
+
+  @Benchmark
+  public Group addBlastScore() {
+    Group group = new Group(1, "OG_BENCHMARK");
+    for (String geneId : rows.geneIds) {
+      group.addGene(new Gene(geneId));
+    }
+    for (int i = 0; i < rows.queryIds.length; i++) {
+      BlastScore score = new BlastScore(rows.queryIds[i], rows.subjectIds[i], rows.mants[i], rows.exps[i]);
+      score.setGroup(group);
+      group.addBlastScore(score);
+    }
+    return group;
+  }
+
+  @Benchmark
+  public Group addMergedBlastScore() {
+    Group group = new Group(1, "OG_BENCHMARK");
+    for (String geneId : rows.geneIds) {
+      group.addGene(new Gene(geneId));
+    }
+    for (int i = 0; i < merged.length; i++) {
+      BlastScore score = new BlastScore(merged[i].getQueryId(), merged[i].getSubjectId(), mergedMants[2 * i],
+          mergedExps[2 * i], mergedMants[2 * i + 1], mergedExps[2 * i + 1]);
+      score.setGroup(group);
+      group.addMergedBlastScore(score);
+    }
+    return group;
+  }
+}
@@ -0,0 +1,81 @@
+package org.orthomcl.data.benchmark;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apidb.orthomcl.load.plugin.SimilarityParser;
+import org.apidb.orthomcl.load.plugin.SimilarityParser.Segment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The similarity file parsing and the HSP segment merge of the UpdateSimilarityPlugin, on a synthetic file of
+ * 1000 queries with 20 subjects each; the pairs are counted instead of updated in the database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SimilarityParserBenchmark {
+
+  private static final int QUERY_COUNT = 1000;
+  private static final int SUBJECTS_PER_QUERY = 20;
+  private static final int SEGMENT_LISTS = 10000;
+
+  private List<String> lines;
+  private Map<String, Integer> lengths;
+  private Segment[][] segments;
+
+  @Setup
+  public void setup() {
+    lengths = new HashMap<>();
+    lines = SyntheticData.createSimilarityLines(QUERY_COUNT, SUBJECTS_PER_QUERY, SyntheticData.SEED, lengths);
+
+    Random random = new Random(SyntheticData.SEED);
+    segments = new Segment[SEGMENT_LISTS][];
+    for (int i = 0; i < SEGMENT_LISTS; i++) {
+      segments[i] = new Segment[2 + random.nextInt(6)];
+      for (int j = 0; j < segments[i].length; j++) {
+        segments[i][j] = new Segment(1 + random.nextInt(1000), 20 + random.nextInt(300));
+      }
+    }
+  }
+
+  @Benchmark
+  public int parse() throws SQLException {
+    int[] count = new int[1];
+    SimilarityParser parser = new SimilarityParser(lengths, (queryId, subjectId, matchLength) -> count[0]++);
+    for (String line : lines) {
+      parser.parseLine(line);
+    }
+    parser.finish();
+    return count[0];
+  }
+
+  /**
+   * Each list is copied from the unsorted segments first, since the merge sorts the list in place.
+   */
+  @Benchmark
+  public void mergeSegments(Blackhole blackhole) {
+    for (Segment[] list : segments) {
+      blackhole.consume(SimilarityParser.getNonOverlapLength(new ArrayList<>(Arrays.asList(list))));
+    }
+  }
+}
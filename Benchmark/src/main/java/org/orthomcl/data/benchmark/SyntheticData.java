@@ -0,0 +1,133 @@
+package org.orthomcl.data.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.orthomcl.data.common.layout.core.BlastScore;
+import org.orthomcl.data.common.layout.core.EdgeType;
+import org.orthomcl.data.common.layout.core.Gene;
+import org.orthomcl.data.common.layout.core.Group;
+
+/**
+ * Generates the synthetic groups, scores and similarity files of the benchmarks. All the data comes from a
+ * random generator with a fixed seed, so that the benchmarks see the same data in every run.
+ */
+final class SyntheticData {
+
+  static final long SEED = 20160721L;
+
+  /**
+   * The average number of scores of each gene, about what the groups of a few hundred members have.
+   */
+  static final int SCORES_PER_GENE = 5;
+
+  private SyntheticData() {}
+
+  static String getGeneId(int index) {
+    return "pfal|PF3D7_" + (100000 + index);
+  }
+
+  /**
+   * The loaded rows of the blast scores of a group: the query and subject of each row, and its evalue. About
+   * half of the pairs also have a row in the other direction, as in SimilarSequencesGroupCore.
+   */
+  static class ScoreRows {
+
+    final String[] geneIds;
+    final String[] queryIds;
+    final String[] subjectIds;
+    final float[] mants;
+    final int[] exps;
+
+    ScoreRows(int geneCount, long seed) {
+      Random random = new Random(seed);
+      geneIds = new String[geneCount];
+      for (int i = 0; i < geneCount; i++) {
+        geneIds[i] = getGeneId(i);
+      }
+      List<String[]> pairs = new ArrayList<>();
+      for (int i = 0; i < geneCount * SCORES_PER_GENE; i++) {
+        int a = random.nextInt(geneCount), b = random.nextInt(geneCount);
+        if (a == b)
+          continue;
+        pairs.add(new String[] { geneIds[a], geneIds[b] });
+        if (random.nextBoolean())
+          pairs.add(new String[] { geneIds[b], geneIds[a] });
+      }
+      int count = pairs.size();
+      queryIds = new String[count];
+      subjectIds = new String[count];
+      mants = new float[count];
+      exps = new int[count];
+      for (int i = 0; i < count; i++) {
+        queryIds[i] = pairs.get(i)[0];
+        subjectIds[i] = pairs.get(i)[1];
+        mants[i] = 1 + random.nextInt(90) / 10F;
+        exps[i] = -random.nextInt(180);
+      }
+    }
+  }
+
+  /**
+   * @return a group with the given number of genes at random positions, and their scores, with random edge
+   *         types.
+   */
+  static Group createGroup(int geneCount, long seed) {
+    ScoreRows rows = new ScoreRows(geneCount, seed);
+    Random random = new Random(seed);
+    Group group = new Group(1, "OG_BENCHMARK");
+    for (String geneId : rows.geneIds) {
+      Gene gene = new Gene(geneId);
+      gene.getPoint().setLocation(random.nextDouble() * 800, random.nextDouble() * 800);
+      group.addGene(gene);
+    }
+    EdgeType[] types = EdgeType.values();
+    for (int i = 0; i < rows.queryIds.length; i++) {
+      BlastScore score = new BlastScore(rows.queryIds[i], rows.subjectIds[i]);
+      score.setEvalue(rows.mants[i], rows.exps[i]);
+      score.setGroup(group);
+      group.addBlastScore(score);
+    }
+    for (BlastScore score : group.getScores().values()) {
+      score.setType(types[random.nextInt(types.length)]);
+    }
+    return group;
+  }
+
+  /**
+   * @return the lines of a blast similarity file, in the format read by the UpdateSimilarityPlugin; the
+   *         length of each sequence is put into the given map.
+   */
+  static List<String> createSimilarityLines(int queryCount, int subjectsPerQuery, long seed,
+      Map<String, Integer> lengths) {
+    Random random = new Random(seed);
+    int sequenceCount = queryCount * 2;
+    for (int i = 0; i < sequenceCount; i++) {
+      lengths.put(Integer.toString(100000 + i), 100 + random.nextInt(1500));
+    }
+
+    List<String> lines = new ArrayList<>();
+    for (int q = 0; q < queryCount; q++) {
+      String queryId = Integer.toString(100000 + q);
+      lines.add(">" + queryId + " (" + subjectsPerQuery + " subjects)");
+      for (int s = 0; s < subjectsPerQuery; s++) {
+        String subjectId = Integer.toString(100000 + random.nextInt(sequenceCount));
+        int hspCount = 1 + random.nextInt(4);
+        int queryLength = lengths.get(queryId), subjectLength = lengths.get(subjectId);
+        lines.add("Sum: " + subjectId + ":533:e-150:1:" + subjectLength + ":1:" + queryLength + ":" + hspCount +
+            ":" + queryLength + ":277:0:0:");
+        for (int h = 1; h <= hspCount; h++) {
+          int queryStart = 1 + random.nextInt(queryLength), queryEnd = Math.min(queryLength, queryStart +
+              random.nextInt(400));
+          int subjectStart = 1 + random.nextInt(subjectLength), subjectEnd = Math.min(subjectLength, subjectStart +
+              random.nextInt(400));
+          lines.add("HSP" + h + ": " + subjectId + ":63:122:239:96:4e-19:" + subjectStart + ":" + subjectEnd + ":" +
+              queryStart + ":" + queryEnd + ":0:");
+        }
+      }
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,273 @@
+package org.orthomcl.data.common.layout.core;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.orthomcl.shared.model.layout.Vector;
+
+/**
+ * A compact, versioned binary encoding of a group layout, as an alternative to the JSON layout. The layout
+ * column is a CLOB, so the bytes are stored Base64 encoded, after a {@link #PREFIX} that tells them apart
+ * from a JSON layout; the readers that only parse JSON rely on the layout_format column instead, see
+ * {@link org.orthomcl.data.common.layout.load.LayoutFormat}.
+ * 
+ * Version 1 of the encoding is a version byte, a flags byte, and the payload, which is deflated if the
+ * {@link #FLAG_DEFLATE} flag is set. All the integers in the payload are varints, and signed ones are zigzag
+ * encoded:
+ * 
+ * <pre>
+ * gene count
+ *   for each gene: length of the UTF-8 source id, source id bytes, x * 100, y * 100
+ * edge count
+ * edge codes, two per byte: the low 3 bits are the edge type, the 4th bit is set if the edge has a second
+ *   evalue
+ *   for each edge: query gene index, subject gene index, log10(evalue) * 1000, and if the second evalue
+ *   differs, log10(evalue2) * 1000
+ * </pre>
+ * 
+ * The coordinates keep the 2 decimals of the JSON layout; the evalues keep about 3 significant digits.
+ */
+public class BinaryLayout {
+
+  public static final String PREFIX = "BL";
+
+  public static final int VERSION = 1;
+
+  public static final int FLAG_DEFLATE = 1;
+
+  private static final double COORDINATE_SCALE = 100;
+  private static final double LOG_EVALUE_SCALE = 1000;
+
+  private static final int TYPE_MASK = 0x7;
+  private static final int SECOND_EVALUE = 0x8;
+
+  /**
+   * The edge type codes of version 1; the order must not change.
+   */
+  private static final EdgeType[] TYPES = { EdgeType.Ortholog, EdgeType.Coortholog, EdgeType.Inparalog,
+      EdgeType.PeripheralCore, EdgeType.PeripheralPeripheral, EdgeType.Normal };
+
+  public static boolean isBinary(String layout) {
+    return layout.startsWith(PREFIX);
+  }
+
+  /**
+   * @return true if the payload of the binary layout is deflated, as read from its flags byte.
+   */
+  public static boolean isDeflated(String layout) {
+    // the first 4 Base64 characters hold the version and flags bytes
+    byte[] header = Base64.getDecoder().decode(layout.substring(PREFIX.length(), PREFIX.length() + 4));
+    return (header[1] & FLAG_DEFLATE) != 0;
+  }
+
+  public static String encode(Group group, boolean deflate) {
+    Writer writer = new Writer();
+
+    // output genes, in the order of their indices
+    writer.writeVarint(group.getGenes().size());
+    for (Gene gene : group.getGenes().values()) {
+      byte[] sourceId = gene.getSourceId().getBytes(StandardCharsets.UTF_8);
+      writer.writeVarint(sourceId.length);
+      writer.write(sourceId, 0, sourceId.length);
+      writer.writeSigned(Math.round(gene.getPoint().x * COORDINATE_SCALE));
+      writer.writeSigned(Math.round(gene.getPoint().y * COORDINATE_SCALE));
+    }
+
+    // output the edge codes, then the scores
+    int scoreCount = group.getScores().size();
+    long[] evalues = new long[scoreCount * 2];
+    byte[] codes = new byte[(scoreCount + 1) / 2];
+    int i = 0;
+    for (BlastScore score : group.getScores().values()) {
+      long evalue = evalues[2 * i] = toLogEvalue(score.getLogEvalue());
+      long evalue2 = evalues[2 * i + 1] = toLogEvalue(score.getLogEvalue2());
+      int code = typeCode(score.getType());
+      if (evalue2 != evalue)
+        code |= SECOND_EVALUE;
+      codes[i / 2] |= (i % 2 == 0) ? code : code << 4;
+      i++;
+    }
+    writer.writeVarint(scoreCount);
+    writer.write(codes, 0, codes.length);
+    i = 0;
+    for (BlastScore score : group.getScores().values()) {
+      writer.writeVarint(score.getQueryIndex());
+      writer.writeVarint(score.getSubjectIndex());
+      writer.writeSigned(evalues[2 * i]);
+      if (evalues[2 * i + 1] != evalues[2 * i])
+        writer.writeSigned(evalues[2 * i + 1]);
+      i++;
+    }
+
+    byte[] payload = writer.toByteArray();
+    int flags = 0;
+    if (deflate) {
+      payload = deflate(payload);
+      flags |= FLAG_DEFLATE;
+    }
+
+    byte[] bytes = new byte[payload.length + 2];
+    bytes[0] = VERSION;
+    bytes[1] = (byte) flags;
+    System.arraycopy(payload, 0, bytes, 2, payload.length);
+    return PREFIX + Base64.getEncoder().encodeToString(bytes);
+  }
+
+  /**
+   * Decode the layout into the given group, which should have no genes or scores yet.
+   */
+  public static void decode(String layout, Group group) {
+    if (!isBinary(layout))
+      throw new IllegalArgumentException("Not a binary layout: " + group.getName());
+    byte[] bytes = Base64.getDecoder().decode(layout.substring(PREFIX.length()));
+    if (bytes[0] != VERSION)
+      throw new IllegalArgumentException("Unsupported binary layout version " + bytes[0] + ": " + group.getName());
+
+    byte[] payload = Arrays.copyOfRange(bytes, 2, bytes.length);
+    if ((bytes[1] & FLAG_DEFLATE) != 0)
+      payload = inflate(payload);
+    Reader reader = new Reader(payload);
+
+    // read genes
+    int geneCount = (int) reader.readVarint();
+    Gene[] genes = new Gene[geneCount];
+    for (int i = 0; i < geneCount; i++) {
+      String sourceId = reader.readString((int) reader.readVarint());
+      Gene gene = new Gene(sourceId);
+      Vector point = gene.getPoint();
+      point.x = reader.readSigned() / COORDINATE_SCALE;
+      point.y = reader.readSigned() / COORDINATE_SCALE;
+      genes[i] = gene;
+      group.addGene(gene);
+    }
+
+    // read the edge codes, then the scores
+    int scoreCount = (int) reader.readVarint();
+    byte[] codes = reader.readBytes((scoreCount + 1) / 2);
+    for (int i = 0; i < scoreCount; i++) {
+      int code = ((i % 2 == 0) ? codes[i / 2] : codes[i / 2] >> 4) & 0xF;
+      Gene query = genes[(int) reader.readVarint()];
+      Gene subject = genes[(int) reader.readVarint()];
+      BlastScore score = new BlastScore(query.getSourceId(), subject.getSourceId());
+      long evalue = reader.readSigned();
+      long evalue2 = ((code & SECOND_EVALUE) != 0) ? reader.readSigned() : evalue;
+      setEvalue(score, evalue, evalue2);
+      score.setType(TYPES[code & TYPE_MASK]);
+      score.setGroup(group);
+      group.putBlastScore(score);
+    }
+  }
+
+  private static void setEvalue(BlastScore score, long evalue, long evalue2) {
+    score.setLogEvalue(evalue / LOG_EVALUE_SCALE);
+    if (evalue2 != evalue)
+      score.setLogEvalue2(evalue2 / LOG_EVALUE_SCALE);
+  }
+
+  private static long toLogEvalue(double logEvalue) {
+    return Math.round(logEvalue * LOG_EVALUE_SCALE);
+  }
+
+  private static int typeCode(EdgeType type) {
+    for (int i = 0; i < TYPES.length; i++) {
+      if (TYPES[i] == type)
+        return i;
+    }
+    throw new IllegalArgumentException("Unknown edge type: " + type);
+  }
+
+  private static byte[] deflate(byte[] data) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    deflater.setInput(data);
+    deflater.finish();
+    ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2 + 16);
+    byte[] buffer = new byte[4096];
+    while (!deflater.finished()) {
+      int count = deflater.deflate(buffer);
+      output.write(buffer, 0, count);
+    }
+    deflater.end();
+    return output.toByteArray();
+  }
+
+  private static byte[] inflate(byte[] data) {
+    Inflater inflater = new Inflater();
+    inflater.setInput(data);
+    ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 3);
+    byte[] buffer = new byte[4096];
+    try {
+      while (!inflater.finished()) {
+        int count = inflater.inflate(buffer);
+        if (count == 0 && inflater.needsInput())
+          throw new IllegalArgumentException("Truncated binary layout.");
+        output.write(buffer, 0, count);
+      }
+    }
+    catch (DataFormatException ex) {
+      throw new IllegalArgumentException(ex);
+    }
+    finally {
+      inflater.end();
+    }
+    return output.toByteArray();
+  }
+
+  private static class Writer extends ByteArrayOutputStream {
+
+    public void writeVarint(long value) {
+      while ((value & ~0x7FL) != 0) {
+        write((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      write((int) value);
+    }
+
+    public void writeSigned(long value) {
+      writeVarint((value << 1) ^ (value >> 63));
+    }
+  }
+
+  private static class Reader {
+
+    private final byte[] data;
+    private int position;
+
+    public Reader(byte[] data) {
+      this.data = data;
+    }
+
+    public long readVarint() {
+      long value = 0;
+      int shift = 0;
+      while (true) {
+        byte b = data[position++];
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0)
+          return value;
+        shift += 7;
+      }
+    }
+
+    public long readSigned() {
+      long value = readVarint();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    public byte[] readBytes(int length) {
+      byte[] value = Arrays.copyOfRange(data, position, position + length);
+      position += length;
+      return value;
+    }
+
+    public String readString(int length) {
+      String value = new String(data, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return value;
+    }
+  }
+}
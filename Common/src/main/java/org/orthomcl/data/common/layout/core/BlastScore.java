@@ -7,34 +7,49 @@ import org.json.JSONObject;
 import org.orthomcl.shared.model.layout.Edge;
 import org.orthomcl.shared.model.layout.Node;
 
+/**
+ * The blast score of a pair of genes. The evalue is kept as its log10, see {@link LogEvalue}, once for each
+ * direction; if the score was only loaded in one direction, both are the same. The preferred length of the
+ * score is computed from the two.
+ */
 public class BlastScore extends GenePair implements Edge {
 
   private static final DecimalFormat FORMAT = new DecimalFormat("0.00");
 
-  private static final String EVALUE_DIVIDER = "/";
+  private static final char EVALUE_DIVIDER = '/';
 
   private Group group;
-  private float evalueMant;
-  private int evalueExp;
-  private float evalueMant2;
-  private int evalueExp2;
-  private double preferredLength;
+  private int queryIndex;
+  private int subjectIndex;
+  private double logEvalue;
+  private double logEvalue2;
   private EdgeType type = EdgeType.Normal;
 
   public BlastScore(String queryId, String subjectId) {
     super(queryId, subjectId);
   }
 
+  public BlastScore(String queryId, String subjectId, float evalueMant, int evalueExp) {
+    super(queryId, subjectId);
+    setEvalue(evalueMant, evalueExp);
+  }
+
+  /**
+   * Create the score of a pair merged from both directions; the second evalue is from subject to query.
+   */
+  public BlastScore(String queryId, String subjectId, float evalueMant, int evalueExp, float evalueMant2,
+      int evalueExp2) {
+    this(queryId, subjectId, evalueMant, evalueExp);
+    setEvalue2(evalueMant2, evalueExp2);
+  }
+
   public BlastScore(JSONObject jsScore) throws JSONException {
     this(jsScore.getString("Q"), jsScore.getString("S"));
-    String[] evalues = jsScore.getString("E").split(EVALUE_DIVIDER);
-    String[] evalue = evalues[0].split("[eE]");
-    evalueMant= evalueMant2 = Float.valueOf(evalue[0]);
-    evalueExp = evalueExp2 = Integer.valueOf(evalue[1]);
-    if (evalues.length == 2) {
-      String[] evalue2 = evalues[1].split("[eE]");
-      evalueMant2 = Float.valueOf(evalue2[0]);
-      evalueExp2 = Integer.valueOf(evalue2[1]);
+    try {
+      setEvalue(jsScore.getString("E"));
+    }
+    catch (NumberFormatException ex) {
+      throw new JSONException(ex);
     }
   }
 
@@ -53,56 +68,111 @@ public class BlastScore extends GenePair implements Edge {
     this.group = group;
   }
 
-  public float getEvalueMant() {
-    return evalueMant;
+  /**
+   * @return the index of the query gene in the group; set when the score is added to the group.
+   */
+  public int getQueryIndex() {
+    return queryIndex;
+  }
+
+  /**
+   * @return the index of the subject gene in the group; set when the score is added to the group.
+   */
+  public int getSubjectIndex() {
+    return subjectIndex;
   }
 
-  public void setEvalueMant(float evalueMant) {
-    if (evalueMant == 0)
-      evalueMant = 1;
-    this.evalueMant = this.evalueMant2 = evalueMant;
+  void setIndices(int queryIndex, int subjectIndex) {
+    this.queryIndex = queryIndex;
+    this.subjectIndex = subjectIndex;
   }
 
-  public int getEvalueExp() {
-    return evalueExp;
+  /**
+   * @return the log10 of the evalue.
+   */
+  public double getLogEvalue() {
+    return logEvalue;
   }
 
   /**
-   * @param evalueExp
-   *          the evalueExp to set
+   * @return the log10 of the evalue in the other direction; same as {@link #getLogEvalue()} if there is only
+   *         one direction.
    */
-  public void setEvalueExp(int evalueExp) {
-    this.evalueExp = this.evalueExp2 = evalueExp;
+  public double getLogEvalue2() {
+    return logEvalue2;
+  }
+
+  /**
+   * Set the evalue of both directions.
+   */
+  public void setLogEvalue(double logEvalue) {
+    this.logEvalue = this.logEvalue2 = logEvalue;
+  }
+
+  public void setLogEvalue2(double logEvalue2) {
+    this.logEvalue2 = logEvalue2;
   }
 
+  /**
+   * Set the evalue of both directions.
+   */
   public void setEvalue(float mant, int exp) {
-    if (mant == 0)
-      mant = 1;
-    this.evalueMant = this.evalueMant2 = mant;
-    this.evalueExp = this.evalueExp2 = exp;
+    setLogEvalue(LogEvalue.valueOf(mant, exp));
   }
 
   public void setEvalue2(float mant, int exp) {
-    if (mant == 0)
-      mant = 1;
-    this.evalueMant2 = mant;
-    this.evalueExp2 = exp;
+    setLogEvalue2(LogEvalue.valueOf(mant, exp));
+  }
+
+  /**
+   * Set the evalues from their text, as returned by {@link #getEvalue()}.
+   * 
+   * @throws NumberFormatException
+   *           if the text is not an evalue.
+   */
+  public void setEvalue(String evalue) {
+    int divider = evalue.indexOf(EVALUE_DIVIDER);
+    if (divider < 0) {
+      setLogEvalue(LogEvalue.parse(evalue));
+    }
+    else {
+      logEvalue = LogEvalue.parse(evalue, 0, divider);
+      logEvalue2 = LogEvalue.parse(evalue, divider + 1, evalue.length());
+    }
+  }
+
+  /**
+   * @return true if the evalue of the other direction differs.
+   */
+  public boolean hasEvalue2() {
+    return logEvalue2 != logEvalue;
   }
 
   public String getEvalue() {
-    String evalue = evalueMant + "E" + evalueExp;
-    if (evalueMant != evalueMant2 || evalueExp != evalueExp2)
-      evalue += EVALUE_DIVIDER + evalueMant2 + "E" + evalueExp2;
-    return evalue;
+    StringBuilder evalue = new StringBuilder(32);
+    appendEvalue(evalue);
+    return evalue.toString();
   }
 
-  @Override
-  public double getPreferredLength() {
-    return preferredLength;
+  /**
+   * Append the evalue, followed by the evalue of the other direction if it differs, such as
+   * "2.0E-30/1.5E-29".
+   */
+  public void appendEvalue(StringBuilder out) {
+    LogEvalue.append(logEvalue, out);
+    if (hasEvalue2()) {
+      out.append(EVALUE_DIVIDER);
+      LogEvalue.append(logEvalue2, out);
+    }
   }
 
-  public void setPreferredLength(double preferredLength) {
-    this.preferredLength = preferredLength;
+  /**
+   * @return the preferred length from the average log10 of the evalues of the two directions: the lower the
+   *         evalue, the shorter the edge.
+   */
+  @Override
+  public double getPreferredLength() {
+    return Group.MAX_PREFERRED_LENGTH + (logEvalue + logEvalue2) / 2;
   }
 
   public EdgeType getType() {
@@ -134,6 +204,6 @@ public class BlastScore extends GenePair implements Edge {
 
   @Override
   public String toString() {
-    return type.getCode() + " E=" + getEvalue() + " PL=" + FORMAT.format(preferredLength);
+    return type.getCode() + " E=" + getEvalue() + " PL=" + FORMAT.format(getPreferredLength());
   }
 }
@@ -12,4 +12,12 @@ public enum EdgeType {
   public String getCode() {
     return code;
   }
+
+  public static EdgeType fromCode(String code) {
+    for (EdgeType type : values()) {
+      if (type.code.equals(code))
+        return type;
+    }
+    throw new IllegalArgumentException("Unknown edge type code: " + code);
+  }
 }
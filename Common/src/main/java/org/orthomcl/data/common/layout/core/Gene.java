@@ -15,6 +15,8 @@ public class Gene implements Node {
   private final Vector point;
   
   private int taxonId;
+  private int groupId;
+  private int index;
 
   public Gene(String sourceId) {
     this.sourceId = sourceId;
@@ -42,6 +44,36 @@ public class Gene implements Node {
     this.taxonId = taxonId;
   }
 
+  /**
+   * @return the id of the group the gene is loaded for; only set when the gene is loaded for a batch of
+   *         groups.
+   */
+  public int getGroupId() {
+    return groupId;
+  }
+
+  /**
+   * @param groupId the groupId to set
+   */
+  public void setGroupId(int groupId) {
+    this.groupId = groupId;
+  }
+
+  /**
+   * @return the index of the gene in its group, which is the order the gene was added to the group in; the
+   *         serialized layouts also refer to the genes by this index.
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  /**
+   * @param index the index to set
+   */
+  void setIndex(int index) {
+    this.index = index;
+  }
+
   @Override
   public Vector getPoint() {
     return point;
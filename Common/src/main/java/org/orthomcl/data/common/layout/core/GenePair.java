@@ -1,36 +1,42 @@
 package org.orthomcl.data.common.layout.core;
 
+/**
+ * A pair of genes by their source ids. The pairs are not used as keys; the scores of a group are looked up by
+ * the indices of their genes, in the {@link ScoreMap} of the group.
+ */
 public class GenePair {
 
   protected final String queryId;
   protected final String subjectId;
 
+  private int groupId;
+
   public GenePair(String queryId, String subjectId) {
     this.queryId = queryId;
     this.subjectId = subjectId;
   }
 
-  public String getQueryId() {
-    return queryId;
+  /**
+   * @return the id of the group the pair is loaded for; only set when the pair is loaded for a batch of
+   *         groups.
+   */
+  public int getGroupId() {
+    return groupId;
   }
 
-  public String getSubjectId() {
-    return subjectId;
+  /**
+   * @param groupId
+   *          the groupId to set
+   */
+  public void setGroupId(int groupId) {
+    this.groupId = groupId;
   }
 
-  @Override
-  public int hashCode() {
-    return queryId.hashCode() ^ subjectId.hashCode();
+  public String getQueryId() {
+    return queryId;
   }
 
-  @Override
-  public boolean equals(Object obj) {
-    if (obj != null && obj instanceof GenePair) {
-      GenePair pair = (GenePair) obj;
-      return (queryId.equals(pair.queryId) && subjectId.equals(pair.subjectId)) ||
-          (queryId.equals(pair.subjectId) && subjectId.equals(pair.queryId));
-    }
-    else
-      return false;
+  public String getSubjectId() {
+    return subjectId;
   }
 }
@@ -1,7 +1,6 @@
 package org.orthomcl.data.common.layout.core;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -23,15 +22,21 @@ public class Group implements Graph {
   private final int id;
   private final String name;
   private final Map<String, Gene> genes;
-  private final Map<GenePair, BlastScore> scores;
+  private final ScoreMap scores;
 
   private String layout;
+  private String layoutFormat;
+  private int memberCount;
+  private int edgeCount;
+  private String fingerprint;
+  private String storedFingerprint;
+  private String previousLayout;
 
   public Group(int id, String name) {
     this.id = id;
     this.name = name;
-    this.genes = new HashMap<>();
-    this.scores = new HashMap<>();
+    this.genes = new LinkedHashMap<>();
+    this.scores = new ScoreMap();
   }
 
   public Group(JSONObject jsGroup) throws JSONException {
@@ -41,18 +46,15 @@ public class Group implements Graph {
     genes = new LinkedHashMap<>();
     JSONArray jsGenes = jsGroup.getJSONArray("genes");
     for (int i = 0; i < jsGenes.length(); i++) {
-      JSONObject jsGene = jsGenes.getJSONObject(i);
-      Gene gene = new Gene(jsGene);
-      genes.put(gene.getSourceId(), gene);
+      addGene(new Gene(jsGenes.getJSONObject(i)));
     }
 
-    scores = new LinkedHashMap<GenePair, BlastScore>();
+    scores = new ScoreMap();
     JSONArray jsScores = jsGroup.getJSONArray("scores");
     for (int i = 0; i < jsScores.length(); i++) {
-      JSONObject jsScore = jsScores.getJSONObject(i);
-      BlastScore score = new BlastScore(jsScore);
+      BlastScore score = new BlastScore(jsScores.getJSONObject(i));
       score.setGroup(this);
-      scores.put(score, score);
+      putBlastScore(score);
     }
   }
 
@@ -67,11 +69,106 @@ public class Group implements Graph {
     return name;
   }
 
+  /**
+   * @return the number of members, as recorded in the group table; only set when the groups are loaded for
+   *         layout generation.
+   */
+  public int getMemberCount() {
+    return memberCount;
+  }
+
+  /**
+   * @param memberCount
+   *          the memberCount to set
+   */
+  public void setMemberCount(int memberCount) {
+    this.memberCount = memberCount;
+  }
+
+  /**
+   * @return the number of blast scores of the group; only set when the groups are loaded for layout
+   *         generation.
+   */
+  public int getEdgeCount() {
+    return edgeCount;
+  }
+
+  /**
+   * @param edgeCount
+   *          the edgeCount to set
+   */
+  public void setEdgeCount(int edgeCount) {
+    this.edgeCount = edgeCount;
+  }
+
+  /**
+   * @return the fingerprint of the current content of the group, or null if it is not computed.
+   */
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * @param fingerprint
+   *          the fingerprint to set
+   */
+  public void setFingerprint(String fingerprint) {
+    this.fingerprint = fingerprint;
+  }
+
+  /**
+   * @return the fingerprint stored with the existing layout of the group, or null if the group has no
+   *         layout, or the layout has no fingerprint.
+   */
+  public String getStoredFingerprint() {
+    return storedFingerprint;
+  }
+
+  /**
+   * @param storedFingerprint
+   *          the storedFingerprint to set
+   */
+  public void setStoredFingerprint(String storedFingerprint) {
+    this.storedFingerprint = storedFingerprint;
+  }
+
+  /**
+   * @return the stored layout of the group, loaded to warm-start the new layout; or null if the layout is
+   *         cold-started.
+   */
+  public String getPreviousLayout() {
+    return previousLayout;
+  }
+
+  /**
+   * @param previousLayout
+   *          the previousLayout to set
+   */
+  public void setPreviousLayout(String previousLayout) {
+    this.previousLayout = previousLayout;
+  }
+
   @Override
   public double getMaxPreferredLength() {
     return MAX_PREFERRED_LENGTH;
   }
 
+  /**
+   * @return the value of the layout_format column to store with the layout: null for a JSON layout, or the
+   *         name of its binary format.
+   */
+  public String getLayoutFormat() {
+    return layoutFormat;
+  }
+
+  /**
+   * @param layoutFormat
+   *          the layoutFormat to set
+   */
+  public void setLayoutFormat(String layoutFormat) {
+    this.layoutFormat = layoutFormat;
+  }
+
   /**
    * @return the layout
    */
@@ -87,14 +184,29 @@ public class Group implements Graph {
     this.layout = layout;
   }
 
+  /**
+   * @return the genes of the group, in the order of their indices.
+   */
   public Map<String, Gene> getGenes() {
     return genes;
   }
 
-  public Map<GenePair, BlastScore> getScores() {
+  public ScoreMap getScores() {
     return scores;
   }
 
+  /**
+   * @return the score between the given genes, in either direction, or null if there is none, or either gene
+   *         is not in the group.
+   */
+  public BlastScore getScore(String queryId, String subjectId) {
+    Gene query = genes.get(queryId);
+    Gene subject = genes.get(subjectId);
+    if (query == null || subject == null)
+      return null;
+    return scores.get(query.getIndex(), subject.getIndex());
+  }
+
   public JSONObject toJSON() throws JSONException {
     JSONObject json = new JSONObject();
     json.put("id", id);
@@ -125,22 +237,76 @@ public class Group implements Graph {
     return genes.values();
   }
 
+  /**
+   * Remove the genes and scores of the group, so that they can be loaded again, or discarded after use.
+   */
+  public void clearDetails() {
+    genes.clear();
+    scores.clear();
+  }
+
+  /**
+   * Add the gene, and intern its source id to the next index of the group; a gene with the same source id as
+   * an existing gene replaces it, and takes over its index.
+   */
   public void addGene(Gene gene) {
+    Gene oldGene = genes.get(gene.getSourceId());
+    gene.setIndex((oldGene == null) ? genes.size() : oldGene.getIndex());
     genes.put(gene.getSourceId(), gene);
   }
 
-  public void addBlastScore(BlastScore score) {
-    // convert evalue into preferred length.
-    double length = getMaxPreferredLength() + (Math.log10(score.getEvalueMant()) + score.getEvalueExp());
-    if (scores.containsKey(score)) { // duplicate score, compute the average log(evalue) as weight
-      BlastScore oldScore = scores.get(score);
-      oldScore.setPreferredLength((oldScore.getPreferredLength() + length) / 2);
-      oldScore.setEvalue2(score.getEvalueMant(), score.getEvalueExp());
-    }
-    else { // new score, compute log(evalue) as weight
-      score.setPreferredLength(length);
-      scores.put(score, score);
-    }
+  /**
+   * Add a loaded score; the genes of the score must have been added. If the pair already has a score in the
+   * other direction, the evalue of this one is kept as its second evalue, so that its preferred length is
+   * from the average log(evalue) of the two.
+   * 
+   * @return false if a gene of the score is not in the group, then the score is not added.
+   */
+  public boolean addBlastScore(BlastScore score) {
+    if (!resolve(score))
+      return false;
+    BlastScore oldScore = scores.putIfAbsent(score);
+    if (oldScore != null) // duplicate score
+      oldScore.setLogEvalue2(score.getLogEvalue());
+    return true;
+  }
+
+  /**
+   * Add a score that already carries the evalues of both directions, such as the ones merged by the
+   * database; the genes of the score must have been added, and the pair must not have a score yet.
+   * 
+   * @return false if a gene of the score is not in the group, then the score is not added.
+   */
+  public boolean addMergedBlastScore(BlastScore score) {
+    if (!resolve(score))
+      return false;
+    scores.put(score);
+    return true;
+  }
+
+  /**
+   * Add a decoded score as it is, replacing the score of the same pair, if any; the genes of the score must
+   * have been added.
+   */
+  public void putBlastScore(BlastScore score) {
+    if (!resolve(score))
+      throw new IllegalArgumentException("The blast score between '" + score.getQueryId() + "' and '" +
+          score.getSubjectId() + "' refers to a gene not in group " + name);
+    scores.put(score);
+  }
+
+  /**
+   * Look up the genes of the score, once, and keep their indices in the score.
+   * 
+   * @return false if a gene of the score is not in the group.
+   */
+  private boolean resolve(BlastScore score) {
+    Gene query = genes.get(score.getQueryId());
+    Gene subject = genes.get(score.getSubjectId());
+    if (query == null || subject == null)
+      return false;
+    score.setIndices(query.getIndex(), subject.getIndex());
+    return true;
   }
   
   @Override
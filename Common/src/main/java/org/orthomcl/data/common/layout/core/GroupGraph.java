@@ -0,0 +1,187 @@
+package org.orthomcl.data.common.layout.core;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.orthomcl.shared.model.layout.Edge;
+import org.orthomcl.shared.model.layout.Graph;
+import org.orthomcl.shared.model.layout.Node;
+import org.orthomcl.shared.model.layout.Vector;
+
+/**
+ * The int-indexed view of the graph of a group: its nodes are the genes, and its edges are the scores.
+ *
+ * The genes and scores are numbered when the view is created. The positions of the genes are copied into
+ * the coordinate arrays, and are only written back to the genes by {@link #store()}.
+ *
+ * The nodes and edges take the indices the genes and scores have in the group. The view is not updated when
+ * the group changes; the scores of a gene with itself are left out.
+ *
+ * The view is also a {@link Graph}, for the engines of the shared model such as the
+ * {@link org.orthomcl.shared.model.layout.SpringLayout}: its nodes are the genes, which own their points, and
+ * its edges are created once over the edge arrays, so that the nodes of an edge are looked up by index
+ * rather than by the source ids of the score. An engine working on the graph moves the genes directly; the
+ * coordinate arrays are only for the engines working on the arrays.
+ */
+public class GroupGraph extends IndexGraph implements Graph {
+
+  /**
+   * @return the scores of the group, except the ones of a gene with itself, in the order of their indices.
+   */
+  private static BlastScore[] getEdgeScores(Group group) {
+    BlastScore[] scores = new BlastScore[group.getScores().size()];
+    int count = 0;
+    for (BlastScore score : group.getScores().values()) {
+      if (score.getQueryIndex() != score.getSubjectIndex())
+        scores[count++] = score;
+    }
+    return (count == scores.length) ? scores : Arrays.copyOf(scores, count);
+  }
+
+  private static int[] getQueryIndices(BlastScore[] scores) {
+    int[] indices = new int[scores.length];
+    for (int e = 0; e < scores.length; e++) {
+      indices[e] = scores[e].getQueryIndex();
+    }
+    return indices;
+  }
+
+  private static int[] getSubjectIndices(BlastScore[] scores) {
+    int[] indices = new int[scores.length];
+    for (int e = 0; e < scores.length; e++) {
+      indices[e] = scores[e].getSubjectIndex();
+    }
+    return indices;
+  }
+
+  private static float[] getLengths(BlastScore[] scores) {
+    float[] lengths = new float[scores.length];
+    for (int e = 0; e < scores.length; e++) {
+      lengths[e] = (float) scores[e].getPreferredLength();
+    }
+    return lengths;
+  }
+
+  private final Gene[] genes;
+  private final BlastScore[] scores;
+  private final List<Gene> nodes;
+  private final List<IndexEdge> edges;
+
+  public GroupGraph(Group group) {
+    this(group, group.getGenes().values().toArray(new Gene[0]), getEdgeScores(group));
+  }
+
+  private GroupGraph(Group group, Gene[] genes, BlastScore[] scores) {
+    // the scores already have the indices of their genes
+    super(group, genes.length, getQueryIndices(scores), getSubjectIndices(scores), getLengths(scores));
+    this.genes = genes;
+    this.scores = scores;
+    this.nodes = Collections.unmodifiableList(Arrays.asList(genes));
+    this.edges = new EdgeList();
+
+    // the genes are iterated in the order of their indices; copy their positions
+    double[] x = getX(), y = getY();
+    for (int i = 0; i < genes.length; i++) {
+      x[i] = genes[i].getPoint().x;
+      y[i] = genes[i].getPoint().y;
+    }
+  }
+
+  public Gene getGene(int node) {
+    return genes[node];
+  }
+
+  public BlastScore getScore(int edge) {
+    return scores[edge];
+  }
+
+  /**
+   * Write the coordinates back to the genes of the group.
+   */
+  @Override
+  public void store() {
+    double[] x = getX(), y = getY();
+    for (int i = 0; i < genes.length; i++) {
+      Vector point = genes[i].getPoint();
+      point.x = x[i];
+      point.y = y[i];
+    }
+  }
+
+  /**
+   * @return the genes, in the order of their indices.
+   */
+  @Override
+  public List<Gene> getNodes() {
+    return nodes;
+  }
+
+  /**
+   * @return the edges, in the order of their indices.
+   */
+  @Override
+  public List<IndexEdge> getEdges() {
+    return edges;
+  }
+
+  private class EdgeList extends AbstractList<IndexEdge> {
+
+    private final IndexEdge[] edges = new IndexEdge[getEdgeCount()];
+
+    @Override
+    public IndexEdge get(int index) {
+      IndexEdge edge = edges[index];
+      if (edge == null) {
+        edge = new IndexEdge(index);
+        edges[index] = edge;
+      }
+      return edge;
+    }
+
+    @Override
+    public int size() {
+      return edges.length;
+    }
+  }
+
+  /**
+   * An edge of the view, between the genes at the indices of its score.
+   */
+  public class IndexEdge implements Edge {
+
+    private final int index;
+
+    private IndexEdge(int index) {
+      this.index = index;
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    public BlastScore getScore() {
+      return scores[index];
+    }
+
+    @Override
+    public Node getNodeA() {
+      return genes[getEdgeA()[index]];
+    }
+
+    @Override
+    public Node getNodeB() {
+      return genes[getEdgeB()[index]];
+    }
+
+    /**
+     * @return the preferred length of the score, at full precision, so that the engines of the shared model
+     *         lay out the view the same as the group.
+     */
+    @Override
+    public double getPreferredLength() {
+      return scores[index].getPreferredLength();
+    }
+  }
+}
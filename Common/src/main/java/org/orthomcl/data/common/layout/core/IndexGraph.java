@@ -0,0 +1,151 @@
+package org.orthomcl.data.common.layout.core;
+
+import java.util.Arrays;
+
+/**
+ * An int-indexed graph, for the layout engines to iterate over flat arrays instead of looking up the genes of
+ * each score in the maps of a group.
+ *
+ * The positions of the nodes are kept in the parallel coordinate arrays. Each edge has the indices of its two
+ * nodes and a preferred length. The adjacency is stored in the compressed sparse row (CSR) format: the
+ * neighbours of node i are at neighbours[offsets[i]] up to neighbours[offsets[i + 1] - 1], and the edge
+ * connecting node i to each of them is at the same position of the neighbour edges.
+ *
+ * The nodes of an index graph need not be genes: see {@link GroupGraph} for the view of a group, whose nodes
+ * and edges are its genes and scores.
+ */
+public class IndexGraph {
+
+  private final Group group;
+  private final double[] x;
+  private final double[] y;
+  private final int[] edgeA;
+  private final int[] edgeB;
+  private final float[] lengths;
+  private final int[] offsets;
+  private final int[] neighbours;
+  private final int[] neighbourEdges;
+
+  /**
+   * Create a graph whose nodes are at the origin.
+   *
+   * @param group
+   *          the group the graph is laid out for.
+   * @param nodeCount
+   *          the number of nodes of the graph.
+   * @param edgeA
+   *          the index of the first node of each edge.
+   * @param edgeB
+   *          the index of the second node of each edge.
+   * @param lengths
+   *          the preferred length of each edge.
+   */
+  public IndexGraph(Group group, int nodeCount, int[] edgeA, int[] edgeB, float[] lengths) {
+    this.group = group;
+    this.x = new double[nodeCount];
+    this.y = new double[nodeCount];
+    this.edgeA = edgeA;
+    this.edgeB = edgeB;
+    this.lengths = lengths;
+
+    // count the degrees, then fill in the neighbours of each node from its offset
+    int edgeCount = edgeA.length;
+    offsets = new int[nodeCount + 1];
+    for (int e = 0; e < edgeCount; e++) {
+      offsets[edgeA[e] + 1]++;
+      offsets[edgeB[e] + 1]++;
+    }
+    for (int i = 0; i < nodeCount; i++) {
+      offsets[i + 1] += offsets[i];
+    }
+    neighbours = new int[edgeCount * 2];
+    neighbourEdges = new int[edgeCount * 2];
+    int[] next = Arrays.copyOf(offsets, nodeCount);
+    for (int e = 0; e < edgeCount; e++) {
+      int a = edgeA[e], b = edgeB[e];
+      neighbours[next[a]] = b;
+      neighbourEdges[next[a]++] = e;
+      neighbours[next[b]] = a;
+      neighbourEdges[next[b]++] = e;
+    }
+  }
+
+  public Group getGroup() {
+    return group;
+  }
+
+  public int getNodeCount() {
+    return x.length;
+  }
+
+  public int getEdgeCount() {
+    return edgeA.length;
+  }
+
+  /**
+   * @return the x coordinates of the nodes, which the layout engines update in place.
+   */
+  public double[] getX() {
+    return x;
+  }
+
+  /**
+   * @return the y coordinates of the nodes, which the layout engines update in place.
+   */
+  public double[] getY() {
+    return y;
+  }
+
+  /**
+   * @return the index of the first node of each edge.
+   */
+  public int[] getEdgeA() {
+    return edgeA;
+  }
+
+  /**
+   * @return the index of the second node of each edge.
+   */
+  public int[] getEdgeB() {
+    return edgeB;
+  }
+
+  /**
+   * @return the preferred length of each edge.
+   */
+  public float[] getLengths() {
+    return lengths;
+  }
+
+  /**
+   * @return the start of the neighbours of each node, followed by the total number of neighbours.
+   */
+  public int[] getOffsets() {
+    return offsets;
+  }
+
+  public int[] getNeighbours() {
+    return neighbours;
+  }
+
+  /**
+   * @return the index of the edge to each neighbour, in the same order as the neighbours.
+   */
+  public int[] getNeighbourEdges() {
+    return neighbourEdges;
+  }
+
+  public int getDegree(int node) {
+    return offsets[node + 1] - offsets[node];
+  }
+
+  /**
+   * Write the coordinates back to whatever the nodes stand for; the nodes of a plain index graph have nowhere
+   * to write them to.
+   */
+  public void store() {}
+
+  public double getMaxPreferredLength() {
+    return group.getMaxPreferredLength();
+  }
+}
@@ -0,0 +1,147 @@
+package org.orthomcl.data.common.layout.core;
+
+/**
+ * The evalue of a blast score as one primitive, the log10 of the evalue, which is what the preferred length
+ * of the score is computed from. The evalues are loaded as a mantissa and an exponent, and written into the
+ * layouts in the text form of {@link BlastScore#getEvalue()}: the mantissa as a float, then 'E' and the
+ * exponent, such as "2.5E-30".
+ * 
+ * The text is parsed and formatted without allocating: the mantissa is formatted with the fewest digits that
+ * parse back to the same float, and the mantissa is normalized into [1, 10), so that a loaded mantissa of
+ * 0.003 with an exponent of 0 is written as "3.0E-3".
+ */
+public final class LogEvalue {
+
+  private static final long[] POWERS_OF_TEN = { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+      100000000L, 1000000000L, 10000000000L, 100000000000L, 1000000000000L, 10000000000000L,
+      100000000000000L, 1000000000000000L, 10000000000000000L, 100000000000000000L, 1000000000000000000L };
+
+  /**
+   * The max number of significant digits of a float.
+   */
+  private static final int MAX_DIGITS = 9;
+
+  private LogEvalue() {}
+
+  /**
+   * @return the log10 of the evalue; a mantissa of 0 is taken as 1, as the evalue 0 is stored as 0E0.
+   */
+  public static double valueOf(float mant, int exp) {
+    if (mant == 0)
+      mant = 1;
+    return Math.log10(mant) + exp;
+  }
+
+  /**
+   * @return the exponent of the normalized evalue.
+   */
+  public static int getExp(double log) {
+    int exp = (int) Math.floor(log);
+    return ((float) Math.pow(10, log - exp) >= 10) ? exp + 1 : exp;
+  }
+
+  /**
+   * @return the mantissa of the normalized evalue, between 1 and 10.
+   */
+  public static float getMant(double log) {
+    return getMant(log, getExp(log));
+  }
+
+  private static float getMant(double log, int exp) {
+    return (float) Math.pow(10, log - exp);
+  }
+
+  /**
+   * Parse the text of an evalue, such as "2.5E-30"; the exponent may be left out.
+   * 
+   * @return the log10 of the evalue.
+   */
+  public static double parse(CharSequence text, int start, int end) {
+    long digits = 0;
+    int digitCount = 0;
+    int decimals = -1;
+    int i = start;
+    for (; i < end; i++) {
+      char c = text.charAt(i);
+      if (c == '.' && decimals < 0) {
+        decimals = 0;
+        continue;
+      }
+      if (c < '0' || c > '9')
+        break;
+      if (++digitCount == POWERS_OF_TEN.length)
+        throw new NumberFormatException("Too many digits in the evalue: " + text.subSequence(start, end));
+      digits = digits * 10 + (c - '0');
+      if (decimals >= 0)
+        decimals++;
+    }
+    if (digitCount == 0)
+      throw new NumberFormatException("Invalid evalue: " + text.subSequence(start, end));
+    float mant = (decimals > 0) ? (float) ((double) digits / POWERS_OF_TEN[decimals]) : (float) digits;
+
+    int exp = 0;
+    if (i < end) {
+      char c = text.charAt(i++);
+      if (c != 'E' && c != 'e')
+        throw new NumberFormatException("Invalid evalue: " + text.subSequence(start, end));
+      boolean negative = false;
+      if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+'))
+        negative = text.charAt(i++) == '-';
+      if (i == end)
+        throw new NumberFormatException("Invalid evalue: " + text.subSequence(start, end));
+      for (; i < end; i++) {
+        c = text.charAt(i);
+        if (c < '0' || c > '9' || exp > 100000)
+          throw new NumberFormatException("Invalid evalue: " + text.subSequence(start, end));
+        exp = exp * 10 + (c - '0');
+      }
+      if (negative)
+        exp = -exp;
+    }
+    return valueOf(mant, exp);
+  }
+
+  public static double parse(CharSequence text) {
+    return parse(text, 0, text.length());
+  }
+
+  /**
+   * Append the text of the evalue, such as "2.5E-30".
+   */
+  public static void append(double log, StringBuilder out) {
+    int exp = getExp(log);
+    float mant = getMant(log, exp);
+    appendMant(mant, out);
+    out.append('E').append(exp);
+  }
+
+  public static String toString(double log) {
+    StringBuilder out = new StringBuilder(16);
+    append(log, out);
+    return out.toString();
+  }
+
+  /**
+   * Append the mantissa with the fewest decimals that parse back to the same float, and at least one, as
+   * {@link Float#toString(float)} prints a mantissa between 1 and 10; a tie is rounded to the even digit.
+   */
+  private static void appendMant(float mant, StringBuilder out) {
+    long digits = (long) Math.rint(mant);
+    int decimals = 0;
+    while (decimals < MAX_DIGITS - 1 && (float) ((double) digits / POWERS_OF_TEN[decimals]) != mant) {
+      decimals++;
+      digits = (long) Math.rint(mant * (double) POWERS_OF_TEN[decimals]);
+    }
+    if (decimals == 0) {
+      out.append(digits).append(".0");
+      return;
+    }
+    long scale = POWERS_OF_TEN[decimals];
+    out.append(digits / scale).append('.');
+    long fraction = digits % scale;
+    for (long s = scale / 10; s > fraction && s > 1; s /= 10) {
+      out.append('0');
+    }
+    out.append(fraction);
+  }
+}
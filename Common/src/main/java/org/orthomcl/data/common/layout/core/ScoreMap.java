@@ -0,0 +1,168 @@
+package org.orthomcl.data.common.layout.core;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The blast scores of a group, keyed by the unordered pair of the indices of their genes in the group, so that
+ * a score is found with one probe of a long key instead of hashing and comparing the gene ids.
+ *
+ * The key of a pair is the smaller index in the high 32 bits and the larger one in the low 32 bits, so that
+ * (a, b) and (b, a) have the same key. The keys are kept in an open addressing table with linear probing,
+ * which holds the position of each score in an array of the scores in insertion order; the scores are
+ * iterated in that order.
+ */
+public class ScoreMap {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private static final int EMPTY = -1;
+
+  private long[] keys;
+  private int[] positions;
+  private BlastScore[] scores;
+  private int size;
+  private final List<BlastScore> values = new ValueList();
+
+  public ScoreMap() {
+    allocate(INITIAL_CAPACITY);
+  }
+
+  /**
+   * @return the key of the unordered pair of gene indices.
+   */
+  public static long toKey(int a, int b) {
+    return (a < b) ? ((long) a << 32 | b) : ((long) b << 32 | a);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return the score between the genes of the given indices, in either direction, or null if there is none.
+   */
+  public BlastScore get(int a, int b) {
+    int slot = find(toKey(a, b));
+    return (positions[slot] == EMPTY) ? null : scores[positions[slot]];
+  }
+
+  /**
+   * Add the score under the indices of its genes, replacing the score of the same pair, if any.
+   *
+   * @return the replaced score, or null if the pair is new.
+   */
+  public BlastScore put(BlastScore score) {
+    long key = toKey(score.getQueryIndex(), score.getSubjectIndex());
+    int slot = find(key);
+    if (positions[slot] != EMPTY) {
+      BlastScore old = scores[positions[slot]];
+      scores[positions[slot]] = score;
+      return old;
+    }
+    insert(slot, key, score);
+    return null;
+  }
+
+  /**
+   * Add the score under the indices of its genes, unless the pair already has a score.
+   *
+   * @return the existing score of the pair, or null if the score is added.
+   */
+  public BlastScore putIfAbsent(BlastScore score) {
+    long key = toKey(score.getQueryIndex(), score.getSubjectIndex());
+    int slot = find(key);
+    if (positions[slot] != EMPTY)
+      return scores[positions[slot]];
+    insert(slot, key, score);
+    return null;
+  }
+
+  /**
+   * @return the scores in the order they were added; the list is a read-only view of the map.
+   */
+  public List<BlastScore> values() {
+    return values;
+  }
+
+  public void clear() {
+    Arrays.fill(positions, EMPTY);
+    Arrays.fill(scores, 0, size, null);
+    size = 0;
+  }
+
+  private void insert(int slot, long key, BlastScore score) {
+    keys[slot] = key;
+    positions[slot] = size;
+    scores[size++] = score;
+    // keep the table at most half full, so that the probe sequences stay short
+    if (size * 2 > keys.length)
+      rehash(keys.length * 2);
+  }
+
+  /**
+   * @return the slot of the key, or the empty slot where it should be inserted.
+   */
+  private int find(long key) {
+    int mask = keys.length - 1;
+    int slot = hash(key) & mask;
+    while (positions[slot] != EMPTY && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void rehash(int capacity) {
+    long[] oldKeys = keys;
+    int[] oldPositions = positions;
+    BlastScore[] oldScores = scores;
+    allocate(capacity);
+    System.arraycopy(oldScores, 0, scores, 0, size);
+    for (int slot = 0; slot < oldKeys.length; slot++) {
+      if (oldPositions[slot] == EMPTY)
+        continue;
+      int newSlot = find(oldKeys[slot]);
+      keys[newSlot] = oldKeys[slot];
+      positions[newSlot] = oldPositions[slot];
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    positions = new int[capacity];
+    Arrays.fill(positions, EMPTY);
+    scores = new BlastScore[capacity / 2 + 1];
+  }
+
+  /**
+   * The finalizer of MurmurHash3, so that the nearby indices of a group don't cluster in the table.
+   */
+  private static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  private class ValueList extends AbstractList<BlastScore> {
+
+    @Override
+    public BlastScore get(int index) {
+      if (index >= size)
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      return scores[index];
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+}
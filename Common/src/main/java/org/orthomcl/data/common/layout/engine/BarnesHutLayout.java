@@ -0,0 +1,262 @@
+package org.orthomcl.data.common.layout.engine;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.orthomcl.data.common.layout.core.IndexGraph;
+
+/**
+ * A {@link ForceLayout} that approximates the repulsions with a quadtree, the Barnes-Hut way, so that an
+ * iteration takes O(n log n) instead of O(n^2) time, and groups of several thousand genes can be laid out.
+ *
+ * The quadtree is rebuilt in each iteration. Each cell holds the number of nodes in it and their centre of
+ * mass. The repulsion on a node from a cell that is small compared with its distance from the node is
+ * computed once from the centre of mass, as if all the nodes of the cell were there; closer cells are opened
+ * and their children are visited instead. Since the nodes only push each other apart within the max preferred
+ * length, the cells beyond that distance are skipped altogether.
+ */
+public class BarnesHutLayout extends ForceLayout {
+
+  /**
+   * The largest ratio of the cell size to its distance from the node, for the cell to be treated as one body.
+   * Smaller values are more accurate and slower.
+   */
+  public static final double DEFAULT_THETA = 1.0;
+
+  /**
+   * Below this depth the cells are not split any further, and the nodes in them are chained together; this
+   * only happens when the nodes are on top of each other.
+   */
+  private static final int MAX_DEPTH = 24;
+
+  private static final int EMPTY = -1;
+
+  private final double theta;
+  private final QuadTree tree;
+
+  public BarnesHutLayout(IndexGraph graph, Random random, boolean warm) {
+    this(graph, random, warm, DEFAULT_THETA);
+  }
+
+  public BarnesHutLayout(IndexGraph graph, Random random, boolean warm, double theta) {
+    super(graph, random, warm);
+    this.theta = theta;
+    this.tree = new QuadTree(graph.getNodeCount());
+  }
+
+  @Override
+  protected void prepareRepulsion(double maxLength) {
+    if (graph.getNodeCount() > 0)
+      tree.build(graph.getX(), graph.getY());
+  }
+
+  /**
+   * Each node walks the tree for all its repulsions at once, so the chunks have about the same number of
+   * nodes.
+   */
+  @Override
+  protected int[] splitRows(int nodeCount, int chunkCount) {
+    int[] starts = new int[chunkCount + 1];
+    for (int c = 0; c <= chunkCount; c++) {
+      starts[c] = (int) ((long) nodeCount * c / chunkCount);
+    }
+    return starts;
+  }
+
+  /**
+   * Add up the repulsions on each of the given nodes from all the other nodes. The tree is only read here, so
+   * the chunks can walk it at the same time.
+   */
+  @Override
+  protected void computeRepulsion(int from, int to, double[] rx, double[] ry, double maxLength) {
+    double[] x = graph.getX();
+    double[] y = graph.getY();
+    int[] stack = new int[MAX_DEPTH * 4 + 4];
+    for (int i = from; i < to; i++) {
+      computeRepulsion(i, x, y, rx, ry, maxLength, stack);
+    }
+  }
+
+  /**
+   * Add up the repulsions on the given node, walking the quadtree from the root.
+   */
+  private void computeRepulsion(int node, double[] x, double[] y, double[] rx, double[] ry, double maxLength,
+      int[] stack) {
+    QuadTree tree = this.tree;
+    double px = x[node], py = y[node];
+    double fx = 0, fy = 0;
+    int top = 0;
+    stack[top++] = 0;
+    while (top > 0) {
+      int cell = stack[--top];
+
+      // skip the cells entirely beyond the reach of the repulsion
+      double half = tree.half[cell];
+      double gapX = Math.max(0, Math.abs(px - tree.centerX[cell]) - half);
+      double gapY = Math.max(0, Math.abs(py - tree.centerY[cell]) - half);
+      if (gapX * gapX + gapY * gapY >= maxLength * maxLength)
+        continue;
+
+      int body = tree.body[cell];
+      if (body != EMPTY) { // a leaf, compute the repulsions from each of its nodes
+        for (int other = body; other != EMPTY; other = tree.next[other]) {
+          if (other == node)
+            continue;
+          double vx = x[other] - px, vy = y[other] - py;
+          double distance = Math.sqrt(vx * vx + vy * vy);
+          if (distance >= maxLength)
+            continue;
+          if (distance < MIN_DISTANCE) { // overlapping nodes, push them apart
+            double angle = getOverlapAngle(node, other);
+            vx = Math.cos(angle) * MIN_DISTANCE;
+            vy = Math.sin(angle) * MIN_DISTANCE;
+            distance = MIN_DISTANCE;
+          }
+          double force = REPULSION * (maxLength - distance) / distance;
+          fx -= vx * force;
+          fy -= vy * force;
+        }
+        continue;
+      }
+
+      // a far enough cell that doesn't contain the node acts as one body at its centre of mass
+      double mass = tree.mass[cell];
+      double vx = tree.massX[cell] / mass - px, vy = tree.massY[cell] / mass - py;
+      double distance = Math.sqrt(vx * vx + vy * vy);
+      boolean inside = gapX == 0 && gapY == 0;
+      if (!inside && 2 * half < theta * distance) {
+        if (distance < maxLength) {
+          double force = mass * REPULSION * (maxLength - distance) / distance;
+          fx -= vx * force;
+          fy -= vy * force;
+        }
+        continue;
+      }
+
+      // otherwise open the cell
+      int first = tree.firstChild[cell];
+      for (int child = first; child < first + 4; child++) {
+        if (tree.mass[child] > 0)
+          stack[top++] = child;
+      }
+    }
+    rx[node] += fx;
+    ry[node] += fy;
+  }
+
+  /**
+   * A quadtree stored in flat arrays, reused across the iterations. Each cell is either empty, a leaf with a
+   * chain of nodes, or split into four children at consecutive indices.
+   */
+  private static class QuadTree {
+
+    private final int[] next;
+    private int[] firstChild;
+    private int[] body;
+    private double[] centerX;
+    private double[] centerY;
+    private double[] half;
+    private double[] mass;
+    private double[] massX;
+    private double[] massY;
+    private int cellCount;
+
+    private QuadTree(int nodeCount) {
+      next = new int[nodeCount];
+      allocate(Math.max(16, nodeCount * 2));
+    }
+
+    private void allocate(int capacity) {
+      firstChild = (firstChild == null) ? new int[capacity] : Arrays.copyOf(firstChild, capacity);
+      body = (body == null) ? new int[capacity] : Arrays.copyOf(body, capacity);
+      centerX = (centerX == null) ? new double[capacity] : Arrays.copyOf(centerX, capacity);
+      centerY = (centerY == null) ? new double[capacity] : Arrays.copyOf(centerY, capacity);
+      half = (half == null) ? new double[capacity] : Arrays.copyOf(half, capacity);
+      mass = (mass == null) ? new double[capacity] : Arrays.copyOf(mass, capacity);
+      massX = (massX == null) ? new double[capacity] : Arrays.copyOf(massX, capacity);
+      massY = (massY == null) ? new double[capacity] : Arrays.copyOf(massY, capacity);
+    }
+
+    private void build(double[] x, double[] y) {
+      double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+      double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+      for (int i = 0; i < x.length; i++) {
+        minX = Math.min(minX, x[i]);
+        minY = Math.min(minY, y[i]);
+        maxX = Math.max(maxX, x[i]);
+        maxY = Math.max(maxY, y[i]);
+      }
+      cellCount = 0;
+      int root = newCell((minX + maxX) / 2, (minY + maxY) / 2, Math.max(maxX - minX, maxY - minY) / 2 + 1);
+      for (int i = 0; i < x.length; i++) {
+        insert(root, i, x[i], y[i]);
+      }
+    }
+
+    private int newCell(double cx, double cy, double size) {
+      if (cellCount == body.length)
+        allocate(body.length * 2);
+      int cell = cellCount++;
+      firstChild[cell] = EMPTY;
+      body[cell] = EMPTY;
+      centerX[cell] = cx;
+      centerY[cell] = cy;
+      half[cell] = size;
+      mass[cell] = 0;
+      massX[cell] = 0;
+      massY[cell] = 0;
+      return cell;
+    }
+
+    private void insert(int root, int node, double px, double py) {
+      int cell = root;
+      for (int depth = 0;; depth++) {
+        mass[cell]++;
+        massX[cell] += px;
+        massY[cell] += py;
+
+        if (firstChild[cell] != EMPTY) { // already split, go down to the quadrant of the node
+          cell = firstChild[cell] + quadrant(cell, px, py);
+          continue;
+        }
+        if (body[cell] == EMPTY && mass[cell] == 1) { // an empty leaf
+          body[cell] = node;
+          next[node] = EMPTY;
+          return;
+        }
+        if (depth >= MAX_DEPTH) { // too deep, chain the node to the leaf
+          next[node] = body[cell];
+          body[cell] = node;
+          return;
+        }
+
+        // split the leaf, and move its node down to a child; the new node continues from this cell
+        split(cell);
+        int old = body[cell];
+        body[cell] = EMPTY;
+        double ox = massX[cell] - px, oy = massY[cell] - py;
+        int child = firstChild[cell] + quadrant(cell, ox, oy);
+        body[child] = old;
+        next[old] = EMPTY;
+        mass[child] = 1;
+        massX[child] = ox;
+        massY[child] = oy;
+        cell = firstChild[cell] + quadrant(cell, px, py);
+      }
+    }
+
+    private void split(int cell) {
+      double h = half[cell] / 2;
+      double cx = centerX[cell], cy = centerY[cell];
+      int first = newCell(cx - h, cy - h, h);
+      newCell(cx + h, cy - h, h);
+      newCell(cx - h, cy + h, h);
+      newCell(cx + h, cy + h, h);
+      firstChild[cell] = first;
+    }
+
+    private int quadrant(int cell, double px, double py) {
+      return ((px >= centerX[cell]) ? 1 : 0) + ((py >= centerY[cell]) ? 2 : 0);
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package org.orthomcl.data.common.layout.engine;
+
+import org.orthomcl.data.common.layout.core.IndexGraph;
+
+/**
+ * A coarse level of a {@link MultilevelLayout}: each of its nodes stands for a set of nodes of the finer
+ * level, so it has no genes or scores of its own, and its positions are only carried down to the finer level.
+ */
+class CoarseGraph extends IndexGraph {
+
+  /**
+   * Create a coarse graph of the given finer level, whose nodes are at the origin.
+   */
+  CoarseGraph(IndexGraph fine, int nodeCount, int[] edgeA, int[] edgeB, float[] lengths) {
+    super(fine.getGroup(), nodeCount, edgeA, edgeB, lengths);
+  }
+}
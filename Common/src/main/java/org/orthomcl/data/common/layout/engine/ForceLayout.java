@@ -0,0 +1,453 @@
+package org.orthomcl.data.common.layout.engine;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.orthomcl.data.common.layout.core.IndexGraph;
+import org.orthomcl.shared.model.layout.GraphicsException;
+import org.orthomcl.shared.model.layout.Layout;
+import org.orthomcl.shared.model.layout.LayoutObserver;
+
+/**
+ * A force directed layout that starts from the current positions of the nodes, so that it can continue from
+ * a previous layout of the graph. Each edge is a spring pulling or pushing its nodes towards the preferred
+ * length, and the nodes closer than the max preferred length push each other apart. The move of a node in
+ * each iteration is limited by a temperature, which cools down whenever the forces get stronger, and heats up
+ * again after a few iterations of weaker forces. The layout stops when the average move of the nodes drops
+ * below the stop stress, or after the max iterations.
+ *
+ * A cold start places the nodes randomly and starts hot; a warm start keeps the positions and starts cool,
+ * so that a layout close to the equilibrium converges in fewer iterations.
+ *
+ * The layout works on the coordinate arrays of an {@link IndexGraph}, and stores the positions back to the
+ * genes when it finishes. An observer is given the group, with the positions stored before each step, unless
+ * it is a {@link StressObserver}.
+ *
+ * The forces of each iteration are computed in chunks, fixed by the number of nodes and edges: each chunk
+ * adds up the springs of a range of edges and the repulsions of a range of rows of node pairs into its own
+ * partial sums, computing each pair once and applying it to both nodes, and the partial sums are then added
+ * up in the order of the chunks. If a fork/join pool is given, the chunks are computed in parallel; since
+ * the chunks and the order of the sums are the same either way, the layout is the same with or without the
+ * pool, and for any number of threads.
+ */
+public class ForceLayout implements Layout {
+
+  public static final int DEFAULT_MAX_ITERATIONS = 2000;
+
+  /**
+   * The average move of a node, below which the layout is considered stable.
+   */
+  public static final double DEFAULT_STOP_STRESS = 0.05;
+
+  /**
+   * The initial temperature of a warm start, relative to the temperature of a cold start.
+   */
+  public static final double WARM_TEMPERATURE = 0.1;
+
+  private static final double COOLING = 0.9;
+  private static final int HEATING_STEPS = 5;
+  private static final double SPRING = 0.25;
+  private static final double MIN_LENGTH = 1;
+
+  /**
+   * The number of node pairs and edges below which the forces of an iteration are not split into chunks.
+   */
+  private static final long CHUNK_WORK = 1 << 15;
+
+  private static final int MAX_CHUNKS = 16;
+
+  /**
+   * The max number of values in the partial sums of all the chunks, which limits the number of chunks of the
+   * largest graphs.
+   */
+  private static final int MAX_PARTIAL_VALUES = 1 << 22;
+
+  protected static final double REPULSION = 0.25;
+  protected static final double MIN_DISTANCE = 0.01;
+
+  protected final IndexGraph graph;
+  protected final Random random;
+  private final int nodeCount;
+  private final int[] edgeA;
+  private final int[] edgeB;
+  private final double[] lengths;
+  private final double[] x;
+  private final double[] y;
+  private final int chunkCount;
+  private final int[] edgeStarts;
+  private final double[][] springX;
+  private final double[][] springY;
+  private final double[][] repulsionX;
+  private final double[][] repulsionY;
+  private int[] rowStarts;
+
+  private double temperature;
+  private int maxIterations = DEFAULT_MAX_ITERATIONS;
+  private double stopStress = DEFAULT_STOP_STRESS;
+  private int iteration;
+  private double stress;
+  private volatile boolean cancelled;
+  private volatile boolean stopped = true;
+  private ForkJoinPool pool;
+  private long deadline;
+  private boolean hasDeadline;
+
+  /**
+   * @param warm
+   *          true to start from the current positions of the nodes; false to place the nodes randomly.
+   */
+  public ForceLayout(IndexGraph graph, Random random, boolean warm) {
+    this.graph = graph;
+    this.random = random;
+    nodeCount = graph.getNodeCount();
+    edgeA = graph.getEdgeA();
+    edgeB = graph.getEdgeB();
+    float[] preferredLengths = graph.getLengths();
+    lengths = new double[preferredLengths.length];
+    for (int e = 0; e < lengths.length; e++) {
+      lengths[e] = Math.max(MIN_LENGTH, preferredLengths[e]);
+    }
+
+    double maxLength = graph.getMaxPreferredLength();
+    x = graph.getX();
+    y = graph.getY();
+    chunkCount = getChunkCount(nodeCount, edgeA.length);
+    edgeStarts = new int[chunkCount + 1];
+    for (int c = 0; c <= chunkCount; c++) {
+      edgeStarts[c] = (int) ((long) edgeA.length * c / chunkCount);
+    }
+    springX = new double[chunkCount][nodeCount];
+    springY = new double[chunkCount][nodeCount];
+    repulsionX = new double[chunkCount][nodeCount];
+    repulsionY = new double[chunkCount][nodeCount];
+    if (warm) {
+      temperature = maxLength * WARM_TEMPERATURE;
+    }
+    else {
+      double range = maxLength * Math.sqrt(nodeCount);
+      for (int i = 0; i < nodeCount; i++) {
+        x[i] = random.nextDouble() * range;
+        y[i] = random.nextDouble() * range;
+      }
+      temperature = maxLength;
+    }
+  }
+
+  /**
+   * @return the number of chunks the forces of a graph are split into; it only depends on the size of the
+   *         graph.
+   */
+  static int getChunkCount(int nodeCount, int edgeCount) {
+    long work = (long) nodeCount * (nodeCount - 1) / 2 + edgeCount;
+    long count = Math.min(work / CHUNK_WORK, MAX_PARTIAL_VALUES / (4L * Math.max(1, nodeCount)));
+    return (int) Math.max(1, Math.min(MAX_CHUNKS, count));
+  }
+
+  int getChunkCount() {
+    return chunkCount;
+  }
+
+  public void setMaxIterations(int maxIterations) {
+    this.maxIterations = maxIterations;
+  }
+
+  /**
+   * @param pool
+   *          the pool to compute the forces in parallel, or null to compute them in the calling thread.
+   */
+  public void setPool(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * @param deadline
+   *          the {@link System#nanoTime()} after which the layout stops, even if it is not stable yet.
+   */
+  public void setDeadline(long deadline) {
+    this.deadline = deadline;
+    this.hasDeadline = true;
+  }
+
+  public void setStopStress(double stopStress) {
+    this.stopStress = stopStress;
+  }
+
+  /**
+   * @return the number of iterations run by the last process.
+   */
+  public int getIteration() {
+    return iteration;
+  }
+
+  /**
+   * @return the average move of the nodes in the last iteration.
+   */
+  public double getStress() {
+    return stress;
+  }
+
+  @Override
+  public void process(LayoutObserver observer) throws GraphicsException {
+    stopped = false;
+    try {
+      int n = nodeCount;
+      double[] dx = new double[n];
+      double[] dy = new double[n];
+      double maxLength = graph.getMaxPreferredLength();
+      iteration = 0;
+      stress = 0;
+      double energy = Double.MAX_VALUE;
+      int progress = 0;
+      boolean snapshot = observer != null && !(observer instanceof StressObserver);
+      while (!cancelled && iteration < maxIterations) {
+        iteration++;
+        double lastEnergy = energy;
+        energy = computeMoves(dx, dy, maxLength);
+        stress = move(dx, dy) / Math.max(1, n);
+
+        // cool down when the forces get stronger, and heat up after a few steps of weaker forces
+        if (energy < lastEnergy) {
+          if (++progress >= HEATING_STEPS) {
+            progress = 0;
+            temperature = Math.min(maxLength, temperature / COOLING);
+          }
+        }
+        else {
+          progress = 0;
+          temperature *= COOLING;
+        }
+
+        if (observer != null) {
+          if (snapshot)
+            graph.store();
+          observer.step(graph.getGroup(), iteration, stress);
+        }
+        if (stress < stopStress)
+          break;
+        if (hasDeadline && System.nanoTime() - deadline > 0)
+          break;
+      }
+      graph.store();
+      if (observer != null)
+        observer.finish(graph.getGroup(), iteration, stress);
+    }
+    finally {
+      stopped = true;
+    }
+  }
+
+  /**
+   * The move of a node is the average of the spring forces on it, plus the average of the repulsions from
+   * the other nodes, so that the step stays stable regardless of the degree of the node.
+   * 
+   * @return the sum of the squared moves, as the energy of the layout.
+   */
+  private double computeMoves(double[] dx, double[] dy, double maxLength) {
+    int n = nodeCount;
+    computeForces(maxLength);
+
+    double energy = 0;
+    for (int i = 0; i < n; i++) {
+      // add up the partial sums in the order of the chunks
+      double sx = 0, sy = 0, rx = 0, ry = 0;
+      for (int c = 0; c < chunkCount; c++) {
+        sx += springX[c][i];
+        sy += springY[c][i];
+        rx += repulsionX[c][i];
+        ry += repulsionY[c][i];
+      }
+      int degree = Math.max(1, graph.getDegree(i));
+      dx[i] = sx / degree + rx / Math.max(1, n - 1);
+      dy[i] = sy / degree + ry / Math.max(1, n - 1);
+      energy += dx[i] * dx[i] + dy[i] * dy[i];
+    }
+    return energy;
+  }
+
+  /**
+   * Compute the partial sums of the forces of all the chunks, in the pool if there is one.
+   */
+  private void computeForces(double maxLength) {
+    if (rowStarts == null)
+      rowStarts = splitRows(nodeCount, chunkCount);
+    prepareRepulsion(maxLength);
+    if (pool != null && chunkCount > 1) {
+      pool.invoke(new ForceTask(0, chunkCount, maxLength));
+    }
+    else {
+      for (int c = 0; c < chunkCount; c++) {
+        computeForces(c, maxLength);
+      }
+    }
+  }
+
+  /**
+   * Compute the partial sums of the forces of a chunk: the springs of its edges, and the repulsions of its
+   * rows.
+   */
+  private void computeForces(int chunk, double maxLength) {
+    double[] sx = springX[chunk], sy = springY[chunk], rx = repulsionX[chunk], ry = repulsionY[chunk];
+    Arrays.fill(sx, 0);
+    Arrays.fill(sy, 0);
+    Arrays.fill(rx, 0);
+    Arrays.fill(ry, 0);
+    for (int e = edgeStarts[chunk]; e < edgeStarts[chunk + 1]; e++) {
+      int a = edgeA[e], b = edgeB[e];
+      double vx = x[b] - x[a], vy = y[b] - y[a];
+      double distance = Math.max(MIN_DISTANCE, Math.sqrt(vx * vx + vy * vy));
+      double force = SPRING * (distance - lengths[e]) / distance;
+      sx[a] += vx * force;
+      sy[a] += vy * force;
+      sx[b] -= vx * force;
+      sy[b] -= vy * force;
+    }
+    computeRepulsion(rowStarts[chunk], rowStarts[chunk + 1], rx, ry, maxLength);
+  }
+
+  /**
+   * @return the first row of each chunk, followed by the number of nodes; row a has the pairs of node a with
+   *         the nodes after it, so the chunks are split to have about the same number of pairs.
+   */
+  protected int[] splitRows(int nodeCount, int chunkCount) {
+    int[] starts = new int[chunkCount + 1];
+    long pairs = (long) nodeCount * (nodeCount - 1) / 2;
+    long sum = 0;
+    int row = 0;
+    for (int c = 1; c < chunkCount; c++) {
+      long target = pairs * c / chunkCount;
+      while (row < nodeCount && sum < target) {
+        sum += nodeCount - 1 - row;
+        row++;
+      }
+      starts[c] = row;
+    }
+    starts[chunkCount] = nodeCount;
+    return starts;
+  }
+
+  /**
+   * Add up the repulsions on all the nodes, as an iteration does.
+   * 
+   * @param rx
+   *          the x components of the repulsions, all zero when called.
+   * @param ry
+   *          the y components of the repulsions, all zero when called.
+   */
+  void computeRepulsion(double[] rx, double[] ry, double maxLength) {
+    computeForces(maxLength);
+    for (int i = 0; i < nodeCount; i++) {
+      for (int c = 0; c < chunkCount; c++) {
+        rx[i] += repulsionX[c][i];
+        ry[i] += repulsionY[c][i];
+      }
+    }
+  }
+
+  /**
+   * Called once in each iteration, before the repulsions of the chunks are computed.
+   */
+  protected void prepareRepulsion(double maxLength) {}
+
+  /**
+   * Add up the repulsions of the given rows, which is quadratic in the number of nodes: each node of the rows
+   * with all the nodes after it. Two nodes push each other apart with a force growing linearly as they get
+   * closer than the max preferred length. The repulsions of different rows may be computed at the same time,
+   * into different arrays.
+   * 
+   * @param rx
+   *          the x components of the repulsions of the chunk, all zero when called.
+   * @param ry
+   *          the y components of the repulsions of the chunk, all zero when called.
+   */
+  protected void computeRepulsion(int from, int to, double[] rx, double[] ry, double maxLength) {
+    int n = nodeCount;
+    for (int a = from; a < to; a++) {
+      for (int b = a + 1; b < n; b++) {
+        double vx = x[b] - x[a], vy = y[b] - y[a];
+        double distance = Math.sqrt(vx * vx + vy * vy);
+        if (distance >= maxLength)
+          continue;
+        if (distance < MIN_DISTANCE) { // overlapping nodes, push them apart
+          double angle = getOverlapAngle(a, b);
+          vx = Math.cos(angle) * MIN_DISTANCE;
+          vy = Math.sin(angle) * MIN_DISTANCE;
+          distance = MIN_DISTANCE;
+        }
+        double force = REPULSION * (maxLength - distance) / distance;
+        rx[a] -= vx * force;
+        ry[a] -= vy * force;
+        rx[b] += vx * force;
+        ry[b] += vy * force;
+      }
+    }
+  }
+
+  /**
+   * @return the direction from node a to node b when the two are on top of each other; it is fixed for each
+   *         pair, and opposite from b to a, so the two nodes are pushed apart the same way in any order.
+   */
+  protected static double getOverlapAngle(int a, int b) {
+    long pair = (a < b) ? ((long) a << 32 | b) : ((long) b << 32 | a);
+    pair *= 0x9E3779B97F4A7C15L;
+    double angle = ((pair >>> 11) * 0x1.0p-53) * 2 * Math.PI;
+    return (a < b) ? angle : angle + Math.PI;
+  }
+
+  /**
+   * @return the total distance moved by the nodes, each limited by the temperature.
+   */
+  private double move(double[] dx, double[] dy) {
+    double total = 0;
+    for (int i = 0; i < nodeCount; i++) {
+      double distance = Math.sqrt(dx[i] * dx[i] + dy[i] * dy[i]);
+      if (distance == 0)
+        continue;
+      double scale = Math.min(distance, temperature) / distance;
+      x[i] += dx[i] * scale;
+      y[i] += dy[i] * scale;
+      total += distance * scale;
+    }
+    return total;
+  }
+
+  /**
+   * Computes the forces of a range of chunks, splitting the range down to single chunks.
+   */
+  private class ForceTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+    private final double maxLength;
+
+    private ForceTask(int from, int to, double maxLength) {
+      this.from = from;
+      this.to = to;
+      this.maxLength = maxLength;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from == 1) {
+        computeForces(from, maxLength);
+      }
+      else {
+        int middle = (from + to) >>> 1;
+        invokeAll(new ForceTask(from, middle, maxLength), new ForceTask(middle, to, maxLength));
+      }
+    }
+  }
+
+  @Override
+  public void cancel() {
+    cancelled = true;
+  }
+
+  @Override
+  public boolean isStopped() {
+    return stopped;
+  }
+}
@@ -0,0 +1,310 @@
+package org.orthomcl.data.common.layout.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.orthomcl.data.common.layout.core.EdgeType;
+import org.orthomcl.data.common.layout.core.GroupGraph;
+import org.orthomcl.data.common.layout.core.IndexGraph;
+import org.orthomcl.shared.model.layout.GraphicsException;
+import org.orthomcl.shared.model.layout.Layout;
+import org.orthomcl.shared.model.layout.LayoutObserver;
+
+/**
+ * A multilevel layout for the groups too large to be laid out directly. The graph of the group is coarsened
+ * level by level, by merging pairs of neighbouring nodes: the inparalogs first, then the orthologs and
+ * coorthologs, then the other pairs, the strongest scores first within each kind. The coarsest graph is laid
+ * out from scratch; then each finer level starts from the layout of the coarser one, with each pair of merged
+ * nodes split apart along its edge, and is refined for a limited number of iterations.
+ *
+ * All levels are laid out with the {@link BarnesHutLayout}, so that each iteration takes O(n log n) time.
+ * With a time budget, the refinement of each level stops at the deadline, and the remaining levels are only
+ * split, so the layout always finishes in about the given time.
+ */
+public class MultilevelLayout implements Layout {
+
+  /**
+   * The coarsening stops at this number of nodes.
+   */
+  public static final int COARSEST_SIZE = 50;
+
+  /**
+   * The max number of iterations to refine each level, except the coarsest.
+   */
+  public static final int LEVEL_ITERATIONS = 300;
+
+  /**
+   * The coarsening stops when a level would merge fewer than this fraction of the nodes.
+   */
+  private static final double MIN_REDUCTION = 0.1;
+
+  private final GroupGraph graph;
+  private final Random random;
+
+  private ForkJoinPool pool;
+  private long timeBudget;
+  private int iteration;
+  private int levelCount;
+  private volatile ForceLayout current;
+  private volatile boolean cancelled;
+  private volatile boolean stopped = true;
+
+  public MultilevelLayout(GroupGraph graph, Random random) {
+    this.graph = graph;
+    this.random = random;
+  }
+
+  /**
+   * @param pool
+   *          the pool to compute the forces of each level in parallel, or null.
+   */
+  public void setPool(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * @param timeBudget
+   *          the time in milliseconds the layout should take at most, or 0 if there is no limit.
+   */
+  public void setTimeBudget(long timeBudget) {
+    this.timeBudget = timeBudget;
+  }
+
+  /**
+   * @return the total number of iterations of all levels in the last process.
+   */
+  public int getIteration() {
+    return iteration;
+  }
+
+  /**
+   * @return the number of levels of the last process, including the graph of the group itself.
+   */
+  public int getLevelCount() {
+    return levelCount;
+  }
+
+  @Override
+  public void process(LayoutObserver observer) throws GraphicsException {
+    stopped = false;
+    try {
+      long deadline = System.nanoTime() + timeBudget * 1000000L;
+
+      // coarsen the graph until it is small enough, or it can't be reduced much further
+      List<IndexGraph> levels = new ArrayList<>();
+      List<int[]> parents = new ArrayList<>();
+      List<int[]> matches = new ArrayList<>();
+      levels.add(graph);
+      byte[] priorities = getPriorities(graph);
+      while (levels.get(levels.size() - 1).getNodeCount() > COARSEST_SIZE) {
+        IndexGraph fine = levels.get(levels.size() - 1);
+        int[] match = match(fine, priorities);
+        int[] parent = new int[fine.getNodeCount()];
+        int coarseCount = assignParents(match, parent);
+        if (coarseCount > fine.getNodeCount() * (1 - MIN_REDUCTION))
+          break;
+        byte[][] coarsePriorities = new byte[1][];
+        levels.add(coarsen(fine, parent, coarseCount, priorities, coarsePriorities));
+        parents.add(parent);
+        matches.add(match);
+        priorities = coarsePriorities[0];
+      }
+      levelCount = levels.size();
+
+      // lay out the coarsest level from scratch, then refine the finer levels in turn
+      iteration = 0;
+      int coarsest = levels.size() - 1;
+      ForceLayout layout = createLayout(levels.get(coarsest), false, deadline);
+      run(layout, (coarsest == 0) ? observer : null);
+      for (int level = coarsest - 1; level >= 0 && !cancelled; level--) {
+        IndexGraph fine = levels.get(level);
+        prolong(levels.get(level + 1), fine, parents.get(level), matches.get(level));
+        layout = createLayout(fine, true, deadline);
+        layout.setMaxIterations(isPastDeadline(deadline) ? 0 : LEVEL_ITERATIONS);
+        run(layout, (level == 0) ? observer : null);
+      }
+      graph.store();
+    }
+    finally {
+      current = null;
+      stopped = true;
+    }
+  }
+
+  private ForceLayout createLayout(IndexGraph level, boolean warm, long deadline) {
+    ForceLayout layout = new BarnesHutLayout(level, random, warm);
+    layout.setPool(pool);
+    if (timeBudget > 0)
+      layout.setDeadline(deadline);
+    return layout;
+  }
+
+  private void run(ForceLayout layout, LayoutObserver observer) throws GraphicsException {
+    current = layout;
+    if (cancelled)
+      layout.cancel();
+    layout.process(observer);
+    iteration += layout.getIteration();
+  }
+
+  private boolean isPastDeadline(long deadline) {
+    return timeBudget > 0 && System.nanoTime() - deadline > 0;
+  }
+
+  /**
+   * @return the merge priority of each edge of the group graph by its type; lower merges first.
+   */
+  private static byte[] getPriorities(GroupGraph graph) {
+    byte[] priorities = new byte[graph.getEdgeCount()];
+    for (int e = 0; e < priorities.length; e++) {
+      EdgeType type = graph.getScore(e).getType();
+      if (type == EdgeType.Inparalog)
+        priorities[e] = 0;
+      else if (type == EdgeType.Ortholog || type == EdgeType.Coortholog)
+        priorities[e] = 1;
+      else
+        priorities[e] = 2;
+    }
+    return priorities;
+  }
+
+  /**
+   * Match each node with at most one neighbour, visiting the edges by priority, then by preferred length.
+   *
+   * @return the node each node is matched with, or -1 if it is not matched.
+   */
+  private static int[] match(IndexGraph graph, byte[] priorities) {
+    float[] lengths = graph.getLengths();
+    int edgeCount = graph.getEdgeCount();
+    long[] order = new long[edgeCount];
+    for (int e = 0; e < edgeCount; e++) {
+      // priority, then the bits of the non-negative length, which sort the same way as the length
+      long length = Float.floatToIntBits(Math.max(0, lengths[e])) >>> 1;
+      order[e] = ((long) priorities[e] << 61) | (length << 31) | e;
+    }
+    Arrays.sort(order);
+
+    int[] edgeA = graph.getEdgeA();
+    int[] edgeB = graph.getEdgeB();
+    int[] match = new int[graph.getNodeCount()];
+    Arrays.fill(match, -1);
+    for (long key : order) {
+      int e = (int) (key & 0x7FFFFFFF);
+      int a = edgeA[e], b = edgeB[e];
+      if (match[a] == -1 && match[b] == -1) {
+        match[a] = b;
+        match[b] = a;
+      }
+    }
+    return match;
+  }
+
+  /**
+   * @return the number of coarse nodes; each matched pair becomes one coarse node, and each unmatched node
+   *         becomes a coarse node by itself.
+   */
+  private static int assignParents(int[] match, int[] parent) {
+    Arrays.fill(parent, -1);
+    int count = 0;
+    for (int i = 0; i < match.length; i++) {
+      if (parent[i] != -1)
+        continue;
+      parent[i] = count;
+      if (match[i] != -1)
+        parent[match[i]] = count;
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Merge the edges between the same coarse nodes, with the average preferred length and the highest
+   * priority.
+   */
+  private static CoarseGraph coarsen(IndexGraph fine, int[] parent, int coarseCount, byte[] priorities,
+      byte[][] coarsePriorities) {
+    int[] edgeA = fine.getEdgeA();
+    int[] edgeB = fine.getEdgeB();
+    float[] lengths = fine.getLengths();
+    Map<Long, Integer> indices = new HashMap<>();
+    int[] coarseA = new int[edgeA.length];
+    int[] coarseB = new int[edgeA.length];
+    double[] sums = new double[edgeA.length];
+    int[] counts = new int[edgeA.length];
+    byte[] coarseEdgePriorities = new byte[edgeA.length];
+    int count = 0;
+    for (int e = 0; e < edgeA.length; e++) {
+      int a = parent[edgeA[e]], b = parent[edgeB[e]];
+      if (a == b)
+        continue;
+      long key = (a < b) ? ((long) a << 32 | b) : ((long) b << 32 | a);
+      Integer index = indices.get(key);
+      if (index == null) {
+        index = count++;
+        indices.put(key, index);
+        coarseA[index] = Math.min(a, b);
+        coarseB[index] = Math.max(a, b);
+        coarseEdgePriorities[index] = priorities[e];
+      }
+      sums[index] += lengths[e];
+      counts[index]++;
+      coarseEdgePriorities[index] = (byte) Math.min(coarseEdgePriorities[index], priorities[e]);
+    }
+
+    float[] coarseLengths = new float[count];
+    for (int e = 0; e < count; e++) {
+      coarseLengths[e] = (float) (sums[e] / counts[e]);
+    }
+    coarsePriorities[0] = Arrays.copyOf(coarseEdgePriorities, count);
+    return new CoarseGraph(fine, coarseCount, Arrays.copyOf(coarseA, count), Arrays.copyOf(coarseB, count),
+        coarseLengths);
+  }
+
+  /**
+   * Place each fine node at its coarse node; the two nodes of a merged pair are split apart along a fixed
+   * direction, by half of their preferred length each.
+   */
+  private static void prolong(IndexGraph coarse, IndexGraph fine, int[] parent, int[] match) {
+    double[] cx = coarse.getX(), cy = coarse.getY();
+    double[] fx = fine.getX(), fy = fine.getY();
+    float[] lengths = fine.getLengths();
+    int[] offsets = fine.getOffsets();
+    int[] neighbours = fine.getNeighbours();
+    int[] neighbourEdges = fine.getNeighbourEdges();
+    for (int i = 0; i < fx.length; i++) {
+      fx[i] = cx[parent[i]];
+      fy[i] = cy[parent[i]];
+      int other = match[i];
+      if (other == -1)
+        continue;
+      double half = 0;
+      for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+        if (neighbours[k] == other) {
+          half = Math.max(1, lengths[neighbourEdges[k]]) / 2;
+          break;
+        }
+      }
+      double angle = ForceLayout.getOverlapAngle(other, i);
+      fx[i] += Math.cos(angle) * half;
+      fy[i] += Math.sin(angle) * half;
+    }
+  }
+
+  @Override
+  public void cancel() {
+    cancelled = true;
+    ForceLayout layout = current;
+    if (layout != null)
+      layout.cancel();
+  }
+
+  @Override
+  public boolean isStopped() {
+    return stopped;
+  }
+}
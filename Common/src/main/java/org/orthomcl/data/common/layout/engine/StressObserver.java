@@ -0,0 +1,10 @@
+package org.orthomcl.data.common.layout.engine;
+
+import org.orthomcl.shared.model.layout.LayoutObserver;
+
+/**
+ * An observer that only takes the iteration and the stress of each step, not the positions of the nodes; the
+ * {@link ForceLayout} doesn't store the positions back to the genes before the steps of such an observer,
+ * only when it finishes.
+ */
+public interface StressObserver extends LayoutObserver {}
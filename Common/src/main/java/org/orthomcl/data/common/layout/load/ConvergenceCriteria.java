@@ -0,0 +1,75 @@
+package org.orthomcl.data.common.layout.load;
+
+import org.orthomcl.data.common.layout.engine.StressObserver;
+import org.orthomcl.shared.model.layout.Layout;
+
+/**
+ * The criteria to stop a layout before the end of the schedule of its engine: the layout is cancelled when
+ * its stress hasn't improved by the given ratio over a window of iterations, or when it reaches the max
+ * iterations. A window or max iterations of 0 turns that criterion off.
+ */
+public class ConvergenceCriteria {
+
+  private int window;
+  private double improvement;
+  private int maxIterations;
+
+  public ConvergenceCriteria(int window, double improvement, int maxIterations) {
+    this.window = window;
+    this.improvement = improvement;
+    this.maxIterations = maxIterations;
+  }
+
+  public int getWindow() {
+    return window;
+  }
+
+  /**
+   * @param window
+   *          the number of iterations the stress has to improve in.
+   */
+  public void setWindow(int window) {
+    this.window = window;
+  }
+
+  public double getImprovement() {
+    return improvement;
+  }
+
+  /**
+   * @param improvement
+   *          the ratio the stress has to improve by within the window, such as 0.01 for 1%.
+   */
+  public void setImprovement(double improvement) {
+    this.improvement = improvement;
+  }
+
+  public int getMaxIterations() {
+    return maxIterations;
+  }
+
+  public void setMaxIterations(int maxIterations) {
+    this.maxIterations = maxIterations;
+  }
+
+  /**
+   * @return true if any of the criteria is on.
+   */
+  public boolean isEnabled() {
+    return window > 0 || maxIterations > 0;
+  }
+
+  /**
+   * @param next
+   *          the observer to pass the steps on to, or null.
+   * @return an observer that cancels the layout once it meets the criteria.
+   */
+  public ConvergenceMonitor createMonitor(Layout layout, StressObserver next) {
+    return new ConvergenceMonitor(layout, this, next);
+  }
+
+  @Override
+  public String toString() {
+    return "window " + window + ", improvement " + improvement + ", max iterations " + maxIterations;
+  }
+}
@@ -0,0 +1,76 @@
+package org.orthomcl.data.common.layout.load;
+
+import org.orthomcl.data.common.layout.engine.StressObserver;
+import org.orthomcl.shared.model.layout.Graph;
+import org.orthomcl.shared.model.layout.Layout;
+
+/**
+ * An observer that cancels its layout once the {@link ConvergenceCriteria} are met, and passes the steps on to
+ * another observer.
+ *
+ * The stress of a layout doesn't fall steadily, so the monitor keeps a target, the best stress so far reduced
+ * by the improvement ratio. Each time the stress falls below the target, the target is lowered again; if the
+ * stress doesn't reach the target within the window, the layout is considered converged. This takes constant
+ * time and space per step.
+ */
+public class ConvergenceMonitor implements StressObserver {
+
+  private final Layout layout;
+  private final ConvergenceCriteria criteria;
+  private final StressObserver next;
+  private double target = Double.MAX_VALUE;
+  private int lastProgress;
+  private int iteration;
+  private double stress;
+  private boolean stoppedEarly;
+
+  ConvergenceMonitor(Layout layout, ConvergenceCriteria criteria, StressObserver next) {
+    this.layout = layout;
+    this.criteria = criteria;
+    this.next = next;
+  }
+
+  @Override
+  public void step(Graph graph, int iteration, double globalStress) {
+    this.iteration = iteration;
+    this.stress = globalStress;
+    if (next != null)
+      next.step(graph, iteration, globalStress);
+    if (stoppedEarly)
+      return;
+
+    if (globalStress < target) {
+      target = globalStress * (1 - criteria.getImprovement());
+      lastProgress = iteration;
+    }
+    int window = criteria.getWindow();
+    int maxIterations = criteria.getMaxIterations();
+    if ((window > 0 && iteration - lastProgress >= window) || (maxIterations > 0 && iteration >= maxIterations)) {
+      stoppedEarly = true;
+      layout.cancel();
+    }
+  }
+
+  @Override
+  public void finish(Graph graph, int iteration, double globalStress) {
+    this.iteration = iteration;
+    this.stress = globalStress;
+    if (next != null)
+      next.finish(graph, iteration, globalStress);
+  }
+
+  public int getIterations() {
+    return iteration;
+  }
+
+  public double getFinalStress() {
+    return stress;
+  }
+
+  /**
+   * @return true if the layout is cancelled by the monitor, before the end of its schedule.
+   */
+  public boolean isStoppedEarly() {
+    return stoppedEarly;
+  }
+}
@@ -0,0 +1,165 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.log4j.Logger;
+import org.orthomcl.data.common.layout.core.EdgeType;
+import org.orthomcl.data.common.layout.core.GenePair;
+import org.orthomcl.data.common.layout.load.mapper.GeneMapper;
+
+/**
+ * An in-memory index of all the ortholog, coortholog and inparalog pairs, from both the Core and Residuals
+ * tables. The index is loaded once, and then used to classify the blast scores of each group without
+ * running the edge type queries per group.
+ * 
+ * The sequence ids of the pairs are kept once each, in a sorted array, and each pair is stored as the
+ * positions of its two ids in that array, packed into a long, smaller position first, in a sorted long array.
+ * A lookup finds the positions of the two ids, then the packed pair, so it never matches a different pair.
+ */
+public class EdgeTypeIndex {
+
+  private static final Logger LOG = Logger.getLogger(EdgeTypeIndex.class);
+
+  public static EdgeTypeIndex load(GeneMapper mapper) {
+    LOG.info("Loading ortholog, coortholog & inparalog pairs...");
+    long start = System.currentTimeMillis();
+
+    Map<String, Integer> sequenceIds = new HashMap<>();
+    PairSetBuilder orthologs = new PairSetBuilder(sequenceIds);
+    mapper.selectAllOrthologs(orthologs);
+    PairSetBuilder coorthologs = new PairSetBuilder(sequenceIds);
+    mapper.selectAllCoorthologs(coorthologs);
+    PairSetBuilder inparalogs = new PairSetBuilder(sequenceIds);
+    mapper.selectAllInparalogs(inparalogs);
+
+    EdgeTypeIndex index = build(sequenceIds, orthologs, coorthologs, inparalogs);
+    LOG.info(index.orthologs.length + " orthologs, " + index.coorthologs.length + " coorthologs, " +
+        index.inparalogs.length + " inparalogs of " + index.sequenceIds.length + " sequences loaded in " +
+        ((System.currentTimeMillis() - start) / 1000D) + " seconds.");
+    return index;
+  }
+
+  /**
+   * Replace the positions the ids are given as they are loaded with their positions in the sorted ids.
+   */
+  static EdgeTypeIndex build(Map<String, Integer> loadedIds, PairSetBuilder orthologs,
+      PairSetBuilder coorthologs, PairSetBuilder inparalogs) {
+    String[] sequenceIds = new String[loadedIds.size()];
+    for (Map.Entry<String, Integer> entry : loadedIds.entrySet()) {
+      sequenceIds[entry.getValue()] = entry.getKey();
+    }
+    loadedIds.clear();
+    String[] sorted = sequenceIds.clone();
+    Arrays.sort(sorted);
+    int[] positions = new int[sequenceIds.length];
+    for (int i = 0; i < sequenceIds.length; i++) {
+      positions[i] = Arrays.binarySearch(sorted, sequenceIds[i]);
+    }
+    return new EdgeTypeIndex(sorted, orthologs.build(positions), coorthologs.build(positions),
+        inparalogs.build(positions));
+  }
+
+  private final String[] sequenceIds;
+  private final long[] orthologs;
+  private final long[] coorthologs;
+  private final long[] inparalogs;
+
+  private EdgeTypeIndex(String[] sequenceIds, long[] orthologs, long[] coorthologs, long[] inparalogs) {
+    this.sequenceIds = sequenceIds;
+    this.orthologs = orthologs;
+    this.coorthologs = coorthologs;
+    this.inparalogs = inparalogs;
+  }
+
+  /**
+   * @return the type of the given pair, or null if the pair is not an ortholog, coortholog or inparalog.
+   */
+  public EdgeType getType(String queryId, String subjectId) throws OrthoMCLDataException {
+    int query = Arrays.binarySearch(sequenceIds, queryId);
+    int subject = Arrays.binarySearch(sequenceIds, subjectId);
+    if (query < 0 || subject < 0)
+      return null;
+    long key = toKey(query, subject);
+    EdgeType type = null;
+    if (Arrays.binarySearch(orthologs, key) >= 0)
+      type = EdgeType.Ortholog;
+    if (Arrays.binarySearch(coorthologs, key) >= 0)
+      type = checkType(type, EdgeType.Coortholog, queryId, subjectId);
+    if (Arrays.binarySearch(inparalogs, key) >= 0)
+      type = checkType(type, EdgeType.Inparalog, queryId, subjectId);
+    return type;
+  }
+
+  private EdgeType checkType(EdgeType oldType, EdgeType type, String queryId, String subjectId)
+      throws OrthoMCLDataException {
+    if (oldType != null)
+      throw new OrthoMCLDataException("Blast score already has a different edge type '" +
+          type + "' for gene pair '" + queryId + "' and '" + subjectId + "'");
+    return type;
+  }
+
+  /**
+   * Pack an unordered pair of positions, so that (a, b) and (b, a) get the same key.
+   */
+  static long toKey(int a, int b) {
+    return (a < b) ? ((long) a << 32 | b) : ((long) b << 32 | a);
+  }
+
+  /**
+   * Collects the streamed pairs into a growing array, with each sequence id given a position in the order
+   * it is first seen, and turns it into a sorted array without duplicates.
+   */
+  static class PairSetBuilder implements ResultHandler<GenePair> {
+
+    private final Map<String, Integer> sequenceIds;
+    private long[] keys = new long[1 << 16];
+    private int size = 0;
+
+    PairSetBuilder(Map<String, Integer> sequenceIds) {
+      this.sequenceIds = sequenceIds;
+    }
+
+    @Override
+    public void handleResult(ResultContext<? extends GenePair> context) {
+      add(context.getResultObject());
+    }
+
+    void add(GenePair pair) {
+      if (size == keys.length)
+        keys = Arrays.copyOf(keys, keys.length * 2);
+      keys[size++] = toKey(getPosition(pair.getQueryId()), getPosition(pair.getSubjectId()));
+    }
+
+    private int getPosition(String sequenceId) {
+      Integer position = sequenceIds.get(sequenceId);
+      if (position == null) {
+        position = sequenceIds.size();
+        sequenceIds.put(sequenceId, position);
+      }
+      return position;
+    }
+
+    /**
+     * @param positions
+     *          the position in the sorted ids of each position given as the pairs are loaded.
+     */
+    long[] build(int[] positions) {
+      for (int i = 0; i < size; i++) {
+        keys[i] = toKey(positions[(int) (keys[i] >>> 32)], positions[(int) keys[i]]);
+      }
+      Arrays.sort(keys, 0, size);
+      int count = 0;
+      for (int i = 0; i < size; i++) {
+        if (count == 0 || keys[i] != keys[count - 1])
+          keys[count++] = keys[i];
+      }
+      long[] result = Arrays.copyOf(keys, count);
+      keys = null;
+      return result;
+    }
+  }
+}
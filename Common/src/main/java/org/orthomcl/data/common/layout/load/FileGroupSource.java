@@ -0,0 +1,647 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+import org.orthomcl.data.common.layout.core.BlastScore;
+import org.orthomcl.data.common.layout.core.EdgeType;
+import org.orthomcl.data.common.layout.core.Gene;
+import org.orthomcl.data.common.layout.core.Group;
+
+/**
+ * A {@link GroupSource} of local files, so that the layouts can be generated without the database, such as
+ * for profiling and capacity tests. The directory holds tab-separated files without headers:
+ *
+ * <pre>
+ * groups.txt   group_id, name, number_of_members, number_of_edges
+ * genes.txt    group_id, source_id, taxon_id
+ * scores.txt   group_id, query_id, subject_id, evalue_mant, evalue_exp
+ * edges.txt    group_id, query_id, subject_id, edge type code (O, C, P, L or M); optional
+ * </pre>
+ *
+ * The lines of each group must be next to each other in the detail files, as they are when the tables are
+ * dumped ordered by the group id. When the source is created, each detail file is scanned once to index the
+ * byte range of each group; the details of a group are then read from its ranges only, so the files are
+ * streamed, and never held in memory.
+ *
+ * The layouts are appended to layouts.txt, as group_id, name, fingerprint (empty if none) and layout, when
+ * the session is committed. As with the layouts in the database, the groups already in that file are not
+ * loaded again; a later line of a group replaces the earlier ones. Incremental runs are not supported.
+ */
+public class FileGroupSource implements GroupSource {
+
+  public static final String GROUP_FILE = "groups.txt";
+  public static final String GENE_FILE = "genes.txt";
+  public static final String SCORE_FILE = "scores.txt";
+  public static final String EDGE_FILE = "edges.txt";
+  public static final String LAYOUT_FILE = "layouts.txt";
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private static final Logger LOG = Logger.getLogger(FileGroupSource.class);
+
+  private final File directory;
+  private final GroupIndex genes;
+  private final GroupIndex scores;
+  private final GroupIndex edges;
+
+  private LayoutFormat layoutFormat = LayoutFormat.Json;
+
+  // the last line of each group in the layout file, and the size and time of the file when it was indexed
+  private NavigableMap<Integer, long[]> layoutIndex;
+  private long indexedLength;
+  private long indexedTime;
+
+  public FileGroupSource(File directory) throws OrthoMCLDataException {
+    this.directory = directory;
+    File groupFile = new File(directory, GROUP_FILE);
+    if (!groupFile.exists())
+      throw new OrthoMCLDataException("Group file is missing: " + groupFile.getAbsolutePath());
+
+    LOG.info("Indexing the group files in: " + directory.getAbsolutePath());
+    long start = System.currentTimeMillis();
+    genes = GroupIndex.create(new File(directory, GENE_FILE), true);
+    scores = GroupIndex.create(new File(directory, SCORE_FILE), true);
+    edges = GroupIndex.create(new File(directory, EDGE_FILE), false);
+    LOG.info(genes.size() + " groups indexed in " + ((System.currentTimeMillis() - start) / 1000D) +
+        " seconds.");
+  }
+
+  @Override
+  public void setLayoutFormat(LayoutFormat layoutFormat) {
+    this.layoutFormat = layoutFormat;
+  }
+
+  @Override
+  public List<Group> loadGroups(int maxMemberCount) throws OrthoMCLDataException {
+    Set<Integer> laidOut = getLayoutIndex().keySet();
+    List<Group> groups = new ArrayList<>();
+    for (Group group : readGroups()) {
+      if (group.getMemberCount() > 1 && group.getMemberCount() <= maxMemberCount &&
+          !laidOut.contains(group.getId()))
+        groups.add(group);
+    }
+    Collections.sort(groups, new Comparator<Group>() {
+      @Override
+      public int compare(Group group1, Group group2) {
+        return Integer.compare(group2.getMemberCount(), group1.getMemberCount());
+      }
+    });
+    return groups;
+  }
+
+  @Override
+  public List<Group> loadGroupsForUpdate(int maxMemberCount) throws OrthoMCLDataException {
+    throw new OrthoMCLDataException("Incremental runs are not supported by the file source.");
+  }
+
+  @Override
+  public Map<String, Integer> loadLayoutFingerprints() throws OrthoMCLDataException {
+    throw new OrthoMCLDataException("Incremental runs are not supported by the file source.");
+  }
+
+  @Override
+  public Group loadGroup(String name) throws OrthoMCLDataException {
+    for (Group group : readGroups()) {
+      if (group.getName().equals(name))
+        return group;
+    }
+    return null;
+  }
+
+  /**
+   * The edge types are already in the edge file.
+   */
+  @Override
+  public void preloadEdgeTypes() {}
+
+  @Override
+  public GroupSession openSession(boolean batch) throws OrthoMCLDataException {
+    return new FileSession();
+  }
+
+  @Override
+  public void createLayout(Group group) throws OrthoMCLDataException {
+    group.setLayout(layoutFormat.encode(group));
+  }
+
+  @Override
+  public List<Integer> loadLayoutGroupIds() throws OrthoMCLDataException {
+    return new ArrayList<>(getLayoutIndex().keySet());
+  }
+
+  /**
+   * Read the last line of each group in the range, in the order of the group ids; the earlier lines of a group
+   * are replaced, and not exported. The file is indexed once for all the ranges, and each range reads only its
+   * own lines, so the ranges can be read at once.
+   */
+  @Override
+  public void exportLayouts(int minId, int maxId, LayoutHandler handler) throws OrthoMCLDataException {
+    File file = new File(directory, LAYOUT_FILE);
+    NavigableMap<Integer, long[]> lines = getLayoutIndex().subMap(minId, true, maxId, true);
+    if (lines.isEmpty())
+      return;
+    try (LineReader reader = new LineReader(file)) {
+      for (Map.Entry<Integer, long[]> entry : lines.entrySet()) {
+        reader.seek(entry.getValue()[0], entry.getValue()[1]);
+        reader.next();
+        int groupId = entry.getKey();
+        String[] parts = reader.split(4);
+        Group group = new Group(groupId, parts[1]);
+        group.setStoredFingerprint(parts[2].isEmpty() ? null : parts[2]);
+        group.setLayout(parts[3]);
+        handler.handleLayout(group);
+      }
+    }
+    catch (IOException | RuntimeException ex) {
+      throw new OrthoMCLDataException("Unable to read the layout file: " + file.getAbsolutePath(), ex);
+    }
+  }
+
+  /**
+   * Remove the layout file, or, if the scope doesn't have all the groups, rewrite it without the layouts in
+   * the scope. The file is replaced at once, so the chunk size doesn't apply.
+   */
+  @Override
+  public synchronized int removeLayouts(LayoutScope scope, int chunkSize) throws OrthoMCLDataException {
+    File file = new File(directory, LAYOUT_FILE);
+    if (!file.exists())
+      return 0;
+    if (!scope.isAll())
+      return rewriteLayouts(file, scope);
+    // a group laid out more than once has several lines, but one layout
+    int count = getLayoutIndex().size();
+    if (!file.delete())
+      throw new OrthoMCLDataException("Unable to delete the layout file: " + file.getAbsolutePath());
+    return count;
+  }
+
+  /**
+   * @return the number of layouts removed from the layout file, each counted once however many lines it has.
+   *         A layout whose group is not in the group file is only removed by a scope of ids.
+   */
+  private int rewriteLayouts(File file, LayoutScope scope) throws OrthoMCLDataException {
+    Map<Integer, Group> groups = new HashMap<>();
+    for (Group group : readGroups()) {
+      groups.put(group.getId(), group);
+    }
+    File tempFile = new File(file.getPath() + ".tmp");
+    Set<Integer> removed = new HashSet<>();
+    try (LineReader reader = new LineReader(file);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE)) {
+      while (reader.next()) {
+        int groupId = reader.parseGroupId();
+        Group group = groups.get(groupId);
+        boolean inScope = (group != null) ? scope.contains(group) : !scope.isGroupScoped() && scope.containsId(
+            groupId);
+        if (inScope)
+          removed.add(groupId);
+        else
+          reader.writeLine(out);
+      }
+    }
+    catch (IOException | RuntimeException ex) {
+      tempFile.delete();
+      throw new OrthoMCLDataException("Unable to rewrite the layout file: " + file.getAbsolutePath(), ex);
+    }
+    try {
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (IOException ex) {
+      throw new OrthoMCLDataException("Unable to replace the layout file: " + file.getAbsolutePath(), ex);
+    }
+    return removed.size();
+  }
+
+  private List<Group> readGroups() throws OrthoMCLDataException {
+    File file = new File(directory, GROUP_FILE);
+    List<Group> groups = new ArrayList<>();
+    try (LineReader reader = new LineReader(file)) {
+      while (reader.next()) {
+        String[] parts = reader.split(4);
+        Group group = new Group(Integer.parseInt(parts[0]), parts[1]);
+        group.setMemberCount(Integer.parseInt(parts[2]));
+        group.setEdgeCount(Integer.parseInt(parts[3]));
+        groups.add(group);
+      }
+    }
+    catch (IOException | RuntimeException ex) {
+      throw new OrthoMCLDataException("Unable to read the group file: " + file.getAbsolutePath(), ex);
+    }
+    return groups;
+  }
+
+  /**
+   * @return the start and the end of the last line of each group in the layout file, by group id; only the
+   *         ids are parsed, not the layouts. The file is scanned again only if it has changed since the last
+   *         scan.
+   */
+  private synchronized NavigableMap<Integer, long[]> getLayoutIndex() throws OrthoMCLDataException {
+    File file = new File(directory, LAYOUT_FILE);
+    if (!file.exists())
+      return Collections.emptyNavigableMap();
+    long length = file.length();
+    long time = file.lastModified();
+    if (layoutIndex != null && length == indexedLength && time == indexedTime)
+      return layoutIndex;
+
+    NavigableMap<Integer, long[]> index = new TreeMap<>();
+    try (LineReader reader = new LineReader(file)) {
+      while (reader.next()) {
+        index.put(reader.parseGroupId(), new long[] { reader.getLineStart(), reader.getLineEnd() });
+      }
+    }
+    catch (IOException | RuntimeException ex) {
+      throw new OrthoMCLDataException("Unable to read the layout file: " + file.getAbsolutePath(), ex);
+    }
+    layoutIndex = index;
+    indexedLength = length;
+    indexedTime = time;
+    return index;
+  }
+
+  /**
+   * Append the lines to the layout file; the file is opened for each commit, so that every committed layout
+   * is on disk, and nothing is left open.
+   */
+  private synchronized void appendLayouts(List<String> lines) throws OrthoMCLDataException {
+    File file = new File(directory, LAYOUT_FILE);
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true),
+        StandardCharsets.UTF_8), BUFFER_SIZE)) {
+      for (String line : lines) {
+        writer.write(line);
+        writer.write('\n');
+      }
+    }
+    catch (IOException ex) {
+      throw new OrthoMCLDataException("Unable to write the layout file: " + file.getAbsolutePath(), ex);
+    }
+  }
+
+  private static EdgeType getEdgeType(String code) throws OrthoMCLDataException {
+    for (EdgeType type : EdgeType.values()) {
+      if (type.getCode().equals(code))
+        return type;
+    }
+    throw new OrthoMCLDataException("Unknown edge type code: " + code);
+  }
+
+  /**
+   * The session reads the detail files through its own channels, and keeps the inserted layouts until they
+   * are committed.
+   */
+  private class FileSession implements GroupSession {
+
+    private final List<String> pending = new ArrayList<>();
+    private final Map<GroupIndex, LineReader> readers = new IdentityHashMap<>();
+
+    @Override
+    public void loadGroupDetail(Group group) throws OrthoMCLDataException {
+      LOG.debug("Loading details for group: " + group.getName());
+      try {
+        // load genes
+        LineReader reader = open(genes, group);
+        while (reader != null && reader.next()) {
+          String[] parts = reader.split(3);
+          Gene gene = new Gene(parts[1]);
+          gene.setTaxonId(Integer.parseInt(parts[2]));
+          group.addGene(gene);
+        }
+
+        // load blast scores
+        reader = open(scores, group);
+        while (reader != null && reader.next()) {
+          String[] parts = reader.split(5);
+          BlastScore score = new BlastScore(parts[1], parts[2], Float.parseFloat(parts[3]),
+              Integer.parseInt(parts[4]));
+          GroupFactory.addBlastScore(group, score, false);
+        }
+
+        // load edge types
+        reader = open(edges, group);
+        while (reader != null && reader.next()) {
+          String[] parts = reader.split(4);
+          GroupFactory.setEdgeType(group, parts[1], parts[2], getEdgeType(parts[3]));
+        }
+      }
+      catch (IOException | RuntimeException ex) {
+        throw new OrthoMCLDataException("Unable to load the details of group " + group.getName(), ex);
+      }
+    }
+
+    @Override
+    public void loadGroupDetails(List<Group> groups) throws OrthoMCLDataException {
+      LOG.debug("Loading details for " + groups.size() + " groups.");
+      for (Group group : groups) {
+        loadGroupDetail(group);
+      }
+    }
+
+    /**
+     * @return a reader of the lines of the group in the indexed file, or null if the group has no lines.
+     */
+    private LineReader open(GroupIndex index, Group group) throws IOException {
+      long[] range = index.getRange(group.getId());
+      if (range == null)
+        return null;
+      LineReader reader = readers.get(index);
+      if (reader == null) {
+        reader = new LineReader(index.getFile());
+        readers.put(index, reader);
+      }
+      reader.seek(range[0], range[1]);
+      return reader;
+    }
+
+    /**
+     * The file source keeps no fingerprinted layouts to copy.
+     */
+    @Override
+    public String loadLayout(int groupId, String fingerprint) {
+      return null;
+    }
+
+    /**
+     * The previous layouts are not read from the layout file.
+     */
+    @Override
+    public String loadPreviousLayout(Group group) {
+      return null;
+    }
+
+    /**
+     * A layout is always appended; the later line of a group replaces the earlier one.
+     */
+    @Override
+    public void insertLayout(Group group, boolean replace) throws OrthoMCLDataException {
+      String layout = group.getLayout();
+      if (layout.indexOf('\n') >= 0)
+        throw new OrthoMCLDataException("The layout of group " + group.getName() + " spans multiple lines.");
+      String fingerprint = (group.getFingerprint() != null) ? group.getFingerprint() : "";
+      pending.add(group.getId() + "\t" + group.getName() + "\t" + fingerprint + "\t" + layout);
+    }
+
+    @Override
+    public void commit() throws OrthoMCLDataException {
+      if (!pending.isEmpty())
+        appendLayouts(pending);
+      pending.clear();
+    }
+
+    @Override
+    public void rollback() {
+      pending.clear();
+    }
+
+    @Override
+    public void close() {
+      pending.clear();
+      for (LineReader reader : readers.values()) {
+        try {
+          reader.close();
+        }
+        catch (IOException ex) {
+          LOG.warn("Failed to close the group file: " + reader.getFile().getAbsolutePath(), ex);
+        }
+      }
+      readers.clear();
+    }
+  }
+
+  /**
+   * The byte range of the lines of each group in a detail file.
+   */
+  private static class GroupIndex {
+
+    /**
+     * Scan the file, and record the range of each group.
+     *
+     * @param required
+     *          false if the file may be missing; then no group has any lines in it.
+     */
+    public static GroupIndex create(File file, boolean required) throws OrthoMCLDataException {
+      GroupIndex index = new GroupIndex(file);
+      if (!file.exists()) {
+        if (required)
+          throw new OrthoMCLDataException("Group file is missing: " + file.getAbsolutePath());
+        return index;
+      }
+
+      try (LineReader reader = new LineReader(file)) {
+        int groupId = 0;
+        long start = -1;
+        while (reader.next()) {
+          int id = reader.parseGroupId();
+          if (start >= 0 && id == groupId)
+            continue;
+          if (start >= 0)
+            index.ranges.put(groupId, new long[] { start, reader.getLineStart() });
+          if (index.ranges.containsKey(id))
+            throw new OrthoMCLDataException("The lines of group " + id + " are not next to each other in " +
+                file.getAbsolutePath());
+          groupId = id;
+          start = reader.getLineStart();
+        }
+        if (start >= 0)
+          index.ranges.put(groupId, new long[] { start, reader.getLineStart() });
+      }
+      catch (IOException | RuntimeException ex) {
+        throw new OrthoMCLDataException("Unable to index the group file: " + file.getAbsolutePath(), ex);
+      }
+      return index;
+    }
+
+    private final File file;
+    private final Map<Integer, long[]> ranges = new HashMap<>();
+
+    private GroupIndex(File file) {
+      this.file = file;
+    }
+
+    public File getFile() {
+      return file;
+    }
+
+    /**
+     * @return the start and the end of the lines of the group, or null if the group has no lines.
+     */
+    public long[] getRange(int groupId) {
+      return ranges.get(groupId);
+    }
+
+    public int size() {
+      return ranges.size();
+    }
+  }
+
+  /**
+   * Reads the lines of a byte range of a file through a positional channel, so that the ranges can be read in
+   * any order, without decoding the lines that are only indexed.
+   */
+  private static class LineReader implements AutoCloseable {
+
+    private final File file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private byte[] line = new byte[256];
+    private int length;
+    private long lineStart;
+    private long bufferStart;
+    private long end;
+
+    public LineReader(File file) throws IOException {
+      this.file = file;
+      this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      seek(0, channel.size());
+    }
+
+    public File getFile() {
+      return file;
+    }
+
+    /**
+     * Read the lines from the start, up to the end.
+     */
+    public void seek(long start, long end) {
+      this.end = end;
+      this.bufferStart = start;
+      this.lineStart = start;
+      buffer.clear();
+      buffer.flip();
+    }
+
+    /**
+     * Read the next non-empty line.
+     *
+     * @return false if there are no more lines.
+     */
+    public boolean next() throws IOException {
+      do {
+        lineStart = bufferStart + buffer.position();
+        if (lineStart >= end)
+          return false;
+        length = 0;
+        while (true) {
+          if (!buffer.hasRemaining() && !fill())
+            break;
+          byte b = buffer.get();
+          if (b == '\n')
+            break;
+          if (length == line.length)
+            line = Arrays.copyOf(line, line.length * 2);
+          line[length++] = b;
+        }
+        if (length > 0 && line[length - 1] == '\r')
+          length--;
+      }
+      while (length == 0);
+      return true;
+    }
+
+    private boolean fill() throws IOException {
+      bufferStart += buffer.position();
+      buffer.clear();
+      long remaining = end - bufferStart;
+      if (remaining <= 0) {
+        buffer.limit(0);
+        return false;
+      }
+      if (remaining < buffer.capacity())
+        buffer.limit((int) remaining);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, bufferStart + buffer.position()) < 0)
+          break;
+      }
+      buffer.flip();
+      return buffer.hasRemaining();
+    }
+
+    /**
+     * @return the position of the first byte of the current line; after the last line, the end of the range.
+     */
+    public long getLineStart() {
+      return lineStart;
+    }
+
+    /**
+     * @return the position after the current line, including its line break.
+     */
+    public long getLineEnd() {
+      return bufferStart + buffer.position();
+    }
+
+    /**
+     * @return the group id in the first column of the line.
+     */
+    public int parseGroupId() {
+      int value = 0;
+      int i = 0;
+      while (i < length && line[i] != '\t') {
+        int digit = line[i++] - '0';
+        if (digit < 0 || digit > 9)
+          throw new NumberFormatException("Invalid group id in " + file.getName() + ": " + toString());
+        value = value * 10 + digit;
+      }
+      if (i == 0)
+        throw new NumberFormatException("Missing group id in " + file.getName() + ": " + toString());
+      return value;
+    }
+
+    /**
+     * @return the columns of the line; the last column takes the rest of the line.
+     */
+    public String[] split(int columns) {
+      String[] parts = new String(line, 0, length, StandardCharsets.UTF_8).split("\t", columns);
+      if (parts.length < columns)
+        throw new IllegalArgumentException("Expected " + columns + " columns in " + file.getName() + ": " +
+            toString());
+      return parts;
+    }
+
+    /**
+     * Copy the current line, with a line feed, to the stream.
+     */
+    public void writeLine(OutputStream out) throws IOException {
+      out.write(line, 0, length);
+      out.write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+
+    /**
+     * @return the start of the current line, for the error messages.
+     */
+    @Override
+    public String toString() {
+      return new String(line, 0, Math.min(length, 200), StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -4,21 +4,23 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
 import org.apache.log4j.Logger;
 import org.gusdb.fgputil.runtime.GusHome;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.orthomcl.data.common.layout.core.BlastScore;
 import org.orthomcl.data.common.layout.core.EdgeType;
 import org.orthomcl.data.common.layout.core.Gene;
@@ -27,7 +29,11 @@ import org.orthomcl.data.common.layout.core.Group;
 import org.orthomcl.data.common.layout.load.mapper.GeneMapper;
 import org.orthomcl.data.common.layout.load.mapper.GroupMapper;
 
-public class GroupFactory {
+/**
+ * The {@link GroupSource} of the database: the groups are read with MyBatis from the connection configured in
+ * $GUS_HOME/config/gus.config, and the layouts are inserted into OrthologGroupLayoutCore.
+ */
+public class GroupFactory implements GroupSource {
 
   private static final String PROP_DB_URL = "orthomcl.db.url";
   private static final String PROP_DB_LOGIN = "orthomcl.db.login";
@@ -35,10 +41,30 @@ public class GroupFactory {
   private static final String PROP_DB_POOL_ACTIVE = "orthomcl.db.pool.active";
   private static final String PROP_DB_POOL_IDLE = "orthomcl.db.pool.idle";
 
+  /**
+   * The number of items Oracle allows in an IN list.
+   */
+  private static final int MAX_IN_LIST_SIZE = 1000;
+
+  /**
+   * The interval, in milliseconds, at which the progress of a removal is logged.
+   */
+  private static final long PROGRESS_INTERVAL = 10000;
+
   private static final Logger LOG = Logger.getLogger(GroupFactory.class);
 
   private final SqlSessionFactory sessionFactory;
 
+  /**
+   * If set, used to classify the ortholog, coortholog & inparalog edges, instead of running the edge type
+   * queries for each group.
+   */
+  private EdgeTypeIndex edgeTypeIndex;
+
+  private LayoutFormat layoutFormat = LayoutFormat.Json;
+
+  private boolean mergeScores;
+
   public GroupFactory(int poolSize) throws OrthoMCLDataException {
     Properties properties = loadConfig(poolSize);
 
@@ -81,10 +107,50 @@ public class GroupFactory {
     }
   }
 
+  /**
+   * @param layoutFormat
+   *          the format of the layouts created from now on.
+   */
+  @Override
+  public void setLayoutFormat(LayoutFormat layoutFormat) {
+    this.layoutFormat = layoutFormat;
+  }
+
+  /**
+   * @param mergeScores
+   *          if true, the scores of both directions of a pair are merged by the database into one row, so that
+   *          half as many rows are fetched, and the scores don't need to be merged when they are added to the
+   *          group.
+   */
+  public void setMergeScores(boolean mergeScores) {
+    this.mergeScores = mergeScores;
+  }
+
   public SqlSession openSession(ExecutorType type) {
     return sessionFactory.openSession(type);
   }
 
+  @Override
+  public GroupSession openSession(boolean batch) {
+    return new DatabaseSession(sessionFactory.openSession(batch ? ExecutorType.BATCH : ExecutorType.REUSE));
+  }
+
+  /**
+   * Load all the ortholog, coortholog & inparalog pairs into memory, so that they are no longer queried for
+   * each group. Must be called before the groups are loaded from multiple threads.
+   */
+  @Override
+  public void preloadEdgeTypes() {
+    SqlSession session = sessionFactory.openSession();
+    try {
+      edgeTypeIndex = EdgeTypeIndex.load(session.getMapper(GeneMapper.class));
+    }
+    finally {
+      session.close();
+    }
+  }
+
+  @Override
   public List<Group> loadGroups(int maxMemberCount) {
     SqlSession session = sessionFactory.openSession();
     GroupMapper mapper = session.getMapper(GroupMapper.class);
@@ -93,6 +159,54 @@ public class GroupFactory {
     return groups;
   }
 
+  /**
+   * Load the groups for an incremental run, including the ones with layouts, along with the fingerprints
+   * stored with their layouts.
+   */
+  @Override
+  public List<Group> loadGroupsForUpdate(int maxMemberCount) {
+    SqlSession session = sessionFactory.openSession();
+    try {
+      return session.getMapper(GroupMapper.class).selectGroupsForUpdate(maxMemberCount);
+    }
+    finally {
+      session.close();
+    }
+  }
+
+  /**
+   * @return the id of a group with a fingerprinted layout, keyed by the fingerprint.
+   */
+  @Override
+  public Map<String, Integer> loadLayoutFingerprints() {
+    SqlSession session = sessionFactory.openSession();
+    try {
+      Map<String, Integer> fingerprints = new HashMap<>();
+      for (Group group : session.getMapper(GroupMapper.class).selectLayoutFingerprints()) {
+        fingerprints.put(group.getStoredFingerprint(), group.getId());
+      }
+      return fingerprints;
+    }
+    finally {
+      session.close();
+    }
+  }
+
+  /**
+   * @return the layout of the given group, or null if the layout is no longer stored with the fingerprint.
+   */
+  public String loadLayout(int groupId, String fingerprint, SqlSession session) {
+    return session.getMapper(GroupMapper.class).selectLayoutByFingerprint(groupId, fingerprint);
+  }
+
+  /**
+   * @return the stored layout of the given group, or null if the group has no layout.
+   */
+  public String loadPreviousLayout(Group group, SqlSession session) {
+    return session.getMapper(GroupMapper.class).selectLayout(group);
+  }
+
+  @Override
   public Group loadGroup(String name) {
     SqlSession session = sessionFactory.openSession();
     GroupMapper mapper = session.getMapper(GroupMapper.class);
@@ -113,86 +227,321 @@ public class GroupFactory {
     }
 
     // load blast scores
-    List<BlastScore> scores = mapper.selectBlastScores(group);
-    for (BlastScore score : scores) {
-      score.setGroup(group);
-      group.addBlastScore(score);
+    if (mergeScores) {
+      for (BlastScore score : mapper.selectMergedBlastScores(group)) {
+        addBlastScore(group, score, true);
+      }
+    }
+    else {
+      List<BlastScore> scores = mapper.selectBlastScores(group);
+      for (BlastScore score : scores) {
+        addBlastScore(group, score, false);
+      }
     }
 
     // load edge types
-    setEdgeType(group, mapper.selectOrthologs(group), EdgeType.Ortholog);
-    setEdgeType(group, mapper.selectCoorthologs(group), EdgeType.Coortholog);
-    setEdgeType(group, mapper.selectInparalogs(group), EdgeType.Inparalog);
+    if (edgeTypeIndex != null) {
+      setEdgeType(group, edgeTypeIndex);
+    }
+    else {
+      setEdgeType(group, mapper.selectOrthologs(group), EdgeType.Ortholog);
+      setEdgeType(group, mapper.selectCoorthologs(group), EdgeType.Coortholog);
+      setEdgeType(group, mapper.selectInparalogs(group), EdgeType.Inparalog);
+    }
     setEdgeType(group, mapper.selectPeripheralCore(group), EdgeType.PeripheralCore);
     setEdgeType(group, mapper.selectPeripheralPeripheral(group), EdgeType.PeripheralPeripheral);
   }
 
-  private void setEdgeType(Group group, List<GenePair> edges, EdgeType type) throws OrthoMCLDataException {
-    Map<GenePair, BlastScore> scores = group.getScores();
+  /**
+   * Load the details of a batch of groups, using one query for each kind of detail, instead of one set of
+   * queries per group. The rows returned are assigned to their groups by the group id.
+   * 
+   * @param groups
+   *          the groups to be loaded; the size of the batch should be kept under the 1000 items Oracle allows
+   *          in an IN list.
+   */
+  public void loadGroupDetails(List<Group> groups, SqlSession session) throws OrthoMCLDataException {
+    LOG.debug("Loading details for " + groups.size() + " groups.");
+
+    GeneMapper mapper = session.getMapper(GeneMapper.class);
+    Map<Integer, Group> groupMap = new HashMap<>();
+    for (Group group : groups) {
+      groupMap.put(group.getId(), group);
+    }
+
+    // load genes
+    for (Gene gene : mapper.selectGenesByGroups(groups)) {
+      groupMap.get(gene.getGroupId()).addGene(gene);
+    }
+
+    // load blast scores
+    if (mergeScores) {
+      for (BlastScore score : mapper.selectMergedBlastScoresByGroups(groups)) {
+        addBlastScore(groupMap.get(score.getGroupId()), score, true);
+      }
+    }
+    else {
+      for (BlastScore score : mapper.selectBlastScoresByGroups(groups)) {
+        addBlastScore(groupMap.get(score.getGroupId()), score, false);
+      }
+    }
+
+    // load edge types
+    if (edgeTypeIndex != null) {
+      for (Group group : groups) {
+        setEdgeType(group, edgeTypeIndex);
+      }
+    }
+    else {
+      setEdgeTypes(groupMap, mapper.selectOrthologsByGroups(groups), EdgeType.Ortholog);
+      setEdgeTypes(groupMap, mapper.selectCoorthologsByGroups(groups), EdgeType.Coortholog);
+      setEdgeTypes(groupMap, mapper.selectInparalogsByGroups(groups), EdgeType.Inparalog);
+    }
+    setEdgeTypes(groupMap, mapper.selectPeripheralCoreByGroups(groups), EdgeType.PeripheralCore);
+    setEdgeTypes(groupMap, mapper.selectPeripheralPeripheralByGroups(groups), EdgeType.PeripheralPeripheral);
+  }
+
+  private void setEdgeTypes(Map<Integer, Group> groups, List<GenePair> edges, EdgeType type)
+      throws OrthoMCLDataException {
     for (GenePair edge : edges) {
-      BlastScore score = scores.get(edge);
+      setEdgeType(groups.get(edge.getGroupId()), edge, type);
+    }
+  }
 
-      if (score == null)
-        throw new OrthoMCLDataException("Blast score doesn't exist for edge type '" +
-	       type + "' and gene pair '" + edge.getQueryId() + "' and '" + edge.getSubjectId() + "'");
-      if (score.getType() != EdgeType.Normal)
-        throw new OrthoMCLDataException("Blast score already has a different edge type '" +
-	       type + "' for gene pair '" + edge.getQueryId() + "' and '" + edge.getSubjectId() + "'");
+  /**
+   * Classify the ortholog, coortholog & inparalog edges of the group from the in-memory index.
+   */
+  private void setEdgeType(Group group, EdgeTypeIndex index) throws OrthoMCLDataException {
+    for (BlastScore score : group.getScores().values()) {
+      EdgeType type = index.getType(score.getQueryId(), score.getSubjectId());
+      if (type != null)
+        setEdgeType(group, score, type);
+    }
+  }
 
-      score.setType(type);
+  private void setEdgeType(Group group, List<GenePair> edges, EdgeType type) throws OrthoMCLDataException {
+    for (GenePair edge : edges) {
+      setEdgeType(group, edge, type);
     }
   }
 
-  public void saveLayout(Group group, SqlSession session) throws OrthoMCLDataException {
-    JSONObject jsLayout = new JSONObject();
+  private void setEdgeType(Group group, GenePair edge, EdgeType type) throws OrthoMCLDataException {
+    setEdgeType(group, edge.getQueryId(), edge.getSubjectId(), type);
+  }
 
-    Map<String, Integer> genes = new HashMap<>();
-    try {
-      // output genes
-      JSONArray jsGenes = new JSONArray();
-      int i = 0;
-      for (Gene gene : group.getGenes().values()) {
-        JSONObject jsGene = gene.toJSON();
-        jsGene.put("i", i); // store index of the gene
-        jsGenes.put(jsGene);
-        genes.put(gene.getSourceId(), i);
-        i++;
-      }
-      jsLayout.put("N", jsGenes);
+  /**
+   * Add a loaded score to its group. A score with a gene that is not a member of the group is skipped with a
+   * warning, instead of failing the whole group.
+   */
+  static void addBlastScore(Group group, BlastScore score, boolean merged) {
+    score.setGroup(group);
+    boolean added = merged ? group.addMergedBlastScore(score) : group.addBlastScore(score);
+    if (!added)
+      LOG.warn("The blast score between '" + score.getQueryId() + "' and '" + score.getSubjectId() +
+          "' refers to a gene not in group " + group.getName() + ", and is skipped.");
+  }
 
-      // output scores
-      JSONArray jsScores = new JSONArray();
-      for (BlastScore score : group.getScores().values()) {
-        // use gene index instead of sourceId to save space.
-        JSONObject jsScore = score.toJSON();
-        jsScore.put("Q", genes.get(score.getQueryId()));
-        jsScore.put("S", genes.get(score.getSubjectId()));
+  /**
+   * Classify the blast score of the gene pair; the pair must have a score that isn't classified yet.
+   */
+  static void setEdgeType(Group group, String queryId, String subjectId, EdgeType type)
+      throws OrthoMCLDataException {
+    BlastScore score = group.getScore(queryId, subjectId);
 
-        jsScores.put(jsScore);
-      }
-      jsLayout.put("E", jsScores);
-      group.setLayout(jsLayout.toString());
+    if (score == null)
+      throw new OrthoMCLDataException("Blast score doesn't exist for edge type '" +
+	       type + "' and gene pair '" + queryId + "' and '" + subjectId + "'");
+    if (score.getType() != EdgeType.Normal)
+      throw new OrthoMCLDataException("Blast score already has a different edge type '" +
+	       type + "' for gene pair '" + queryId + "' and '" + subjectId + "'");
 
-      // save layout
-      GroupMapper mapper = session.getMapper(GroupMapper.class);
-      // insert the layout into database
+    score.setType(type);
+  }
+
+  public void saveLayout(Group group, SqlSession session) throws OrthoMCLDataException {
+    createLayout(group);
+
+    // save layout
+    GroupMapper mapper = session.getMapper(GroupMapper.class);
+    // insert the layout into database
+    insertLayout(group, mapper);
+  }
+
+  /**
+   * Insert the layout with its format, and with the fingerprint of the group, if any. The format is read from
+   * the layout itself, since a layout copied from another group may be in a different format than the run.
+   */
+  private static void insertLayout(Group group, GroupMapper mapper) {
+    group.setLayoutFormat(LayoutFormat.of(group.getLayout()).getColumnValue());
+    if (group.getFingerprint() != null)
+      mapper.insertLayoutWithFingerprint(group);
+    else
       mapper.insertLayout(group);
+  }
+
+  /**
+   * Serialize the layout of the group, and store it in the group, so that it can be inserted later.
+   */
+  @Override
+  public void createLayout(Group group) throws OrthoMCLDataException {
+    group.setLayout(layoutFormat.encode(group));
+  }
+
+  @Override
+  public List<Integer> loadLayoutGroupIds() {
+    SqlSession session = sessionFactory.openSession();
+    try {
+      return session.getMapper(GroupMapper.class).selectLayoutGroupIds();
     }
-    catch (JSONException ex) {
-      throw new OrthoMCLDataException(ex);
+    finally {
+      session.close();
     }
   }
 
-  public int removeLayouts() {
+  /**
+   * Stream the layouts of the range over a connection of its own.
+   */
+  @Override
+  public void exportLayouts(int minId, int maxId, LayoutHandler handler) throws OrthoMCLDataException {
+    SqlSession session = sessionFactory.openSession();
+    try {
+      ExportHandler exportHandler = new ExportHandler(handler);
+      session.getMapper(GroupMapper.class).selectLayoutsByRange(minId, maxId, exportHandler);
+      if (exportHandler.error != null)
+        throw exportHandler.error;
+    }
+    finally {
+      session.close();
+    }
+  }
+
+  /**
+   * Find the ids of the layouts in the scope first, then delete them by chunks of ids, each in a transaction
+   * of its own, logging the progress as it goes.
+   */
+  @Override
+  public int removeLayouts(LayoutScope scope, int chunkSize) {
     SqlSession session = sessionFactory.openSession();
     try {
       GroupMapper mapper = session.getMapper(GroupMapper.class);
-      int count = mapper.deleteLayouts();
-      session.commit();
+      List<Integer> ids = selectLayoutGroupIds(mapper, scope);
+      LOG.info(ids.size() + " layouts of " + scope + " to be removed, " + chunkSize + " per commit.");
+
+      int count = 0;
+      long start = System.currentTimeMillis();
+      long lastReport = start;
+      for (int i = 0; i < ids.size(); i += chunkSize) {
+        count += mapper.deleteLayoutsByIds(ids.subList(i, Math.min(i + chunkSize, ids.size())));
+        session.commit();
+        long now = System.currentTimeMillis();
+        if (now - lastReport >= PROGRESS_INTERVAL || i + chunkSize >= ids.size()) {
+          LOG.info(count + " layouts removed, up to group " + ids.get(Math.min(i + chunkSize, ids.size()) - 1) +
+              ", " + ((now - start) / 1000D) + " seconds.");
+          lastReport = now;
+        }
+      }
       return count;
     }
     finally {
       session.close();
     }
   }
+
+  /**
+   * @return the ids of the layouts in the scope, in ascending order; the names are queried in chunks, as
+   *         Oracle allows at most 1000 items in an IN list.
+   */
+  private static List<Integer> selectLayoutGroupIds(GroupMapper mapper, LayoutScope scope) {
+    List<String> names = scope.getNames();
+    if (names == null)
+      return mapper.selectLayoutGroupIdsInScope(scope.getMinId(), scope.getMaxId(), scope.isGroupScoped(),
+          scope.getMinMemberCount(), scope.getMaxMemberCount(), null);
+    Set<Integer> ids = new TreeSet<>();
+    for (int i = 0; i < names.size(); i += MAX_IN_LIST_SIZE) {
+      ids.addAll(mapper.selectLayoutGroupIdsInScope(scope.getMinId(), scope.getMaxId(), true,
+          scope.getMinMemberCount(), scope.getMaxMemberCount(), names.subList(i, Math.min(i + MAX_IN_LIST_SIZE,
+              names.size()))));
+    }
+    return new ArrayList<>(ids);
+  }
+
+  /**
+   * A session on one connection of the pool; the layouts are inserted with JDBC batching if the session is
+   * opened for a batch.
+   */
+  private class DatabaseSession implements GroupSession {
+
+    private final SqlSession session;
+
+    private DatabaseSession(SqlSession session) {
+      this.session = session;
+    }
+
+    @Override
+    public void loadGroupDetail(Group group) throws OrthoMCLDataException {
+      GroupFactory.this.loadGroupDetail(group, session);
+    }
+
+    @Override
+    public void loadGroupDetails(List<Group> groups) throws OrthoMCLDataException {
+      GroupFactory.this.loadGroupDetails(groups, session);
+    }
+
+    @Override
+    public String loadLayout(int groupId, String fingerprint) {
+      return GroupFactory.this.loadLayout(groupId, fingerprint, session);
+    }
+
+    @Override
+    public String loadPreviousLayout(Group group) {
+      return GroupFactory.this.loadPreviousLayout(group, session);
+    }
+
+    @Override
+    public void insertLayout(Group group, boolean replace) {
+      GroupMapper mapper = session.getMapper(GroupMapper.class);
+      if (replace)
+        mapper.deleteLayout(group);
+      GroupFactory.insertLayout(group, mapper);
+    }
+
+    @Override
+    public void commit() {
+      session.commit();
+    }
+
+    @Override
+    public void rollback() {
+      session.rollback();
+    }
+
+    @Override
+    public void close() {
+      session.close();
+    }
+  }
+
+  /**
+   * Passes the streamed layouts to the handler, and stops the stream at the first error.
+   */
+  private static class ExportHandler implements ResultHandler<Group> {
+
+    private final LayoutHandler handler;
+    private OrthoMCLDataException error;
+
+    private ExportHandler(LayoutHandler handler) {
+      this.handler = handler;
+    }
+
+    @Override
+    public void handleResult(ResultContext<? extends Group> context) {
+      try {
+        handler.handleLayout(context.getResultObject());
+      }
+      catch (OrthoMCLDataException ex) {
+        error = ex;
+        context.stop();
+      }
+    }
+  }
 }
@@ -0,0 +1,47 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.util.List;
+
+import org.orthomcl.data.common.layout.core.Group;
+
+/**
+ * A session of a {@link GroupSource}, which loads the details of groups and inserts their layouts. The
+ * inserted layouts are only kept once the session is committed.
+ */
+public interface GroupSession extends AutoCloseable {
+
+  void loadGroupDetail(Group group) throws OrthoMCLDataException;
+
+  /**
+   * Load the details of a batch of groups at once.
+   * 
+   * @param groups
+   *          the groups to be loaded; the size of the batch should be kept under 1000 groups.
+   */
+  void loadGroupDetails(List<Group> groups) throws OrthoMCLDataException;
+
+  /**
+   * @return the layout of the given group, or null if the layout is no longer stored with the fingerprint.
+   */
+  String loadLayout(int groupId, String fingerprint) throws OrthoMCLDataException;
+
+  /**
+   * @return the stored layout of the given group, or null if the group has no layout.
+   */
+  String loadPreviousLayout(Group group) throws OrthoMCLDataException;
+
+  /**
+   * Insert the serialized layout of the group, with its fingerprint if it has one.
+   * 
+   * @param replace
+   *          true to delete the existing layout of the group first.
+   */
+  void insertLayout(Group group, boolean replace) throws OrthoMCLDataException;
+
+  void commit() throws OrthoMCLDataException;
+
+  void rollback();
+
+  @Override
+  void close();
+}
@@ -0,0 +1,97 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.util.List;
+import java.util.Map;
+
+import org.orthomcl.data.common.layout.core.Group;
+
+/**
+ * Where the layout generation gets its groups from, and where it saves their layouts to. The groups are
+ * listed by the source, while their details are loaded, and their layouts inserted, through a
+ * {@link GroupSession}, so that each task of the pipeline can keep its own session.
+ * 
+ * The {@link GroupFactory} reads the groups from the database; the {@link FileGroupSource} reads them from
+ * local files, so that the layouts can be generated without the database.
+ */
+public interface GroupSource {
+
+  /**
+   * Receives the stored layouts, one at a time.
+   */
+  interface LayoutHandler {
+
+    /**
+     * @param group
+     *          the group with its id, name, layout and the fingerprint stored with the layout, if any.
+     */
+    void handleLayout(Group group) throws OrthoMCLDataException;
+  }
+
+  /**
+   * @param layoutFormat
+   *          the format of the layouts created from now on.
+   */
+  void setLayoutFormat(LayoutFormat layoutFormat);
+
+  /**
+   * @return the groups without layouts, with up to the given number of members.
+   */
+  List<Group> loadGroups(int maxMemberCount) throws OrthoMCLDataException;
+
+  /**
+   * Load the groups for an incremental run, including the ones with layouts, along with the fingerprints
+   * stored with their layouts.
+   */
+  List<Group> loadGroupsForUpdate(int maxMemberCount) throws OrthoMCLDataException;
+
+  /**
+   * @return the id of a group with a fingerprinted layout, keyed by the fingerprint.
+   */
+  Map<String, Integer> loadLayoutFingerprints() throws OrthoMCLDataException;
+
+  /**
+   * @return the group of the given name, without its details, or null if there is no such group.
+   */
+  Group loadGroup(String name) throws OrthoMCLDataException;
+
+  /**
+   * Load all the ortholog, coortholog & inparalog pairs into memory, if the source would otherwise query
+   * them for each group. Must be called before the groups are loaded from multiple threads.
+   */
+  void preloadEdgeTypes() throws OrthoMCLDataException;
+
+  /**
+   * Open a session for one task; a session is only used by one thread at a time.
+   * 
+   * @param batch
+   *          true if the session inserts layouts, which are then batched until they are committed; false if
+   *          the session loads groups.
+   */
+  GroupSession openSession(boolean batch) throws OrthoMCLDataException;
+
+  /**
+   * Serialize the layout of the group, and store it in the group, so that it can be inserted later.
+   */
+  void createLayout(Group group) throws OrthoMCLDataException;
+
+  /**
+   * @return the ids of the groups with stored layouts, in ascending order.
+   */
+  List<Integer> loadLayoutGroupIds() throws OrthoMCLDataException;
+
+  /**
+   * Pass the stored layouts of the groups with ids in the given range, inclusive, to the handler, one at a
+   * time, without holding them in memory. The ranges can be exported by several threads at once.
+   */
+  void exportLayouts(int minId, int maxId, LayoutHandler handler) throws OrthoMCLDataException;
+
+  /**
+   * Remove the layouts of the groups in the scope, committing them in chunks, so that the removal of many
+   * layouts holds no long transaction, and an interrupted removal keeps the chunks done.
+   * 
+   * @param chunkSize
+   *          the number of layouts removed in each commit, up to 1000.
+   * @return the number of layouts removed.
+   */
+  int removeLayouts(LayoutScope scope, int chunkSize) throws OrthoMCLDataException;
+}
@@ -0,0 +1,196 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import org.orthomcl.data.common.layout.core.Group;
+
+/**
+ * A local archive of the group layouts, written by {@link LayoutArchiveWriter}, which is memory-mapped, so
+ * that a layout can be looked up by the name of its group without the database. The archive is laid out as:
+ *
+ * <pre>
+ * header   magic, version, count, 0, index offset (long)
+ * layouts  the layouts as UTF-8, in the order they were added; a layout never crosses a segment boundary
+ * index    count entries of name offset, name length, group id, layout length, layout offset (long)
+ * names    the group names as UTF-8
+ * </pre>
+ *
+ * The numbers are big-endian. The index entries are sorted by the unsigned bytes of the names, so that a
+ * lookup is a binary search over the mapped index, comparing the names in place. The layouts are mapped in
+ * segments of {@link #SEGMENT_SIZE}, and returned as read-only views of the mapped file, so they are not
+ * copied until they are decoded.
+ *
+ * An archive can be shared by threads. The file is unmapped when the archive is garbage collected.
+ */
+public class LayoutArchive {
+
+  /**
+   * "OLA1"
+   */
+  public static final int MAGIC = 0x4F4C4131;
+
+  public static final int VERSION = 1;
+
+  static final int HEADER_SIZE = 24;
+
+  static final int ENTRY_SIZE = 24;
+
+  /**
+   * The layouts are mapped in segments of this size, since a buffer can map at most 2GB.
+   */
+  static final long SEGMENT_SIZE = 1L << 30;
+
+  public static LayoutArchive open(File file) throws OrthoMCLDataException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      return new LayoutArchive(file, channel);
+    }
+    catch (IOException ex) {
+      throw new OrthoMCLDataException("Unable to open the layout archive: " + file.getAbsolutePath(), ex);
+    }
+  }
+
+  private final File file;
+  private final int count;
+  private final ByteBuffer index;
+  private final int namesStart;
+  private final ByteBuffer[] segments;
+
+  private LayoutArchive(File file, FileChannel channel) throws IOException, OrthoMCLDataException {
+    this.file = file;
+    long size = channel.size();
+    if (size < HEADER_SIZE)
+      throw new OrthoMCLDataException("Not a layout archive: " + file.getAbsolutePath());
+    ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+    if (header.getInt(0) != MAGIC)
+      throw new OrthoMCLDataException("Not a layout archive: " + file.getAbsolutePath());
+    if (header.getInt(4) != VERSION)
+      throw new OrthoMCLDataException("Unsupported layout archive version " + header.getInt(4) + ": " +
+          file.getAbsolutePath());
+    count = header.getInt(8);
+    long indexOffset = header.getLong(16);
+    if (count < 0 || indexOffset < HEADER_SIZE || indexOffset > size || size - indexOffset > Integer.MAX_VALUE ||
+        (long) count * ENTRY_SIZE > size - indexOffset)
+      throw new OrthoMCLDataException("The layout archive is corrupted: " + file.getAbsolutePath());
+
+    index = channel.map(MapMode.READ_ONLY, indexOffset, size - indexOffset);
+    namesStart = count * ENTRY_SIZE;
+    segments = new ByteBuffer[(int) ((indexOffset + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+    for (int i = 0; i < segments.length; i++) {
+      long start = i * SEGMENT_SIZE;
+      segments[i] = channel.map(MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, indexOffset - start));
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * @return the number of layouts in the archive.
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * @return the name of the group at the given position of the index, which is sorted by name.
+   */
+  public String getName(int position) {
+    if (position < 0 || position >= count)
+      throw new IndexOutOfBoundsException("Position: " + position + ", Size: " + count);
+    ByteBuffer name = index.duplicate();
+    int start = namesStart + index.getInt(position * ENTRY_SIZE);
+    name.limit(start + index.getInt(position * ENTRY_SIZE + 4));
+    name.position(start);
+    return StandardCharsets.UTF_8.decode(name).toString();
+  }
+
+  public boolean contains(String name) {
+    return find(name) >= 0;
+  }
+
+  /**
+   * @return the id of the group, or -1 if the group has no layout in the archive.
+   */
+  public int getGroupId(String name) {
+    int position = find(name);
+    return (position < 0) ? -1 : index.getInt(position * ENTRY_SIZE + 8);
+  }
+
+  /**
+   * @return a read-only view of the layout in the mapped file, as UTF-8, or null if the group has no layout
+   *         in the archive.
+   */
+  public ByteBuffer getLayoutBuffer(String name) {
+    int position = find(name);
+    if (position < 0)
+      return null;
+    int length = index.getInt(position * ENTRY_SIZE + 12);
+    long offset = index.getLong(position * ENTRY_SIZE + 16);
+    ByteBuffer layout = segments[(int) (offset / SEGMENT_SIZE)].duplicate();
+    int start = (int) (offset % SEGMENT_SIZE);
+    layout.limit(start + length);
+    layout.position(start);
+    return layout.slice();
+  }
+
+  /**
+   * @return the layout of the group, or null if the group has no layout in the archive.
+   */
+  public String getLayout(String name) {
+    ByteBuffer layout = getLayoutBuffer(name);
+    return (layout == null) ? null : StandardCharsets.UTF_8.decode(layout).toString();
+  }
+
+  /**
+   * @return the group with the genes, their positions, and the scores of its layout, or null if the group
+   *         has no layout in the archive.
+   */
+  public Group loadGroup(String name) throws OrthoMCLDataException {
+    int position = find(name);
+    if (position < 0)
+      return null;
+    return LayoutFormat.decode(index.getInt(position * ENTRY_SIZE + 8), name, getLayout(name));
+  }
+
+  /**
+   * @return the position of the group in the index, or -1 if it is not found.
+   */
+  private int find(String name) {
+    byte[] key = name.getBytes(StandardCharsets.UTF_8);
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int result = compareName(middle, key);
+      if (result < 0)
+        low = middle + 1;
+      else if (result > 0)
+        high = middle - 1;
+      else
+        return middle;
+    }
+    return -1;
+  }
+
+  /**
+   * Compare the name at the given position with the key, by their unsigned bytes, as the index is sorted.
+   */
+  private int compareName(int position, byte[] key) {
+    int start = namesStart + index.getInt(position * ENTRY_SIZE);
+    int length = index.getInt(position * ENTRY_SIZE + 4);
+    int common = Math.min(length, key.length);
+    for (int i = 0; i < common; i++) {
+      int result = (index.get(start + i) & 0xFF) - (key[i] & 0xFF);
+      if (result != 0)
+        return result;
+    }
+    return length - key.length;
+  }
+}
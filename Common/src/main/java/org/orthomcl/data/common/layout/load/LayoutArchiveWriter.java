@@ -0,0 +1,172 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Writes the layouts into a {@link LayoutArchive}. The layouts are appended as they are added, in any order,
+ * and the index, sorted by group name, is written when the archive is finished. The archive is written to a
+ * temporary file next to the target, which replaces the target only when the archive is finished.
+ *
+ * A writer is not thread safe.
+ */
+public class LayoutArchiveWriter {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private static final Logger LOG = Logger.getLogger(LayoutArchiveWriter.class);
+
+  public static LayoutArchiveWriter create(File file) throws OrthoMCLDataException {
+    File tempFile = new File(file.getAbsolutePath() + ".tmp");
+    try {
+      return new LayoutArchiveWriter(file, tempFile);
+    }
+    catch (IOException ex) {
+      throw new OrthoMCLDataException("Unable to create the layout archive: " + tempFile.getAbsolutePath(), ex);
+    }
+  }
+
+  private final File file;
+  private final File tempFile;
+  private final DataOutputStream out;
+  private final List<Entry> entries = new ArrayList<>();
+  private long position;
+
+  private LayoutArchiveWriter(File file, File tempFile) throws IOException {
+    this.file = file;
+    this.tempFile = tempFile;
+    this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE));
+    // the header is written when the archive is finished
+    out.write(new byte[LayoutArchive.HEADER_SIZE]);
+    position = LayoutArchive.HEADER_SIZE;
+  }
+
+  /**
+   * @return the number of layouts added.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  public void add(int groupId, String name, String layout) throws OrthoMCLDataException {
+    byte[] bytes = layout.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > LayoutArchive.SEGMENT_SIZE)
+      throw new OrthoMCLDataException("The layout of group " + name + " is too large for the archive: " +
+          bytes.length + " bytes");
+    try {
+      // a layout can't cross a segment boundary, so that it can be read from one mapped segment
+      long segment = position / LayoutArchive.SEGMENT_SIZE;
+      if (bytes.length > 0 && (position + bytes.length - 1) / LayoutArchive.SEGMENT_SIZE != segment) {
+        long boundary = (segment + 1) * LayoutArchive.SEGMENT_SIZE;
+        out.write(new byte[(int) (boundary - position)]);
+        position = boundary;
+      }
+      out.write(bytes);
+    }
+    catch (IOException ex) {
+      throw new OrthoMCLDataException("Unable to write the layout archive: " + tempFile.getAbsolutePath(), ex);
+    }
+    entries.add(new Entry(name.getBytes(StandardCharsets.UTF_8), groupId, position, bytes.length));
+    position += bytes.length;
+  }
+
+  /**
+   * Write the index, and move the archive to its file; the writer can't be used afterwards.
+   */
+  public void finish() throws OrthoMCLDataException {
+    Collections.sort(entries);
+    for (int i = 1; i < entries.size(); i++) {
+      if (entries.get(i - 1).compareTo(entries.get(i)) == 0) {
+        discard();
+        throw new OrthoMCLDataException("The group " + new String(entries.get(i).name, StandardCharsets.UTF_8) +
+            " has more than one layout.");
+      }
+    }
+
+    try {
+      long indexOffset = position;
+      int nameOffset = 0;
+      for (Entry entry : entries) {
+        out.writeInt(nameOffset);
+        out.writeInt(entry.name.length);
+        out.writeInt(entry.groupId);
+        out.writeInt(entry.length);
+        out.writeLong(entry.offset);
+        nameOffset += entry.name.length;
+      }
+      for (Entry entry : entries) {
+        out.write(entry.name);
+      }
+      out.close();
+
+      try (RandomAccessFile header = new RandomAccessFile(tempFile, "rw")) {
+        header.writeInt(LayoutArchive.MAGIC);
+        header.writeInt(LayoutArchive.VERSION);
+        header.writeInt(entries.size());
+        header.writeInt(0);
+        header.writeLong(indexOffset);
+      }
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (IOException ex) {
+      discard();
+      throw new OrthoMCLDataException("Unable to write the layout archive: " + tempFile.getAbsolutePath(), ex);
+    }
+    LOG.info(entries.size() + " layouts archived in " + file.getAbsolutePath());
+  }
+
+  /**
+   * Remove the unfinished archive, leaving the file of the archive untouched.
+   */
+  public void discard() {
+    try {
+      out.close();
+    }
+    catch (IOException ex) {
+      LOG.warn("Unable to close the layout archive: " + tempFile.getAbsolutePath(), ex);
+    }
+    if (tempFile.exists() && !tempFile.delete())
+      LOG.warn("Unable to delete the unfinished layout archive: " + tempFile.getAbsolutePath());
+  }
+
+  private static class Entry implements Comparable<Entry> {
+
+    private final byte[] name;
+    private final int groupId;
+    private final long offset;
+    private final int length;
+
+    private Entry(byte[] name, int groupId, long offset, int length) {
+      this.name = name;
+      this.groupId = groupId;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    /**
+     * Compare the names by their unsigned bytes, as they are compared by the archive.
+     */
+    @Override
+    public int compareTo(Entry entry) {
+      int common = Math.min(name.length, entry.name.length);
+      for (int i = 0; i < common; i++) {
+        int result = (name[i] & 0xFF) - (entry.name[i] & 0xFF);
+        if (result != 0)
+          return result;
+      }
+      return name.length - entry.name.length;
+    }
+  }
+}
@@ -0,0 +1,377 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.log4j.Logger;
+import org.orthomcl.data.common.layout.core.Group;
+
+/**
+ * Export all the stored layouts for release packaging, as gzipped shards, each with the layouts of a range of
+ * group ids. The ids are split into ranges of about the same number of layouts, and the shards are exported
+ * by several tasks at once, each streaming its ranges over its own connection and compressing them in its own
+ * thread.
+ *
+ * Each shard has the lines of the layout file of the {@link FileGroupSource}, ordered by group id:
+ *
+ * <pre>
+ * ortholog_group_id  name  fingerprint  layout
+ * </pre>
+ *
+ * When all the shards are written, a manifest is written with a line for each shard:
+ *
+ * <pre>
+ * file  min_id  max_id  rows  bytes  sha256
+ * </pre>
+ *
+ * where bytes and sha256 are of the gzipped file. The shards are written into a staging directory inside the
+ * output directory, which a failed export removes, leaving the previous export as it is. Once all the shards
+ * are written, the previous manifest and shards are removed, including the shards beyond the new number of
+ * shards, and the new shards are moved in; the manifest is written last, so an output directory without a
+ * manifest has an incomplete export.
+ */
+public class LayoutBulkExporter {
+
+  private static final String ARG_OUTPUT = "output";
+  private static final String ARG_SHARDS = "shards";
+  private static final String ARG_CONNECTIONS = "connections";
+  private static final String ARG_SOURCE = "source";
+
+  public static final String DEFAULT_SHARDS = "32";
+  public static final String DEFAULT_CONNECTIONS = "4";
+
+  public static final String MANIFEST_FILE = "manifest.txt";
+
+  private static final String STAGING_DIRECTORY = ".staging";
+
+  private static final Pattern SHARD_NAME = Pattern.compile("layouts-\\d+\\.txt\\.gz");
+
+  private static final String MANIFEST_HEADER = "file\tmin_id\tmax_id\trows\tbytes\tsha256";
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private static final Logger LOG = Logger.getLogger(LayoutBulkExporter.class);
+
+  public static void main(String[] args) throws OrthoMCLDataException {
+    Options options = prepareOptions();
+    CommandLineParser parser = new DefaultParser();
+    try {
+      CommandLine commandLine = parser.parse(options, args);
+      int shardCount = Integer.valueOf(commandLine.getOptionValue(ARG_SHARDS, DEFAULT_SHARDS));
+      int connectionCount = Integer.valueOf(commandLine.getOptionValue(ARG_CONNECTIONS, DEFAULT_CONNECTIONS));
+      if (shardCount < 1 || connectionCount < 1)
+        throw new OrthoMCLDataException("The number of shards and connections must be positive.");
+      GroupSource groupSource = commandLine.hasOption(ARG_SOURCE) ? new FileGroupSource(new File(
+          commandLine.getOptionValue(ARG_SOURCE))) : new GroupFactory(connectionCount + 1);
+      LayoutBulkExporter exporter = new LayoutBulkExporter(groupSource, connectionCount);
+      exporter.export(new File(commandLine.getOptionValue(ARG_OUTPUT)), shardCount);
+    }
+    catch (ParseException ex) {
+      System.err.println(ex);
+      HelpFormatter formatter = new HelpFormatter();
+      formatter.printHelp("orthomclLayoutBulkExport -output <dir> [-shards " + DEFAULT_SHARDS +
+          "] [-connections " + DEFAULT_CONNECTIONS + "] [-source <dir>]", options);
+      System.exit(-1);
+    }
+  }
+
+  private static Options prepareOptions() {
+    Options options = new Options();
+
+    options.addOption(Option.builder()
+        .option(ARG_OUTPUT)
+        .desc("The directory to write the shards and the manifest to; it is created if needed.")
+        .hasArg()
+        .required()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_SHARDS)
+        .desc("The number of shards, each with a range of group ids. Default is " + DEFAULT_SHARDS)
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_CONNECTIONS)
+        .desc("The number of shards exported at once, each over its own connection. Default is " +
+            DEFAULT_CONNECTIONS)
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_SOURCE)
+        .desc("Export the layouts from the layouts.txt file in the given directory, as written by " +
+            "LayoutGenerator -source, instead of the database.")
+        .hasArg()
+        .build());
+
+    return options;
+  }
+
+  private final GroupSource groupSource;
+  private final int connectionCount;
+
+  public LayoutBulkExporter(GroupSource groupSource, int connectionCount) {
+    this.groupSource = groupSource;
+    this.connectionCount = connectionCount;
+  }
+
+  /**
+   * @return the shards exported, in the order of their ranges.
+   */
+  public List<Shard> export(File directory, int shardCount) throws OrthoMCLDataException {
+    if (!directory.isDirectory() && !directory.mkdirs())
+      throw new OrthoMCLDataException("Unable to create the output directory: " + directory.getAbsolutePath());
+    long start = System.currentTimeMillis();
+
+    File staging = new File(directory, STAGING_DIRECTORY);
+    List<Shard> shards = partition(groupSource.loadLayoutGroupIds(), shardCount, directory, staging);
+
+    // the staging directory of an interrupted export may be left over
+    deleteStaging(staging);
+    if (!staging.mkdir())
+      throw new OrthoMCLDataException("Unable to create the staging directory: " + staging.getAbsolutePath());
+    LOG.info("Exporting layouts into " + shards.size() + " shards with " + connectionCount + " connections...");
+
+    ExecutorService executor = Executors.newFixedThreadPool(connectionCount);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (final Shard shard : shards) {
+        futures.add(executor.submit(() -> {
+          shard.export(groupSource);
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      publish(directory, staging, shards);
+    }
+    catch (ExecutionException ex) {
+      throw (ex.getCause() instanceof OrthoMCLDataException) ? (OrthoMCLDataException) ex.getCause()
+          : new OrthoMCLDataException("Unable to export the layouts", ex.getCause());
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new OrthoMCLDataException("The export is interrupted.", ex);
+    }
+    finally {
+      // stop the remaining shards on a failure, and wait for the running ones before removing their files
+      executor.shutdownNow();
+      try {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      deleteStaging(staging);
+    }
+
+    long rows = 0, bytes = 0;
+    for (Shard shard : shards) {
+      rows += shard.rows;
+      bytes += shard.bytes;
+    }
+    LOG.info("Done. " + rows + " layouts exported into " + shards.size() + " shards of " + bytes + " bytes in " +
+        ((System.currentTimeMillis() - start) / 1000D) + " seconds.");
+    return shards;
+  }
+
+  /**
+   * Split the sorted ids into ranges of about the same number of ids.
+   */
+  private static List<Shard> partition(List<Integer> ids, int shardCount, File directory, File staging) {
+    shardCount = Math.min(shardCount, ids.size());
+    List<Shard> shards = new ArrayList<>(shardCount);
+    for (int i = 0; i < shardCount; i++) {
+      int first = (int) ((long) ids.size() * i / shardCount);
+      int last = (int) ((long) ids.size() * (i + 1) / shardCount) - 1;
+      String name = String.format("layouts-%04d.txt.gz", i);
+      shards.add(new Shard(new File(directory, name), new File(staging, name), ids.get(first), ids.get(last),
+          last - first + 1));
+    }
+    return shards;
+  }
+
+  /**
+   * Replace the previous export in the output directory with the staged shards and a new manifest.
+   */
+  private static void publish(File directory, File staging, List<Shard> shards) throws OrthoMCLDataException {
+    File manifest = new File(directory, MANIFEST_FILE);
+    File stagedManifest = new File(staging, MANIFEST_FILE);
+    writeManifest(stagedManifest, shards);
+
+    File[] previous = directory.listFiles((dir, name) -> SHARD_NAME.matcher(name).matches());
+    if (previous == null)
+      throw new OrthoMCLDataException("Unable to list the output directory: " + directory.getAbsolutePath());
+    try {
+      Files.deleteIfExists(manifest.toPath());
+      for (File file : previous) {
+        Files.delete(file.toPath());
+      }
+      for (Shard shard : shards) {
+        Files.move(shard.stagedFile.toPath(), shard.file.toPath());
+      }
+      Files.move(stagedManifest.toPath(), manifest.toPath());
+    }
+    catch (IOException ex) {
+      throw new OrthoMCLDataException("Unable to move the export into " + directory.getAbsolutePath() +
+          "; it has no manifest until the export is run again.", ex);
+    }
+    if (previous.length > shards.size())
+      LOG.info((previous.length - shards.size()) + " shards of the previous export are removed.");
+  }
+
+  /**
+   * Remove the staging directory and the files in it, if any.
+   */
+  private static void deleteStaging(File staging) {
+    File[] files = staging.listFiles();
+    if (files == null)
+      return;
+    for (File file : files) {
+      if (!file.delete())
+        LOG.warn("Unable to delete the unfinished file: " + file.getAbsolutePath());
+    }
+    if (!staging.delete())
+      LOG.warn("Unable to delete the staging directory: " + staging.getAbsolutePath());
+  }
+
+  private static void writeManifest(File file, List<Shard> shards) throws OrthoMCLDataException {
+    try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file),
+        StandardCharsets.UTF_8))) {
+      writer.println(MANIFEST_HEADER);
+      for (Shard shard : shards) {
+        writer.println(shard.file.getName() + "\t" + shard.minId + "\t" + shard.maxId + "\t" + shard.rows + "\t" +
+            shard.bytes + "\t" + shard.checksum);
+      }
+      if (writer.checkError())
+        throw new IOException("Unable to write " + file.getAbsolutePath());
+    }
+    catch (IOException ex) {
+      throw new OrthoMCLDataException("Unable to write the manifest: " + file.getAbsolutePath(), ex);
+    }
+  }
+
+  /**
+   * A range of group ids, and the file its layouts are exported to.
+   */
+  public static class Shard {
+
+    private final File file;
+    private final File stagedFile;
+    private final int minId;
+    private final int maxId;
+    private final int expectedRows;
+    private int rows;
+    private long bytes;
+    private String checksum;
+
+    private Shard(File file, File stagedFile, int minId, int maxId, int expectedRows) {
+      this.file = file;
+      this.stagedFile = stagedFile;
+      this.minId = minId;
+      this.maxId = maxId;
+      this.expectedRows = expectedRows;
+    }
+
+    public File getFile() {
+      return file;
+    }
+
+    public int getMinId() {
+      return minId;
+    }
+
+    public int getMaxId() {
+      return maxId;
+    }
+
+    public int getRows() {
+      return rows;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    /**
+     * @return the SHA-256 of the gzipped file, in hex.
+     */
+    public String getChecksum() {
+      return checksum;
+    }
+
+    private void export(GroupSource groupSource) throws OrthoMCLDataException, IOException {
+      long start = System.currentTimeMillis();
+      MessageDigest digest = newDigest();
+      try (Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(
+          new DigestOutputStream(new FileOutputStream(stagedFile), digest), BUFFER_SIZE), StandardCharsets.UTF_8),
+          BUFFER_SIZE)) {
+        groupSource.exportLayouts(minId, maxId, group -> write(writer, group));
+      }
+      bytes = stagedFile.length();
+      checksum = LayoutFingerprint.toHex(digest.digest());
+
+      if (rows != expectedRows)
+        LOG.warn(file.getName() + " has " + rows + " layouts instead of " + expectedRows +
+            "; the layouts have changed during the export.");
+      LOG.debug(file.getName() + ": " + rows + " layouts of groups " + minId + " to " + maxId + " exported in " +
+          ((System.currentTimeMillis() - start) / 1000D) + " seconds.");
+    }
+
+    private void write(Writer writer, Group group) throws OrthoMCLDataException {
+      String fingerprint = group.getStoredFingerprint();
+      try {
+        writer.write(Integer.toString(group.getId()));
+        writer.write('\t');
+        writer.write(group.getName());
+        writer.write('\t');
+        writer.write((fingerprint == null) ? "" : fingerprint);
+        writer.write('\t');
+        writer.write(group.getLayout());
+        writer.write('\n');
+      }
+      catch (IOException ex) {
+        throw new OrthoMCLDataException("Unable to write the shard: " + stagedFile.getAbsolutePath(), ex);
+      }
+      rows++;
+    }
+
+    private static MessageDigest newDigest() {
+      try {
+        return MessageDigest.getInstance("SHA-256");
+      }
+      catch (NoSuchAlgorithmException ex) {
+        // every JVM is required to support SHA-256
+        throw new IllegalStateException(ex);
+      }
+    }
+  }
+}
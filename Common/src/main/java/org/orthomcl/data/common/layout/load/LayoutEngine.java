@@ -0,0 +1,116 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.orthomcl.data.common.layout.core.Group;
+import org.orthomcl.data.common.layout.core.GroupGraph;
+import org.orthomcl.data.common.layout.engine.BarnesHutLayout;
+import org.orthomcl.data.common.layout.engine.ForceLayout;
+import org.orthomcl.shared.model.layout.Layout;
+import org.orthomcl.shared.model.layout.SpringLayout;
+
+/**
+ * The layout engines the groups can be laid out with.
+ */
+public enum LayoutEngine {
+  /**
+   * The {@link SpringLayout} of the shared model, with all-pairs repulsions; it works on the {@link GroupGraph}
+   * view of the group.
+   */
+  Spring("spring"),
+  /**
+   * The {@link ForceLayout}, with all-pairs repulsions; it can also be warm-started, and parallelized.
+   */
+  Force("force"),
+  /**
+   * The {@link BarnesHutLayout}, with the repulsions approximated by a quadtree, for large groups; it can also
+   * be warm-started, and parallelized.
+   */
+  BarnesHut("barneshut");
+
+  public static LayoutEngine fromName(String name) throws OrthoMCLDataException {
+    for (LayoutEngine engine : values()) {
+      if (engine.name.equalsIgnoreCase(name))
+        return engine;
+    }
+    throw new OrthoMCLDataException("Unknown layout engine: " + name);
+  }
+
+  private final String name;
+
+  private LayoutEngine(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return true if the engine can compute the forces of a layout in a fork/join pool; the spring layout of
+   *         the shared model can't.
+   */
+  public boolean isParallel() {
+    return this != Spring;
+  }
+
+  /**
+   * @return a layout of the group, starting from random positions.
+   */
+  public Layout createLayout(Group group, Random random) {
+    return createLayout(group, random, null);
+  }
+
+  /**
+   * @param pool
+   *          the pool to compute the forces of each iteration in, or null to compute them in the calling
+   *          thread; only the engines that are {@link #isParallel()} can be given a pool.
+   * @return a layout of the group, starting from random positions.
+   */
+  public Layout createLayout(Group group, Random random, ForkJoinPool pool) {
+    if (this == Spring) {
+      if (pool != null)
+        throw new IllegalArgumentException("The spring engine can't compute its forces in parallel.");
+      return new SpringLayout(new GroupGraph(group), random);
+    }
+    ForceLayout layout = createColdLayout(group, random);
+    layout.setPool(pool);
+    return layout;
+  }
+
+  /**
+   * @return true if the engine can start a layout from the current positions of the genes; the spring layout
+   *         of the shared model always starts from random positions.
+   */
+  public boolean canWarmStart() {
+    return this != Spring;
+  }
+
+  /**
+   * @return a layout of the group, starting from the current positions of the genes; only the engines that
+   *         {@link #canWarmStart()} can create one.
+   */
+  public ForceLayout createWarmLayout(Group group, Random random) {
+    return createForceLayout(group, random, true);
+  }
+
+  /**
+   * @return a layout of the group on the same engine as {@link #createWarmLayout}, but starting from random
+   *         positions, to compare with the warm start.
+   */
+  public ForceLayout createColdLayout(Group group, Random random) {
+    return createForceLayout(group, random, false);
+  }
+
+  private ForceLayout createForceLayout(Group group, Random random, boolean warm) {
+    switch (this) {
+      case Force:
+        return new ForceLayout(new GroupGraph(group), random, warm);
+      case BarnesHut:
+        return new BarnesHutLayout(new GroupGraph(group), random, warm);
+      default:
+        throw new IllegalStateException("The " + name + " engine can't be warm-started.");
+    }
+  }
+}
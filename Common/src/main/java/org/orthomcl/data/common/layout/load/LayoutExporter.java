@@ -0,0 +1,90 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.io.File;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.log4j.Logger;
+
+/**
+ * Export all the stored layouts into a local {@link LayoutArchive}, so that the layouts can be read by the
+ * viewer and the other tools without the database.
+ */
+public class LayoutExporter {
+
+  private static final String ARG_OUTPUT = "output";
+  private static final String ARG_SOURCE = "source";
+
+  private static final Logger LOG = Logger.getLogger(LayoutExporter.class);
+
+  public static void main(String[] args) throws OrthoMCLDataException {
+    Options options = prepareOptions();
+    CommandLineParser parser = new DefaultParser();
+    try {
+      CommandLine commandLine = parser.parse(options, args);
+      GroupSource groupSource = commandLine.hasOption(ARG_SOURCE) ? new FileGroupSource(new File(
+          commandLine.getOptionValue(ARG_SOURCE))) : new GroupFactory(1);
+      new LayoutExporter(groupSource).export(new File(commandLine.getOptionValue(ARG_OUTPUT)));
+    }
+    catch (ParseException ex) {
+      System.err.println(ex);
+      HelpFormatter formatter = new HelpFormatter();
+      formatter.printHelp("orthomclLayoutExport -output <file> [-source <dir>]", options);
+      System.exit(-1);
+    }
+  }
+
+  private static Options prepareOptions() {
+    Options options = new Options();
+
+    options.addOption(Option.builder()
+        .option(ARG_OUTPUT)
+        .desc("The archive file to write; an existing archive is replaced once the new one is complete.")
+        .hasArg()
+        .required()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_SOURCE)
+        .desc("Export the layouts from the layouts.txt file in the given directory, as written by " +
+            "LayoutGenerator -source, instead of the database.")
+        .hasArg()
+        .build());
+
+    return options;
+  }
+
+  private final GroupSource groupSource;
+
+  public LayoutExporter(GroupSource groupSource) {
+    this.groupSource = groupSource;
+  }
+
+  /**
+   * @return the number of layouts exported.
+   */
+  public int export(File file) throws OrthoMCLDataException {
+    LOG.info("Exporting layouts to " + file.getAbsolutePath() + "...");
+    long start = System.currentTimeMillis();
+
+    LayoutArchiveWriter writer = LayoutArchiveWriter.create(file);
+    try {
+      groupSource.exportLayouts(Integer.MIN_VALUE, Integer.MAX_VALUE, group -> writer.add(group.getId(),
+          group.getName(), group.getLayout()));
+    }
+    catch (OrthoMCLDataException | RuntimeException ex) {
+      writer.discard();
+      throw ex;
+    }
+    writer.finish();
+
+    LOG.info("Done. " + writer.size() + " layouts exported in " + ((System.currentTimeMillis() - start) /
+        1000D) + " seconds.");
+    return writer.size();
+  }
+}
@@ -0,0 +1,81 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.orthomcl.data.common.layout.core.BlastScore;
+import org.orthomcl.data.common.layout.core.Group;
+import org.orthomcl.data.common.layout.core.LogEvalue;
+
+/**
+ * Computes a fingerprint of the content of a group that determines its layout: the sorted gene source ids,
+ * and the sorted blast scores with their evalues and edge types. Two groups with the same fingerprint get
+ * the same layout input, so the layout of one can be reused for the other.
+ * 
+ * The fingerprint is the SHA-1 digest of the canonical text of the group, in 40 hex digits. The text doesn't
+ * depend on the order the genes and scores are loaded in, or on the direction the scores are stored in.
+ */
+public class LayoutFingerprint {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  public static String compute(Group group) {
+    List<String> geneIds = new ArrayList<>(group.getGenes().keySet());
+    Collections.sort(geneIds);
+
+    List<String> scores = new ArrayList<>(group.getScores().size());
+    for (BlastScore score : group.getScores().values()) {
+      scores.add(toText(score));
+    }
+    Collections.sort(scores);
+
+    MessageDigest digest = newDigest();
+    for (String geneId : geneIds) {
+      digest.update(geneId.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) '\n');
+    }
+    // separate the genes from the scores
+    digest.update((byte) '\n');
+    for (String score : scores) {
+      digest.update(score.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) '\n');
+    }
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Write the score with the smaller gene id first, so that the text doesn't depend on the direction.
+   */
+  private static String toText(BlastScore score) {
+    String evalue = LogEvalue.toString(score.getLogEvalue());
+    String evalue2 = LogEvalue.toString(score.getLogEvalue2());
+    String type = score.getType().getCode();
+    if (score.getQueryId().compareTo(score.getSubjectId()) <= 0)
+      return score.getQueryId() + "\t" + score.getSubjectId() + "\t" + evalue + "\t" + evalue2 + "\t" + type;
+    else
+      return score.getSubjectId() + "\t" + score.getQueryId() + "\t" + evalue2 + "\t" + evalue + "\t" + type;
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException ex) {
+      // every JVM is required to support SHA-1
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  static String toHex(byte[] bytes) {
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+      chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,126 @@
+package org.orthomcl.data.common.layout.load;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.orthomcl.data.common.layout.core.BinaryLayout;
+import org.orthomcl.data.common.layout.core.BlastScore;
+import org.orthomcl.data.common.layout.core.EdgeType;
+import org.orthomcl.data.common.layout.core.Gene;
+import org.orthomcl.data.common.layout.core.Group;
+
+/**
+ * The formats the generated layouts can be stored in.
+ * 
+ * The layout column is read by the website as well, which only parses JSON. So a layout in a binary format
+ * is stored with the name of its format in the layout_format column (see orthomclLayoutFormat.sql), which
+ * is null for the JSON layouts, as it is for the layouts stored before the column was added: a reader must
+ * parse the layout as JSON if the column is null, and otherwise decode it with {@link BinaryLayout}, or skip
+ * it. The readers in this module tell the formats apart by the {@link BinaryLayout#PREFIX}, which a JSON
+ * layout can't start with.
+ */
+public enum LayoutFormat {
+  /**
+   * The JSON layout, with gene & score objects.
+   */
+  Json("json"),
+  /**
+   * The compact binary layout, see {@link org.orthomcl.data.common.layout.core.BinaryLayout}.
+   */
+  Binary("binary"),
+  /**
+   * The compact binary layout, deflated.
+   */
+  Deflate("deflate");
+
+  public static LayoutFormat fromName(String name) throws OrthoMCLDataException {
+    for (LayoutFormat format : values()) {
+      if (format.name.equalsIgnoreCase(name))
+        return format;
+    }
+    throw new OrthoMCLDataException("Unknown layout format: " + name);
+  }
+
+  private final String name;
+
+  private LayoutFormat(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the value of the layout_format column for the layouts of this format.
+   */
+  public String getColumnValue() {
+    return (this == Json) ? null : name;
+  }
+
+  /**
+   * @return the format of a serialized layout.
+   */
+  public static LayoutFormat of(String layout) {
+    if (!BinaryLayout.isBinary(layout))
+      return Json;
+    return BinaryLayout.isDeflated(layout) ? Deflate : Binary;
+  }
+
+  /**
+   * Each thread creating layouts reuses its own JSON writer, and the buffer in it.
+   */
+  private static final ThreadLocal<LayoutJsonWriter> JSON_WRITERS = ThreadLocal.withInitial(LayoutJsonWriter::new);
+
+  /**
+   * @return the layout of the group serialized in this format.
+   */
+  public String encode(Group group) {
+    if (this == Json)
+      return JSON_WRITERS.get().write(group);
+    return BinaryLayout.encode(group, this == Deflate);
+  }
+
+  /**
+   * @return a group with the genes, their positions, and the scores of the layout, which can be in any of
+   *         the formats.
+   */
+  public static Group decode(int groupId, String groupName, String layout) throws OrthoMCLDataException {
+    Group group = new Group(groupId, groupName);
+    try {
+      if (BinaryLayout.isBinary(layout))
+        BinaryLayout.decode(layout, group);
+      else
+        decodeJson(new JSONObject(layout), group);
+      return group;
+    }
+    catch (JSONException | IllegalArgumentException | IndexOutOfBoundsException ex) {
+      throw new OrthoMCLDataException("Unable to read the layout of group " + groupName, ex);
+    }
+  }
+
+  /**
+   * Read the JSON layout, in which the scores refer to the genes by their index.
+   */
+  private static void decodeJson(JSONObject jsLayout, Group group) throws JSONException {
+    JSONArray jsGenes = jsLayout.getJSONArray("N");
+    Gene[] genes = new Gene[jsGenes.length()];
+    for (int i = 0; i < genes.length; i++) {
+      JSONObject jsGene = jsGenes.getJSONObject(i);
+      Gene gene = new Gene(jsGene);
+      genes[jsGene.getInt("i")] = gene;
+      group.addGene(gene);
+    }
+
+    JSONArray jsScores = jsLayout.getJSONArray("E");
+    for (int i = 0; i < jsScores.length(); i++) {
+      JSONObject jsScore = jsScores.getJSONObject(i);
+      BlastScore score = new BlastScore(genes[jsScore.getInt("Q")].getSourceId(),
+          genes[jsScore.getInt("S")].getSourceId());
+      score.setEvalue(jsScore.getString("E"));
+      score.setType(EdgeType.fromCode(jsScore.getString("T")));
+      score.setGroup(group);
+      group.putBlastScore(score);
+    }
+  }
+}
@@ -1,7 +1,24 @@
 package org.orthomcl.data.common.layout.load;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -21,10 +38,57 @@ public class LayoutGenerator {
 
   private static final String ARG_MAX_MEMBER = "max";
   private static final String ARG_TASK_COUNT = "task";
+  private static final String ARG_BATCH_SIZE = "batch";
+  private static final String ARG_LOADER_COUNT = "loader";
+  private static final String ARG_COMMIT_INTERVAL = "commit";
+  private static final String ARG_PRELOAD = "preload";
+  private static final String ARG_ESTIMATE = "estimate";
+  private static final String ARG_COST = "cost";
+  private static final String ARG_RETRY_COUNT = "retry";
+  private static final String ARG_LEDGER = "ledger";
+  private static final String ARG_RESUME = "resume";
+  private static final String ARG_FORMAT = "format";
+  private static final String ARG_FORMAT_COLUMN = "formatcolumn";
+  private static final String ARG_ENGINE = "engine";
+  private static final String ARG_PARALLEL = "parallel";
+  private static final String ARG_MULTILEVEL = "multilevel";
+  private static final String ARG_INCREMENTAL = "incremental";
+  private static final String ARG_WARM = "warm";
+  private static final String ARG_COMPARE = "compare";
+  private static final String ARG_REPORT = "report";
+  private static final String ARG_QUALITY = "quality";
+  private static final String ARG_WINDOW = "window";
+  private static final String ARG_IMPROVEMENT = "improvement";
+  private static final String ARG_ITERATIONS = "iterations";
+  private static final String ARG_SEED = "seed";
+  private static final String ARG_SOURCE = "source";
+  private static final String ARG_MERGE = "merge";
   private static final String ARG_UNDO = "undo";
+  private static final String ARG_IDS = "ids";
+  private static final String ARG_MEMBERS = "members";
+  private static final String ARG_GROUPS = "groups";
 
   public static final String DEFAULT_MAX_MEMBER = "500";
-  public static final String DEFAULT_TASK_COUNT = "8";
+  public static final String DEFAULT_TASK_COUNT = Integer.toString(Runtime.getRuntime().availableProcessors());
+  public static final String DEFAULT_BATCH_SIZE = "50";
+  public static final String DEFAULT_LOADER_COUNT = "2";
+  public static final String DEFAULT_COMMIT_INTERVAL = "100";
+  public static final String DEFAULT_RETRY_COUNT = "2";
+  public static final String DEFAULT_FORMAT = LayoutFormat.Json.getName();
+  public static final String DEFAULT_ENGINE = LayoutEngine.Spring.getName();
+  public static final String DEFAULT_SEED = Long.toString(LayoutSeed.DEFAULT_RUN_SEED);
+  public static final String DEFAULT_COST = LayoutScheduler.DEFAULT_SECONDS_PER_NODE_PAIR + "," +
+      LayoutScheduler.DEFAULT_SECONDS_PER_EDGE + "," + LayoutScheduler.DEFAULT_SECONDS_PER_GROUP;
+
+  /**
+   * The batch size is limited by the number of items Oracle allows in an IN list.
+   */
+  private static final int MAX_BATCH_SIZE = 1000;
+
+  /**
+   * The number of items queued up for each consumer of a stage; the producer blocks when the queue is full.
+   */
+  private static final int QUEUE_SIZE_PER_TASK = 2;
 
   private static final Logger LOG = Logger.getLogger(LayoutGenerator.class);
 
@@ -49,7 +113,12 @@ public class LayoutGenerator {
       System.err.println(ex);
       HelpFormatter formatter = new HelpFormatter();
       formatter.printHelp("orthomclClusterLayout [-max " + DEFAULT_MAX_MEMBER +
-          "] [-task " + DEFAULT_TASK_COUNT + "] [-undo]", options);
+          "] [-task " + DEFAULT_TASK_COUNT + "] [-batch " + DEFAULT_BATCH_SIZE + "] [-loader " +
+          DEFAULT_LOADER_COUNT + "] [-commit " + DEFAULT_COMMIT_INTERVAL + "] [-retry " + DEFAULT_RETRY_COUNT +
+          "] [-format " + DEFAULT_FORMAT + " [-formatcolumn]] [-engine " + DEFAULT_ENGINE + "] [-parallel <members>] " +
+          "[-multilevel <seconds>] [-ledger <file> [-resume]] [-incremental [-warm]] [-compare] [-report <file>] [-quality fast|normal|best] [-window <iterations>] " +
+          "[-improvement <ratio>] [-iterations <max>] [-seed " + DEFAULT_SEED + "] [-source <dir>] [-merge] [-preload] [-estimate] [-cost " + DEFAULT_COST + "] " +
+          "[-undo [-ids <min>:<max>] [-members <min>:<max>] [-groups <names>|@<file>]]", options);
       System.exit(-1);
     }
   }
@@ -66,115 +135,686 @@ public class LayoutGenerator {
 
     options.addOption(Option.builder()
         .option(ARG_TASK_COUNT)
-        .desc("The number of tasks to run the layout. Default is " + DEFAULT_TASK_COUNT)
+        .desc("The number of tasks to run the layout. Default is the number of cores, " + DEFAULT_TASK_COUNT)
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_BATCH_SIZE)
+        .desc("The number of groups whose details are loaded together in one set of queries, up to " +
+            MAX_BATCH_SIZE + ". Default is " + DEFAULT_BATCH_SIZE)
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_LOADER_COUNT)
+        .desc("The number of tasks loading group details ahead of the layout tasks. Default is " + DEFAULT_LOADER_COUNT)
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_COMMIT_INTERVAL)
+        .desc("The number of layouts inserted in a JDBC batch before each commit, or removed in each commit by " +
+            "-undo, up to " + MAX_BATCH_SIZE + ". Default is " + DEFAULT_COMMIT_INTERVAL)
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_RETRY_COUNT)
+        .desc("The number of times a failed group is retried before it is recorded as failed and skipped. Default is " +
+            DEFAULT_RETRY_COUNT)
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_LEDGER)
+        .desc("A local file to record the scheduled, finished and failed groups of the run, so that it can be resumed.")
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_RESUME)
+        .desc("Continue the run recorded in the ledger, with the groups not finished yet, including the failed ones. " +
+            "The groups that already have layouts are skipped, and the -" + ARG_MAX_MEMBER + ", -" + ARG_MULTILEVEL +
+            " and -" + ARG_INCREMENTAL + " options must be the same as in the run that created the ledger.")
+        .hasArg(false)
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_FORMAT)
+        .desc("The format of the stored layouts: json, binary (compact binary encoding), or deflate (compressed " +
+            "binary encoding). Default is " + DEFAULT_FORMAT + ". The binary formats are stored in the database " +
+            "only with -" + ARG_FORMAT_COLUMN)
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_FORMAT_COLUMN)
+        .desc("Confirm that the layout_format column is added by orthomclLayoutFormat.sql, and that all the readers " +
+            "of the layouts check it, so that binary layouts can be stored in the database: the readers that " +
+            "only parse JSON, such as the website, would fail on them otherwise")
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_ENGINE)
+        .desc("The layout engine: spring (all-pairs repulsions), force (all-pairs repulsions, can be " +
+            "warm-started), or barneshut (approximated repulsions, for groups of thousands of members; raise " +
+            "-max accordingly). Default is " + DEFAULT_ENGINE)
         .hasArg()
         .build());
 
+    options.addOption(Option.builder()
+        .option(ARG_PARALLEL)
+        .desc("Compute the forces of the groups with at least the given number of members on all the cores, so " +
+            "that the cores left idle by the other tasks help to finish the largest groups. The layouts are the " +
+            "same as without -" + ARG_PARALLEL + ", for any number of cores. Requires the force or barneshut " +
+            "engine; the spring engine can't be parallelized. By default each group is laid out by one task " +
+            "alone.")
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_MULTILEVEL)
+        .desc("Also lay out the groups with more members than -max, with the multilevel engine, which lays out a " +
+            "coarsened group first and then refines it level by level. Each of these groups is given at most " +
+            "the given number of seconds. By default the groups above -max are skipped.")
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_INCREMENTAL)
+        .desc("Also check the groups with layouts, and only create the layouts of the groups whose content has " +
+            "changed. The layouts of unchanged groups are kept, or copied from a group with the same content. " +
+            "Requires the fingerprint column in OrthologGroupLayoutCore.")
+        .hasArg(false)
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_WARM)
+        .desc("In an incremental run, start the new layouts of the changed groups from their stored layouts, " +
+            "and place the new genes next to their strongest-scoring neighbours. Requires the force or " +
+            "barneshut engine; the spring engine and the multilevel layouts always start from scratch.")
+        .hasArg(false)
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_COMPARE)
+        .desc("Also lay out one in 20 of the warm-started groups from scratch, and one in 20 of the groups " +
+            "stopped by the convergence criteria with the full schedule of the engine, to estimate the time " +
+            "saved by -" + ARG_WARM + " and -" + ARG_QUALITY + ". The sampled groups take the time of two " +
+            "layouts. By default the layouts are not compared.")
+        .hasArg(false)
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_REPORT)
+        .desc("Record the iterations, the final stress, the wall time and a sample of the stress trajectory of " +
+            "each layout in the given file, as CSV, or as JSON lines if the file name ends with .json.")
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_QUALITY)
+        .desc("Stop the layouts once they converge: fast stops once the stress improves by less than 5% over 20 " +
+            "iterations, or after 500 iterations; normal by less than 1% over 50 iterations, or after 2000 " +
+            "iterations; best runs the full schedule of the engine. Default is best.")
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_WINDOW)
+        .desc("Stop a layout once its stress hasn't improved by the -improvement ratio over the given number of " +
+            "iterations; overrides the window of the -quality tier.")
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_IMPROVEMENT)
+        .desc("The ratio the stress has to improve by within the -window, such as 0.01; overrides the " +
+            "improvement of the -quality tier.")
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_ITERATIONS)
+        .desc("Stop a layout after the given number of iterations; overrides the max iterations of the " +
+            "-quality tier.")
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_PRELOAD)
+        .desc("Load all ortholog, coortholog & inparalog pairs into memory at start, instead of querying them for each group.")
+        .hasArg(false)
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_ESTIMATE)
+        .desc("Only print the estimated cost and makespan of the run, without generating any layout.")
+        .hasArg(false)
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_COST)
+        .desc("The coefficients of the estimated cost of a group, used to order the groups and predict the run " +
+            "time: the seconds per pair of members, per edge, and per group, separated by commas. Default is " +
+            DEFAULT_COST)
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_SEED)
+        .desc("The seed of the run. The layout of each group is seeded from its name and this seed, so that " +
+            "the runs with the same seed create the same layouts, regardless of the tasks. Only the layouts " +
+            "stopped by the -multilevel time are not reproducible. Default is " + DEFAULT_SEED)
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_SOURCE)
+        .desc("Read the groups, genes, blast scores and edge types from the tab-separated files in the given " +
+            "directory, instead of the database, and append the layouts to the layouts.txt file there. See " +
+            "FileGroupSource for the files.")
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_MERGE)
+        .desc("Let the database merge the blast scores of both directions of each gene pair into one row, " +
+            "which halves the score rows fetched. The layouts are the same as without it.")
+        .hasArg(false)
+        .build());
+
     options.addOption(Option.builder()
         .option(ARG_UNDO)
-        .desc("Remove all generated layouts from database.")
+        .desc("Remove the generated layouts, by default all of them, committing them in chunks of -commit " +
+            "layouts. The removed groups are laid out again by the next run.")
         .hasArg(false)
         .build());
 
+    options.addOption(Option.builder()
+        .option(ARG_IDS)
+        .desc("Only -undo the layouts of the groups with ids in the given range, inclusive, such as 1000:1999; " +
+            "either end can be left out.")
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_MEMBERS)
+        .desc("Only -undo the layouts of the groups with numbers of members in the given range, inclusive, " +
+            "such as 200:500; either end can be left out.")
+        .hasArg()
+        .build());
+
+    options.addOption(Option.builder()
+        .option(ARG_GROUPS)
+        .desc("Only -undo the layouts of the groups of the given names, separated by commas, or listed one per " +
+            "line in the file after the @.")
+        .hasArg()
+        .build());
+
     return options;
   }
 
   private final int maxMember;
   private final int taskCount;
-  private final GroupFactory groupFactory;
+  private final int batchSize;
+  private final int loaderCount;
+  private final int commitInterval;
+  private final boolean preload;
+  private final boolean estimateOnly;
+  private final int retryCount;
+  private final File ledgerFile;
+  private final File reportFile;
+  private final boolean resume;
+  private final boolean incremental;
+  private final boolean warm;
+  private final boolean compare;
+  private final LayoutEngine engine;
+  private final int parallelThreshold;
+  private final long multilevelBudget;
+  private final ConvergenceCriteria convergence;
+  private final long seed;
+  private final LayoutScope undoScope;
+  private final double[] costCoefficients;
+  private final GroupSource groupSource;
 
   public LayoutGenerator(CommandLine commandLine) throws OrthoMCLDataException {
     LOG.info("Initializing Layout Generator...");
 
     maxMember = Integer.valueOf(commandLine.getOptionValue(ARG_MAX_MEMBER, DEFAULT_MAX_MEMBER));
-    taskCount = Integer.valueOf(commandLine.getOptionValue(ARG_TASK_COUNT, DEFAULT_TASK_COUNT));
+    // the sizes of the pipeline are checked here, before any queue or thread pool is created from them
+    taskCount = parseCount(ARG_TASK_COUNT, commandLine.getOptionValue(ARG_TASK_COUNT, DEFAULT_TASK_COUNT), 1,
+        Integer.MAX_VALUE);
+    batchSize = parseCount(ARG_BATCH_SIZE, commandLine.getOptionValue(ARG_BATCH_SIZE, DEFAULT_BATCH_SIZE), 1,
+        MAX_BATCH_SIZE);
+    loaderCount = parseCount(ARG_LOADER_COUNT, commandLine.getOptionValue(ARG_LOADER_COUNT,
+        DEFAULT_LOADER_COUNT), 1, Integer.MAX_VALUE);
+    commitInterval = parseCount(ARG_COMMIT_INTERVAL, commandLine.getOptionValue(ARG_COMMIT_INTERVAL,
+        DEFAULT_COMMIT_INTERVAL), 1, MAX_BATCH_SIZE);
+    preload = commandLine.hasOption(ARG_PRELOAD);
+    estimateOnly = commandLine.hasOption(ARG_ESTIMATE);
+    retryCount = parseCount(ARG_RETRY_COUNT, commandLine.getOptionValue(ARG_RETRY_COUNT, DEFAULT_RETRY_COUNT),
+        0, Integer.MAX_VALUE);
+    ledgerFile = commandLine.hasOption(ARG_LEDGER) ? new File(commandLine.getOptionValue(ARG_LEDGER)) : null;
+    resume = commandLine.hasOption(ARG_RESUME);
+    reportFile = commandLine.hasOption(ARG_REPORT) ? new File(commandLine.getOptionValue(ARG_REPORT)) : null;
+    incremental = commandLine.hasOption(ARG_INCREMENTAL);
+    warm = commandLine.hasOption(ARG_WARM);
+    if (warm && !incremental)
+      throw new OrthoMCLDataException("The -" + ARG_WARM + " option requires the -" + ARG_INCREMENTAL + " option.");
+    engine = LayoutEngine.fromName(commandLine.getOptionValue(ARG_ENGINE, DEFAULT_ENGINE));
+    if (warm && !engine.canWarmStart())
+      throw new OrthoMCLDataException("The " + engine.getName() + " engine can't be warm-started; use -" +
+          ARG_ENGINE + " " + LayoutEngine.Force.getName() + " or " + LayoutEngine.BarnesHut.getName() + " with -" +
+          ARG_WARM + ".");
+    compare = commandLine.hasOption(ARG_COMPARE);
+    parallelThreshold = commandLine.hasOption(ARG_PARALLEL) ? Integer.valueOf(commandLine.getOptionValue(
+        ARG_PARALLEL)) : 0;
+    if (commandLine.hasOption(ARG_PARALLEL) && parallelThreshold <= 0)
+      throw new OrthoMCLDataException("The -" + ARG_PARALLEL + " number of members must be positive: " +
+          commandLine.getOptionValue(ARG_PARALLEL));
+    if (parallelThreshold > 0 && !engine.isParallel())
+      throw new OrthoMCLDataException("The " + engine.getName() + " engine can't compute its forces in " +
+          "parallel; use -" + ARG_ENGINE + " " + LayoutEngine.Force.getName() + " or " +
+          LayoutEngine.BarnesHut.getName() + " with -" + ARG_PARALLEL + ".");
+    multilevelBudget = commandLine.hasOption(ARG_MULTILEVEL) ? Math.round(Double.valueOf(
+        commandLine.getOptionValue(ARG_MULTILEVEL)) * 1000) : 0;
+    if (commandLine.hasOption(ARG_MULTILEVEL) && multilevelBudget <= 0)
+      throw new OrthoMCLDataException("The -" + ARG_MULTILEVEL + " time must be positive: " +
+          commandLine.getOptionValue(ARG_MULTILEVEL));
+    convergence = createConvergence(commandLine);
+    seed = Long.valueOf(commandLine.getOptionValue(ARG_SEED, DEFAULT_SEED));
+    undoScope = createScope(commandLine);
+    costCoefficients = parseCost(commandLine.getOptionValue(ARG_COST, DEFAULT_COST));
+    if (resume && ledgerFile == null)
+      throw new OrthoMCLDataException("The -" + ARG_RESUME + " option requires a -" + ARG_LEDGER + " file.");
 
-    this.groupFactory = new GroupFactory(taskCount);
-  }
+    // the layouts in the local files are only read by this module, which tells the formats apart by themselves
+    LayoutFormat layoutFormat = LayoutFormat.fromName(commandLine.getOptionValue(ARG_FORMAT, DEFAULT_FORMAT));
+    if (layoutFormat != LayoutFormat.Json && !commandLine.hasOption(ARG_SOURCE) &&
+        !commandLine.hasOption(ARG_FORMAT_COLUMN))
+      throw new OrthoMCLDataException("The " + layoutFormat.getName() + " layouts can't be read by the readers " +
+          "that only parse JSON; use -" + ARG_FORMAT_COLUMN + " to store them in the database, once the " +
+          "layout_format column is added, and all the readers check it.");
 
-  public void undo() {
-    LOG.info("Undo previous layouts...");
-
-    int count = groupFactory.removeLayouts();
+    if (commandLine.hasOption(ARG_SOURCE)) {
+      if (incremental)
+        throw new OrthoMCLDataException("The -" + ARG_INCREMENTAL + " option requires the database, it can't " +
+            "be used with the -" + ARG_SOURCE + " option.");
+      if (commandLine.hasOption(ARG_MERGE))
+        throw new OrthoMCLDataException("The -" + ARG_MERGE + " option requires the database, it can't be " +
+            "used with the -" + ARG_SOURCE + " option.");
+      this.groupSource = new FileGroupSource(new File(commandLine.getOptionValue(ARG_SOURCE)));
+    }
+    else {
+      // the layout tasks don't use the database; a connection for each loader, the writer, and the main thread.
+      GroupFactory groupFactory = new GroupFactory(loaderCount + 2);
+      groupFactory.setMergeScores(commandLine.hasOption(ARG_MERGE));
+      this.groupSource = groupFactory;
+    }
+    groupSource.setLayoutFormat(layoutFormat);
+  }
 
-    LOG.info("Done. " + count + " layouts deleted.");
+  /**
+   * @return the criteria from the -quality tier and the options overriding it, or null if the layouts run the
+   *         full schedule.
+   */
+  private static ConvergenceCriteria createConvergence(CommandLine commandLine) throws OrthoMCLDataException {
+    ConvergenceCriteria criteria = LayoutQuality.fromName(commandLine.getOptionValue(ARG_QUALITY,
+        LayoutQuality.Best.getName())).createCriteria();
+    if (commandLine.hasOption(ARG_WINDOW))
+      criteria.setWindow(Integer.valueOf(commandLine.getOptionValue(ARG_WINDOW)));
+    if (commandLine.hasOption(ARG_IMPROVEMENT))
+      criteria.setImprovement(Double.valueOf(commandLine.getOptionValue(ARG_IMPROVEMENT)));
+    if (commandLine.hasOption(ARG_ITERATIONS))
+      criteria.setMaxIterations(Integer.valueOf(commandLine.getOptionValue(ARG_ITERATIONS)));
+    if (criteria.getImprovement() < 0 || criteria.getImprovement() >= 1)
+      throw new OrthoMCLDataException("The -" + ARG_IMPROVEMENT + " ratio must be between 0 and 1: " +
+          criteria.getImprovement());
+    return criteria.isEnabled() ? criteria : null;
   }
 
-  public void process() {
-    LOG.info("Start processing... Max Member = " + maxMember + ", tasks = " + taskCount);
+  /**
+   * @return the seconds per pair of members, per edge and per group of the -cost option.
+   */
+  private static double[] parseCost(String value) throws OrthoMCLDataException {
+    String[] parts = value.split(",");
+    if (parts.length != 3)
+      throw new OrthoMCLDataException("The -" + ARG_COST + " option must have 3 coefficients: " + value);
+    double[] coefficients = new double[parts.length];
+    try {
+      for (int i = 0; i < parts.length; i++) {
+        coefficients[i] = Double.parseDouble(parts[i].trim());
+        if (coefficients[i] < 0)
+          throw new OrthoMCLDataException("The -" + ARG_COST + " coefficients can't be negative: " + value);
+      }
+    }
+    catch (NumberFormatException ex) {
+      throw new OrthoMCLDataException("The -" + ARG_COST + " coefficients must be numbers: " + value, ex);
+    }
+    return coefficients;
+  }
 
-    // get groups
-    List<Group> groups = groupFactory.loadGroups(maxMember);
-    LOG.debug(groups.size() + " groups loaded.");
+  /**
+   * @return the groups whose layouts are removed by -undo.
+   */
+  private static LayoutScope createScope(CommandLine commandLine) throws OrthoMCLDataException {
+    LayoutScope scope = new LayoutScope();
+    if (!commandLine.hasOption(ARG_UNDO)) {
+      if (commandLine.hasOption(ARG_IDS) || commandLine.hasOption(ARG_MEMBERS) || commandLine.hasOption(ARG_GROUPS))
+        throw new OrthoMCLDataException("The -" + ARG_IDS + ", -" + ARG_MEMBERS + " and -" + ARG_GROUPS +
+            " options require the -" + ARG_UNDO + " option.");
+      return scope;
+    }
+    if (commandLine.hasOption(ARG_IDS)) {
+      int[] range = parseRange(ARG_IDS, commandLine.getOptionValue(ARG_IDS), Integer.MIN_VALUE);
+      scope.setIdRange(range[0], range[1]);
+    }
+    if (commandLine.hasOption(ARG_MEMBERS)) {
+      int[] range = parseRange(ARG_MEMBERS, commandLine.getOptionValue(ARG_MEMBERS), 0);
+      scope.setMemberCountRange(range[0], range[1]);
+    }
+    if (commandLine.hasOption(ARG_GROUPS))
+      scope.setNames(parseNames(commandLine.getOptionValue(ARG_GROUPS)));
+    return scope;
+  }
 
-    // create task pool
-    List<LayoutTask> tasks = createTaskPool();
-    LOG.debug(tasks.size() + " tasks created.");
+  /**
+   * @return the count of the option, between min and max, inclusive.
+   */
+  static int parseCount(String option, String value, int min, int max) throws OrthoMCLDataException {
+    int count;
+    try {
+      count = Integer.parseInt(value.trim());
+    }
+    catch (NumberFormatException ex) {
+      throw new OrthoMCLDataException("The -" + option + " value must be a number: " + value, ex);
+    }
+    if (count < min || count > max)
+      throw new OrthoMCLDataException("The -" + option + " value must be " + ((max == Integer.MAX_VALUE) ?
+          "at least " + min : "between " + min + " and " + max) + ": " + value);
+    return count;
+  }
 
-    int count = 0;
-    while (!groups.isEmpty()) {
-      // remove a group from the list so that we can discard it after use
-      Group group = groups.remove(groups.size() - 1);
-      // find an available task
-      LayoutTask task = getAvailableTask(tasks);
-      task.setGroup(group);
-      count++;
-      if (count % 100 == 0)
-        LOG.debug(count + " groups processed.");
+  /**
+   * @return the min and max of a range of min:max, where a missing min is the given lowest value, and a
+   *         missing max is the largest int.
+   */
+  static int[] parseRange(String option, String value, int lowest) throws OrthoMCLDataException {
+    int colon = value.indexOf(':');
+    if (colon < 0)
+      throw new OrthoMCLDataException("The -" + option + " range must be <min>:<max>: " + value);
+    try {
+      String min = value.substring(0, colon).trim();
+      String max = value.substring(colon + 1).trim();
+      int[] range = { min.isEmpty() ? lowest : Integer.parseInt(min),
+          max.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(max) };
+      if (range[0] > range[1])
+        throw new OrthoMCLDataException("The -" + option + " range is empty: " + value);
+      return range;
+    }
+    catch (NumberFormatException ex) {
+      throw new OrthoMCLDataException("The -" + option + " range must be <min>:<max>: " + value, ex);
     }
-    LOG.debug("Total " + count + " group processed.");
+  }
 
-    // wait for tasks to finish
-    boolean allStopped = false;
-    while (!allStopped) {
-      try { // wait for a bit.
-        Thread.sleep(1000);
+  /**
+   * @return the names separated by commas, or, if the value starts with @, the names in the file, one per line.
+   */
+  private static List<String> parseNames(String value) throws OrthoMCLDataException {
+    List<String> lines;
+    if (value.startsWith("@")) {
+      File file = new File(value.substring(1));
+      try {
+        lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
       }
-      catch (InterruptedException ex) {}
-
-      // check all tasks are finished
-      allStopped = true;
-      for (LayoutTask task : tasks) {
-        if (!task.isStopped()) {
-          // stop the task
-          if (task.isAvailable())
-            task.stop();
-          allStopped = false;
-          break;
-        }
+      catch (IOException ex) {
+        throw new OrthoMCLDataException("Unable to read the group names: " + file.getAbsolutePath(), ex);
       }
     }
-    LOG.info("Layout Generator finished.");
+    else {
+      lines = Arrays.asList(value.split(","));
+    }
+    List<String> names = new ArrayList<>();
+    for (String line : lines) {
+      if (!line.trim().isEmpty())
+        names.add(line.trim());
+    }
+    if (names.isEmpty())
+      throw new OrthoMCLDataException("No group names are given to -" + ARG_GROUPS + ": " + value);
+    return names;
   }
 
-  private List<LayoutTask> createTaskPool() {
-    List<LayoutTask> tasks = new ArrayList<>();
-    for (int i = 0; i < taskCount; i++) {
-      LayoutTask task = new LayoutTask(groupFactory);
-      new Thread(task).start();
-      tasks.add(task);
+  /**
+   * Remove the layouts in the scope of the -ids, -members and -groups options, -commit layouts at a time, so
+   * that a slice of the groups can be laid out again without removing all the layouts.
+   */
+  public void undo() throws OrthoMCLDataException {
+    LOG.info("Undo previous layouts of " + undoScope + "...");
+    long start = System.currentTimeMillis();
+
+    int count = groupSource.removeLayouts(undoScope, commitInterval);
+
+    LOG.info("Done. " + count + " layouts deleted in " + ((System.currentTimeMillis() - start) / 1000D) +
+        " seconds.");
+  }
+
+  /**
+   * Generate the layouts in a pipeline of three stages: the loaders prefetch the group details, the layout
+   * tasks compute the layouts, and the writer inserts them in JDBC batches, so that the database I/O
+   * overlaps with the layout computation. Each stage is drained before the next one is told to finish.
+   */
+  public void process() throws OrthoMCLDataException {
+    LOG.info("Start processing... Max Member = " + maxMember + ", tasks = " + taskCount + ", batch = " +
+        batchSize + ", loaders = " + loaderCount + ", commit = " + commitInterval + ", retry = " + retryCount +
+        ", engine = " + engine.getName() + ", parallel = " + parallelThreshold + ", multilevel = " +
+        multilevelBudget + "ms, seed = " + seed + ", convergence = " + ((convergence != null) ? convergence : "full schedule") +
+        ", incremental = " +
+        incremental + ", warm = " + warm + ", compare = " + compare + ", preload = " + preload);
+
+    // get groups, either from the ledger of the previous run, or from the groups to be laid out.
+    LayoutLedger ledger = null;
+    List<Group> groups;
+    if (resume) {
+      ledger = LayoutLedger.resume(ledgerFile);
+      checkSettings(ledger);
+      groups = ledger.getGroups();
+      if (incremental)
+        loadStoredFingerprints(groups);
+      else
+        skipLaidOut(groups, ledger);
+    }
+    else {
+      int limit = getLimit();
+      groups = incremental ? groupSource.loadGroupsForUpdate(limit) : groupSource.loadGroups(limit);
+      LOG.debug(groups.size() + " groups loaded.");
+    }
+
+    // schedule the most expensive groups first
+    LayoutScheduler scheduler = new LayoutScheduler(taskCount, costCoefficients[0], costCoefficients[1],
+        costCoefficients[2]);
+    scheduler.sort(groups);
+    scheduler.report(groups);
+    if (estimateOnly) {
+      if (ledger != null)
+        ledger.close();
+      return;
     }
-    return tasks;
 
+    if (ledger == null && ledgerFile != null)
+      ledger = LayoutLedger.create(ledgerFile, groups, getSettings());
+    LayoutReport report = null;
+    try {
+      LayoutProgress progress = new LayoutProgress(ledger);
+      if (reportFile != null) {
+        report = LayoutReport.create(reportFile);
+        progress.setReport(report);
+      }
+      progress.setComparing(compare);
+      process(groups, progress);
+    }
+    finally {
+      if (report != null)
+        report.close();
+      if (ledger != null)
+        ledger.close();
+    }
   }
 
   /**
-   * Get an available task, and blocks if no task is available.
-   * 
-   * @return
+   * @return the options that decide which groups are taken for the run, and how they are written.
    */
-  private LayoutTask getAvailableTask(List<LayoutTask> tasks) {
-    while (true) {
-      for (LayoutTask task : tasks) {
-        // found an available task, return it;
-        if (task.isAvailable())
-          return task;
+  private Map<String, String> getSettings() {
+    Map<String, String> settings = new LinkedHashMap<>();
+    settings.put(ARG_MAX_MEMBER, Integer.toString(maxMember));
+    settings.put(ARG_MULTILEVEL, Long.toString(multilevelBudget));
+    settings.put(ARG_INCREMENTAL, Boolean.toString(incremental));
+    return settings;
+  }
+
+  /**
+   * A resumed run must take the groups the way the run that created the ledger did. The settings are not
+   * checked for a ledger that doesn't record them.
+   */
+  private void checkSettings(LayoutLedger ledger) throws OrthoMCLDataException {
+    for (Map.Entry<String, String> setting : getSettings().entrySet()) {
+      String recorded = ledger.getSetting(setting.getKey());
+      if (recorded != null && !recorded.equals(setting.getValue()))
+        throw new OrthoMCLDataException("The ledger was created with -" + setting.getKey() + " = " + recorded +
+            ", it can't be resumed with " + setting.getValue() + ".");
+    }
+  }
+
+  /**
+   * Remove the groups that already have a layout from the groups to be resumed, and record them as done. A
+   * group can be committed by the previous run without being recorded in the ledger, if the run stopped in
+   * between.
+   */
+  private void skipLaidOut(List<Group> groups, LayoutLedger ledger) throws OrthoMCLDataException {
+    Set<Integer> laidOut = new HashSet<>(groupSource.loadLayoutGroupIds());
+    List<Group> skipped = new ArrayList<>();
+    for (Iterator<Group> iterator = groups.iterator(); iterator.hasNext();) {
+      Group group = iterator.next();
+      if (laidOut.contains(group.getId())) {
+        iterator.remove();
+        skipped.add(group);
       }
-      // no task is available, wait for a bit, and then check again.
-      try {
-        Thread.sleep(1000);
+    }
+    if (!skipped.isEmpty()) {
+      ledger.done(skipped);
+      LOG.info(skipped.size() + " groups of the ledger already have layouts, and are skipped.");
+    }
+  }
+
+  /**
+   * The ledger doesn't keep the fingerprints stored with the layouts, so they are loaded again for the
+   * resumed groups. The groups committed by the previous run then have the fingerprints of their new layouts,
+   * and are skipped as unchanged.
+   */
+  private void loadStoredFingerprints(List<Group> groups) throws OrthoMCLDataException {
+    Map<Integer, String> fingerprints = new HashMap<>();
+    for (Group group : groupSource.loadGroupsForUpdate(getLimit())) {
+      fingerprints.put(group.getId(), group.getStoredFingerprint());
+    }
+    for (Group group : groups) {
+      group.setStoredFingerprint(fingerprints.get(group.getId()));
+    }
+  }
+
+  /**
+   * @return the max number of members of the groups taken for the run; the groups above the max are only
+   *         taken for the multilevel engine.
+   */
+  private int getLimit() {
+    return (multilevelBudget > 0) ? Integer.MAX_VALUE : maxMember;
+  }
+
+  private void process(List<Group> groups, LayoutProgress progress) throws OrthoMCLDataException {
+    if (preload)
+      groupSource.preloadEdgeTypes();
+
+    // the groups with fingerprinted layouts, whose layouts can be copied to groups with the same content
+    Map<String, Integer> fingerprints = null;
+    if (incremental) {
+      fingerprints = groupSource.loadLayoutFingerprints();
+      LOG.info(fingerprints.size() + " fingerprinted layouts loaded.");
+    }
+
+    BlockingQueue<List<Group>> loadQueue = new ArrayBlockingQueue<>(loaderCount * QUEUE_SIZE_PER_TASK);
+    BlockingQueue<Group> layoutQueue = new ArrayBlockingQueue<>(Math.max(batchSize, taskCount) *
+        QUEUE_SIZE_PER_TASK);
+    BlockingQueue<Group> writeQueue = new ArrayBlockingQueue<>(commitInterval * QUEUE_SIZE_PER_TASK);
+
+    // start the stages, each task will take the next item from its queue as soon as it is free.
+    ExecutorService loaders = Executors.newFixedThreadPool(loaderCount);
+    for (int i = 0; i < loaderCount; i++) {
+      loaders.execute(new LoaderTask(groupSource, loadQueue, layoutQueue, writeQueue, fingerprints, warm,
+          retryCount, progress));
+    }
+    ForkJoinPool forcePool = (parallelThreshold > 0) ? new ForkJoinPool(taskCount) : null;
+    LayoutSelector selector = new LayoutSelector(engine);
+    selector.setParallel(forcePool, parallelThreshold);
+    if (multilevelBudget > 0)
+      selector.setMultilevel(maxMember, multilevelBudget);
+    selector.setConvergence(convergence);
+    selector.setSeed(seed);
+    ExecutorService layouts = Executors.newFixedThreadPool(taskCount);
+    for (int i = 0; i < taskCount; i++) {
+      layouts.execute(new LayoutTask(groupSource, selector, layoutQueue, writeQueue, retryCount, progress));
+    }
+    ExecutorService writer = Executors.newSingleThreadExecutor();
+    writer.execute(new WriterTask(groupSource, writeQueue, commitInterval, retryCount, incremental, progress));
+    LOG.debug(loaderCount + " loaders, " + taskCount + " layout tasks, and 1 writer created.");
+
+    try {
+      while (!groups.isEmpty()) {
+        // remove a batch of groups from the list so that we can discard them after use
+        List<Group> batch = new ArrayList<>(batchSize);
+        while (!groups.isEmpty() && batch.size() < batchSize) {
+          batch.add(groups.remove(groups.size() - 1));
+        }
+        loadQueue.put(batch);
       }
-      catch (InterruptedException ex) {}
+
+      // wait for each stage to finish, then tell the next stage that no more groups will come
+      finishStage(loaders, loadQueue, LoaderTask.END_OF_QUEUE, loaderCount);
+      finishStage(layouts, layoutQueue, LayoutTask.END_OF_QUEUE, taskCount);
+      finishStage(writer, writeQueue, WriterTask.END_OF_QUEUE, 1);
+    }
+    catch (InterruptedException ex) {
+      loaders.shutdownNow();
+      layouts.shutdownNow();
+      writer.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    finally {
+      if (forcePool != null)
+        forcePool.shutdown();
+    }
+
+    int count = progress.getFinished();
+    LOG.info("Layout Generator finished. Total " + count + " groups processed in " +
+        String.format("%.1f", progress.getElapsed()) + " seconds, " + progress.formatThroughput(count) +
+        " groups/second.");
+    if (incremental)
+      LOG.info(progress.getUnchanged() + " unchanged groups kept their layouts, " + progress.getCopied() +
+          " groups copied the layouts of groups with the same content.");
+    if (warm)
+      LOG.info(progress.formatWarmStarts());
+    if (convergence != null)
+      LOG.info(progress.formatConvergence());
+    if (progress.getFailed() > 0)
+      LOG.warn(progress.getFailed() + " groups failed" +
+          ((ledgerFile != null) ? ", see the ledger " + ledgerFile.getAbsolutePath() : "."));
+  }
+
+  private <T> void finishStage(ExecutorService executor, BlockingQueue<T> queue, T endOfQueue, int taskCount)
+      throws InterruptedException {
+    for (int i = 0; i < taskCount; i++) {
+      queue.put(endOfQueue);
     }
+    executor.shutdown();
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
   }
 }
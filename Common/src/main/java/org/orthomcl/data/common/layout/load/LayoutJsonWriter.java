@@ -0,0 +1,136 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import org.orthomcl.data.common.layout.core.BlastScore;
+import org.orthomcl.data.common.layout.core.Gene;
+import org.orthomcl.data.common.layout.core.Group;
+
+/**
+ * Writes the JSON layout of a group straight into a reusable character buffer, without building the
+ * JSONObject tree, or formatting the numbers through DecimalFormat. The output has the same schema as the
+ * JSON layout created from {@link Gene#toJSON()} and {@link BlastScore#toJSON()}:
+ * 
+ * <pre>
+ * {"N":[{"id":"...","x":"0.00","y":"0.00","i":0},...],"E":[{"Q":0,"S":1,"E":"1.0E-5","T":"N"},...]}
+ * </pre>
+ * 
+ * A writer is not thread safe; each thread should use its own writer, so that the buffer can be reused.
+ */
+public class LayoutJsonWriter {
+
+  private static final int INITIAL_CAPACITY = 1 << 16;
+
+  /**
+   * Below this magnitude, the scaled value is within 2^-23 of the exact product, so it can only be rounded
+   * the wrong way when it is this close to half a cent.
+   */
+  private static final double MAX_FAST_SCALED = 1 << 30;
+  private static final double TIE_MARGIN = 1e-6;
+
+  private final StringBuilder buffer = new StringBuilder(INITIAL_CAPACITY);
+
+  /**
+   * @return the JSON layout of the group; the string is the only object allocated for the layout.
+   */
+  public String write(Group group) {
+    buffer.setLength(0);
+    append(group, buffer);
+    return buffer.toString();
+  }
+
+  public void append(Group group, StringBuilder out) {
+    // output genes, and remember the index of each gene
+    out.append("{\"N\":[");
+    boolean first = true;
+    for (Gene gene : group.getGenes().values()) {
+      if (!first)
+        out.append(',');
+      first = false;
+      out.append("{\"id\":");
+      appendString(gene.getSourceId(), out);
+      out.append(",\"x\":\"");
+      appendFixed(gene.getPoint().x, out);
+      out.append("\",\"y\":\"");
+      appendFixed(gene.getPoint().y, out);
+      out.append("\",\"i\":").append(gene.getIndex()).append('}');
+    }
+
+    // output scores, use gene index instead of sourceId to save space.
+    out.append("],\"E\":[");
+    first = true;
+    for (BlastScore score : group.getScores().values()) {
+      if (!first)
+        out.append(',');
+      first = false;
+      out.append("{\"Q\":").append(score.getQueryIndex());
+      out.append(",\"S\":").append(score.getSubjectIndex());
+      out.append(",\"E\":\"");
+      score.appendEvalue(out);
+      out.append("\",\"T\":\"").append(score.getType().getCode()).append("\"}");
+    }
+    out.append("]}");
+  }
+
+  /**
+   * Append the value with 2 decimals, rounding the exact binary value half to even, as DecimalFormat("0.00")
+   * does; but a negative value that rounds to zero is written as 0.00, not -0.00. The value times 100 is
+   * rounded to a double first, so the values close to half a cent, and the very large ones, are rounded from
+   * their exact decimal expansion instead.
+   */
+  static void appendFixed(double value, StringBuilder out) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      out.append(value);
+      return;
+    }
+    double product = value * 100;
+    double rounded = Math.rint(product);
+    if (Math.abs(product) >= MAX_FAST_SCALED || Math.abs(Math.abs(product - rounded) - 0.5) < TIE_MARGIN) {
+      BigDecimal exact = new BigDecimal(value).setScale(2, RoundingMode.HALF_EVEN);
+      out.append((exact.signum() == 0) ? "0.00" : exact.toPlainString());
+      return;
+    }
+    long scaled = (long) rounded;
+    if (scaled < 0) {
+      out.append('-');
+      scaled = -scaled;
+    }
+    out.append(scaled / 100).append('.');
+    int fraction = (int) (scaled % 100);
+    if (fraction < 10)
+      out.append('0');
+    out.append(fraction);
+  }
+
+  private static void appendString(String value, StringBuilder out) {
+    out.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+        case '\\':
+          out.append('\\').append(c);
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            out.append("\\u00");
+            out.append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+          }
+          else {
+            out.append(c);
+          }
+      }
+    }
+    out.append('"');
+  }
+}
@@ -0,0 +1,262 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.orthomcl.data.common.layout.core.Group;
+
+/**
+ * A local, append-only record of a layout run. The ledger starts with the settings of the run that decide
+ * which groups are taken and how, and all the groups scheduled for the run, followed by a line for each
+ * group whose layout is committed, and for each group that has failed. A restarted run reads the groups that
+ * are not done yet from the ledger, instead of scanning the database for the groups without layouts, and
+ * must have the same settings.
+ * 
+ * The lines are tab separated:
+ * 
+ * <pre>
+ * RUN    option  value
+ * GROUP  ortholog_group_id  name  number_of_members  number_of_edges
+ * DONE   ortholog_group_id
+ * FAILED ortholog_group_id  stage  error
+ * </pre>
+ * 
+ * The file is UTF-8, and the tabs, line breaks and backslashes in the names and values are escaped with a
+ * backslash. A run that stops while writing a line leaves the line incomplete; a resumed run drops that last
+ * line before it appends to the ledger, so the group of the line is only laid out again.
+ */
+public class LayoutLedger implements AutoCloseable {
+
+  private static final String RUN = "RUN";
+  private static final String GROUP = "GROUP";
+  private static final String DONE = "DONE";
+  private static final String FAILED = "FAILED";
+
+  private static final Logger LOG = Logger.getLogger(LayoutLedger.class);
+
+  /**
+   * Start a new ledger with the settings and the groups scheduled for the run.
+   * 
+   * @param settings
+   *          the values of the options of the run, keyed by option, which a resumed run must match.
+   */
+  public static LayoutLedger create(File file, List<Group> groups, Map<String, String> settings)
+      throws OrthoMCLDataException {
+    if (file.exists())
+      throw new OrthoMCLDataException("The ledger already exists, use -resume to continue the run: " +
+          file.getAbsolutePath());
+
+    LayoutLedger ledger = new LayoutLedger(file, groups, settings);
+    for (Map.Entry<String, String> setting : settings.entrySet()) {
+      ledger.writer.println(RUN + "\t" + escape(setting.getKey()) + "\t" + escape(setting.getValue()));
+    }
+    for (Group group : groups) {
+      ledger.writer.println(GROUP + "\t" + group.getId() + "\t" + escape(group.getName()) + "\t" +
+          group.getMemberCount() + "\t" + group.getEdgeCount());
+    }
+    ledger.writer.flush();
+    LOG.info(groups.size() + " groups recorded in ledger " + file.getAbsolutePath());
+    return ledger;
+  }
+
+  /**
+   * Open an existing ledger, and continue with the groups that are not done yet, including the ones that
+   * have failed previously.
+   */
+  public static LayoutLedger resume(File file) throws OrthoMCLDataException {
+    if (!file.exists())
+      throw new OrthoMCLDataException("The ledger doesn't exist: " + file.getAbsolutePath());
+
+    Map<String, String> settings = new LinkedHashMap<>();
+    Map<Integer, Group> groups = new LinkedHashMap<>();
+    Set<Integer> failed = new HashSet<>();
+    int done = 0;
+    int lineNumber = 0;
+    try {
+      dropIncompleteLine(file);
+    }
+    catch (IOException ex) {
+      throw new OrthoMCLDataException("Unable to read the ledger: " + file.getAbsolutePath(), ex);
+    }
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+        StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.isEmpty())
+          continue;
+        String[] parts = line.split("\t", -1);
+        if (parts[0].equals(RUN)) {
+          settings.put(unescape(parts[1]), unescape(parts[2]));
+        }
+        else if (parts[0].equals(GROUP)) {
+          Group group = new Group(Integer.parseInt(parts[1]), unescape(parts[2]));
+          group.setMemberCount(Integer.parseInt(parts[3]));
+          group.setEdgeCount(Integer.parseInt(parts[4]));
+          groups.put(group.getId(), group);
+        }
+        else if (parts[0].equals(DONE)) {
+          if (groups.remove(Integer.parseInt(parts[1])) != null)
+            done++;
+        }
+        else if (parts[0].equals(FAILED)) {
+          failed.add(Integer.parseInt(parts[1]));
+        }
+        else {
+          throw new IllegalArgumentException("Unknown line type: " + parts[0]);
+        }
+      }
+    }
+    catch (IOException | RuntimeException ex) {
+      throw new OrthoMCLDataException("Unable to read line " + lineNumber + " of the ledger: " +
+          file.getAbsolutePath(), ex);
+    }
+    failed.retainAll(groups.keySet());
+    LOG.info("Resuming from ledger " + file.getAbsolutePath() + ": " + done + " groups done, " +
+        groups.size() + " remaining, including " + failed.size() + " previously failed.");
+
+    return new LayoutLedger(file, new ArrayList<>(groups.values()), settings);
+  }
+
+  /**
+   * Cut off the last line if it has no line break, so that the lines appended by the resumed run start on a
+   * line of their own.
+   */
+  private static void dropIncompleteLine(File file) throws IOException {
+    try (RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+      long length = access.length();
+      long end = length;
+      while (end > 0) {
+        access.seek(end - 1);
+        if (access.read() == '\n')
+          break;
+        end--;
+      }
+      if (end < length) {
+        LOG.warn("Dropped the incomplete last line of the ledger, " + (length - end) + " bytes: " +
+            file.getAbsolutePath());
+        access.setLength(end);
+      }
+    }
+  }
+
+  /**
+   * Escape the tabs, line breaks and backslashes of a name or value, to keep it in its column.
+   */
+  static String escape(String value) {
+    StringBuilder buffer = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '\\':
+          buffer.append("\\\\");
+          break;
+        case '\t':
+          buffer.append("\\t");
+          break;
+        case '\n':
+          buffer.append("\\n");
+          break;
+        case '\r':
+          buffer.append("\\r");
+          break;
+        default:
+          buffer.append(c);
+      }
+    }
+    return buffer.toString();
+  }
+
+  static String unescape(String value) {
+    if (value.indexOf('\\') < 0)
+      return value;
+    StringBuilder buffer = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c != '\\' || i == value.length() - 1) {
+        buffer.append(c);
+        continue;
+      }
+      char escaped = value.charAt(++i);
+      switch (escaped) {
+        case 't':
+          buffer.append('\t');
+          break;
+        case 'n':
+          buffer.append('\n');
+          break;
+        case 'r':
+          buffer.append('\r');
+          break;
+        default:
+          buffer.append(escaped);
+      }
+    }
+    return buffer.toString();
+  }
+
+  private final PrintWriter writer;
+  private final List<Group> groups;
+  private final Map<String, String> settings;
+
+  private LayoutLedger(File file, List<Group> groups, Map<String, String> settings)
+      throws OrthoMCLDataException {
+    try {
+      this.writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, true),
+          StandardCharsets.UTF_8));
+    }
+    catch (IOException ex) {
+      throw new OrthoMCLDataException(ex);
+    }
+    this.groups = groups;
+    this.settings = settings;
+  }
+
+  /**
+   * @return the value of the option in the run that created the ledger, or null if it is not recorded.
+   */
+  public String getSetting(String option) {
+    return settings.get(option);
+  }
+
+  /**
+   * @return the groups to be processed in this run.
+   */
+  public List<Group> getGroups() {
+    return groups;
+  }
+
+  public synchronized void done(List<Group> groups) {
+    for (Group group : groups) {
+      writer.println(DONE + "\t" + group.getId());
+    }
+    writer.flush();
+  }
+
+  public synchronized void failed(Group group, String stage, Throwable error) {
+    // keep the error on one line
+    String message = String.valueOf(error).replaceAll("\\s+", " ");
+    writer.println(FAILED + "\t" + group.getId() + "\t" + stage + "\t" + message);
+    writer.flush();
+  }
+
+  @Override
+  public synchronized void close() {
+    writer.close();
+  }
+}
@@ -0,0 +1,298 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import org.apache.log4j.Logger;
+import org.orthomcl.data.common.layout.core.Group;
+import org.orthomcl.shared.model.layout.Layout;
+
+/**
+ * Tracks the number of finished and failed groups across all layout tasks, and reports the throughput. If a
+ * ledger is given, the finished and failed groups are also recorded in it, so that the run can be resumed.
+ * 
+ * The warm-started groups are also tracked. If the layouts are compared, the warm start of a sample of them is
+ * compared with a cold start on the engine of the run, to estimate the iterations and time saved by the warm
+ * start.
+ * 
+ * The same is done for the layouts stopped by the convergence criteria, which are compared on a sample with
+ * the full schedule of the engine. Each sampled group takes the time of a second layout, so the layouts are
+ * only compared if asked for. If a report is given, the convergence of each layout is recorded in it.
+ */
+public class LayoutProgress {
+
+  private static final int REPORT_INTERVAL = 100;
+
+  /**
+   * One in this many warm-started groups is also cold-started, to compare the two.
+   */
+  private static final int WARM_SAMPLE_INTERVAL = 20;
+
+  /**
+   * One in this many groups stopped by the convergence criteria is also laid out with the full schedule, to
+   * compare the two.
+   */
+  private static final int CONVERGENCE_SAMPLE_INTERVAL = 20;
+
+  private static final Logger LOG = Logger.getLogger(LayoutProgress.class);
+
+  private final LayoutLedger ledger;
+  private final AtomicInteger finished = new AtomicInteger();
+  private final AtomicInteger failed = new AtomicInteger();
+  private final AtomicInteger unchanged = new AtomicInteger();
+  private final AtomicInteger copied = new AtomicInteger();
+  private final AtomicInteger warmStarted = new AtomicInteger();
+  private final AtomicLong warmIterations = new AtomicLong();
+  private final AtomicLong warmNanos = new AtomicLong();
+  private final AtomicInteger sampled = new AtomicInteger();
+  private final AtomicLong sampledColdIterations = new AtomicLong();
+  private final AtomicLong sampledColdNanos = new AtomicLong();
+  private final AtomicLong sampledWarmIterations = new AtomicLong();
+  private final AtomicLong sampledWarmNanos = new AtomicLong();
+  private final AtomicInteger sampleCounter = new AtomicInteger();
+  private final AtomicInteger monitored = new AtomicInteger();
+  private final AtomicInteger stoppedEarly = new AtomicInteger();
+  private final AtomicLong monitoredIterations = new AtomicLong();
+  private final AtomicLong monitoredNanos = new AtomicLong();
+  private final AtomicInteger convergenceSampled = new AtomicInteger();
+  private final AtomicLong sampledFullIterations = new AtomicLong();
+  private final AtomicLong sampledFullNanos = new AtomicLong();
+  private final AtomicLong sampledStoppedIterations = new AtomicLong();
+  private final AtomicLong sampledStoppedNanos = new AtomicLong();
+  private final DoubleAdder sampledFullStress = new DoubleAdder();
+  private final DoubleAdder sampledStoppedStress = new DoubleAdder();
+  private final AtomicInteger convergenceCounter = new AtomicInteger();
+  private final long start = System.currentTimeMillis();
+  private LayoutReport report;
+  private boolean comparing;
+
+  /**
+   * @param ledger
+   *          the ledger to record the groups in, or null if there is no ledger.
+   */
+  public LayoutProgress(LayoutLedger ledger) {
+    this.ledger = ledger;
+  }
+
+  /**
+   * @param report
+   *          the report to record the convergence of the layouts in, or null if there is no report.
+   */
+  public void setReport(LayoutReport report) {
+    this.report = report;
+  }
+
+  /**
+   * @param comparing
+   *          true to compare a sample of the warm-started and the early stopped layouts with full cold layouts.
+   */
+  public void setComparing(boolean comparing) {
+    this.comparing = comparing;
+  }
+
+  /**
+   * @return a new observer to pass to a layout, or null if the layouts are not reported.
+   */
+  public LayoutTelemetry createTelemetry() {
+    return (report != null) ? new LayoutTelemetry() : null;
+  }
+
+  /**
+   * Record the convergence of a processed layout in the report, if any.
+   * 
+   * @param telemetry
+   *          the observer created for the layout by {@link #createTelemetry()}.
+   */
+  public void groupLaidOut(Group group, Layout layout, boolean warm, LayoutTelemetry telemetry) {
+    if (telemetry == null)
+      return;
+    telemetry.done();
+    report.record(group, layout.getClass().getSimpleName(), warm, telemetry);
+  }
+
+  /**
+   * @param groups
+   *          the groups whose layouts are committed.
+   */
+  public void groupsFinished(List<Group> groups) {
+    if (ledger != null)
+      ledger.done(groups);
+
+    int count = groups.size();
+    int total = finished.addAndGet(count);
+    // report whenever the total passes another interval
+    if (total / REPORT_INTERVAL > (total - count) / REPORT_INTERVAL)
+      LOG.debug(total + " groups processed, " + formatThroughput(total) + " groups/second.");
+  }
+
+  /**
+   * Record a group that has failed after all the retries; the run continues with the other groups.
+   * 
+   * @param stage
+   *          the pipeline stage where the group failed.
+   */
+  public void groupFailed(Group group, String stage, Throwable error) {
+    LOG.error("Group " + group.getName() + " (" + group.getId() + ") failed in the " + stage + " stage.", error);
+    failed.incrementAndGet();
+    if (ledger != null)
+      ledger.failed(group, stage, error);
+  }
+
+  /**
+   * Record a group whose content hasn't changed since its layout is created, so the layout is kept.
+   */
+  public void groupUnchanged(Group group) {
+    unchanged.incrementAndGet();
+    if (ledger != null)
+      ledger.done(Collections.singletonList(group));
+  }
+
+  /**
+   * Record a group whose layout is copied from another group with the same content; the group is finished
+   * when the copy is committed.
+   */
+  public void groupCopied() {
+    copied.incrementAndGet();
+  }
+
+  /**
+   * @return true if the next warm-started group should also be cold-started for comparison.
+   */
+  public boolean sampleWarmStart() {
+    return comparing && sampleCounter.getAndIncrement() % WARM_SAMPLE_INTERVAL == 0;
+  }
+
+  /**
+   * Record a group whose layout is warm-started from its previous layout.
+   */
+  public void groupWarmStarted(int iterations, long nanos) {
+    warmStarted.incrementAndGet();
+    warmIterations.addAndGet(iterations);
+    warmNanos.addAndGet(nanos);
+  }
+
+  /**
+   * Record a warm-started group that is also cold-started for comparison.
+   */
+  public void warmStartSampled(int coldIterations, long coldNanos, int warmIterations, long warmNanos) {
+    sampled.incrementAndGet();
+    sampledColdIterations.addAndGet(coldIterations);
+    sampledColdNanos.addAndGet(coldNanos);
+    sampledWarmIterations.addAndGet(warmIterations);
+    sampledWarmNanos.addAndGet(warmNanos);
+  }
+
+  /**
+   * @return true if the next group should also be laid out with the full schedule, to compare it with the
+   *         convergence criteria.
+   */
+  public boolean sampleConvergence() {
+    return comparing && convergenceCounter.getAndIncrement() % CONVERGENCE_SAMPLE_INTERVAL == 0;
+  }
+
+  /**
+   * Record a layout run with the convergence criteria.
+   */
+  public void groupMonitored(ConvergenceMonitor monitor, long nanos) {
+    monitored.incrementAndGet();
+    if (monitor.isStoppedEarly())
+      stoppedEarly.incrementAndGet();
+    monitoredIterations.addAndGet(monitor.getIterations());
+    monitoredNanos.addAndGet(nanos);
+  }
+
+  /**
+   * Record a group laid out both with the full schedule and with the convergence criteria.
+   */
+  public void convergenceSampled(LayoutTelemetry full, ConvergenceMonitor monitor, long nanos) {
+    convergenceSampled.incrementAndGet();
+    sampledFullIterations.addAndGet(full.getIterations());
+    sampledFullNanos.addAndGet(full.getNanos());
+    sampledFullStress.add(full.getFinalStress());
+    sampledStoppedIterations.addAndGet(monitor.getIterations());
+    sampledStoppedNanos.addAndGet(nanos);
+    sampledStoppedStress.add(monitor.getFinalStress());
+  }
+
+  /**
+   * @return the summary of the layouts run with the convergence criteria, with the time saved and the
+   *         difference of the final stress estimated from the sampled full schedules.
+   */
+  public String formatConvergence() {
+    String summary = stoppedEarly.get() + " of " + monitored.get() + " layouts stopped early, in " +
+        monitoredIterations.get() + " iterations, " + String.format("%.1f", monitoredNanos.get() / 1e9) +
+        " seconds";
+    int samples = convergenceSampled.get();
+    if (samples == 0 || sampledStoppedIterations.get() == 0 || sampledStoppedNanos.get() == 0)
+      return summary + ".";
+
+    // scale the totals of the monitored layouts by the full / stopped ratios of the samples
+    double iterationRatio = (double) sampledFullIterations.get() / sampledStoppedIterations.get();
+    double timeRatio = (double) sampledFullNanos.get() / sampledStoppedNanos.get();
+    double savedSeconds = monitoredNanos.get() * (timeRatio - 1) / 1e9;
+    double fullStress = sampledFullStress.sum() / samples;
+    double stoppedStress = sampledStoppedStress.sum() / samples;
+    return summary + "; compared with the full schedule on " + samples + " sampled groups, about " +
+        String.format("%.0f", (1 - 1 / iterationRatio) * 100) + "% of the iterations and " +
+        String.format("%.1f", savedSeconds) + " seconds (" + String.format("%.0f", (1 - 1 / timeRatio) * 100) +
+        "%) are saved, and the final stress averages " + String.format("%.4g", stoppedStress) + " instead of " +
+        String.format("%.4g", fullStress) + " (" + String.format("%+.4g", stoppedStress - fullStress) + ").";
+  }
+
+  public int getWarmStarted() {
+    return warmStarted.get();
+  }
+
+  /**
+   * @return the summary of the warm-started groups, with the iterations and time saved estimated from the
+   *         sampled cold starts.
+   */
+  public String formatWarmStarts() {
+    String summary = warmStarted.get() + " groups warm-started in " + warmIterations.get() + " iterations, " +
+        String.format("%.1f", warmNanos.get() / 1e9) + " seconds";
+    if (sampled.get() == 0 || sampledWarmIterations.get() == 0 || sampledWarmNanos.get() == 0)
+      return summary + ".";
+
+    // scale the totals of the warm starts by the cold / warm ratios of the samples
+    double iterationRatio = (double) sampledColdIterations.get() / sampledWarmIterations.get();
+    double timeRatio = (double) sampledColdNanos.get() / sampledWarmNanos.get();
+    long savedIterations = Math.round(warmIterations.get() * (iterationRatio - 1));
+    double savedSeconds = warmNanos.get() * (timeRatio - 1) / 1e9;
+    return summary + "; compared with cold starts on " + sampled.get() + " sampled groups, about " +
+        savedIterations + " iterations (" + String.format("%.0f", (1 - 1 / iterationRatio) * 100) + "%) and " +
+        String.format("%.1f", savedSeconds) + " seconds (" + String.format("%.0f", (1 - 1 / timeRatio) * 100) +
+        "%) are saved.";
+  }
+
+  public int getFinished() {
+    return finished.get();
+  }
+
+  public int getFailed() {
+    return failed.get();
+  }
+
+  public int getUnchanged() {
+    return unchanged.get();
+  }
+
+  public int getCopied() {
+    return copied.get();
+  }
+
+  /**
+   * @return the elapsed time in seconds since the progress is created.
+   */
+  public double getElapsed() {
+    return (System.currentTimeMillis() - start) / 1000D;
+  }
+
+  public String formatThroughput(int count) {
+    double elapsed = getElapsed();
+    double throughput = (elapsed > 0) ? count / elapsed : 0;
+    return String.format("%.2f", throughput);
+  }
+}
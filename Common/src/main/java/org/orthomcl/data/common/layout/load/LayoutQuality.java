@@ -0,0 +1,50 @@
+package org.orthomcl.data.common.layout.load;
+
+/**
+ * The quality tiers of the layouts, each with its default {@link ConvergenceCriteria}.
+ */
+public enum LayoutQuality {
+  /**
+   * Stop once the stress improves by less than 5% over 20 iterations, or after 500 iterations.
+   */
+  Fast("fast", 20, 0.05, 500),
+  /**
+   * Stop once the stress improves by less than 1% over 50 iterations, or after 2000 iterations.
+   */
+  Normal("normal", 50, 0.01, 2000),
+  /**
+   * Run the full schedule of the layout engine.
+   */
+  Best("best", 0, 0, 0);
+
+  public static LayoutQuality fromName(String name) throws OrthoMCLDataException {
+    for (LayoutQuality quality : values()) {
+      if (quality.name.equalsIgnoreCase(name))
+        return quality;
+    }
+    throw new OrthoMCLDataException("Unknown layout quality: " + name);
+  }
+
+  private final String name;
+  private final int window;
+  private final double improvement;
+  private final int maxIterations;
+
+  private LayoutQuality(String name, int window, double improvement, int maxIterations) {
+    this.name = name;
+    this.window = window;
+    this.improvement = improvement;
+    this.maxIterations = maxIterations;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return the criteria of the tier, which can be adjusted.
+   */
+  public ConvergenceCriteria createCriteria() {
+    return new ConvergenceCriteria(window, improvement, maxIterations);
+  }
+}
@@ -0,0 +1,178 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.orthomcl.data.common.layout.core.Group;
+
+/**
+ * The convergence report of a layout run, with a line for each group laid out, from its
+ * {@link LayoutTelemetry}. The report is written as CSV, or as JSON lines if the file name ends with
+ * ".json". The CSV columns are:
+ *
+ * <pre>
+ * group_id,name,genes,scores,layout,warm,iterations,final_stress,millis,stride,stress
+ * </pre>
+ *
+ * where stress is the sampled trajectory, separated by spaces, with a sample every stride iterations. A name
+ * with a comma, a quote or a line break is quoted as in RFC 4180. When the report is closed, the groups that
+ * took the most iterations are logged.
+ */
+public class LayoutReport implements AutoCloseable {
+
+  private static final String HEADER = "group_id,name,genes,scores,layout,warm,iterations,final_stress,millis," +
+      "stride,stress";
+
+  private static final int TOP_COUNT = 10;
+
+  private static final Logger LOG = Logger.getLogger(LayoutReport.class);
+
+  public static LayoutReport create(File file) throws OrthoMCLDataException {
+    boolean json = file.getName().toLowerCase(Locale.ROOT).endsWith(".json");
+    try {
+      return new LayoutReport(file, new PrintWriter(new FileWriter(file)), json);
+    }
+    catch (IOException ex) {
+      throw new OrthoMCLDataException("Unable to create the layout report: " + file.getAbsolutePath(), ex);
+    }
+  }
+
+  private final File file;
+  private final PrintWriter writer;
+  private final boolean json;
+  private final PriorityQueue<Entry> top = new PriorityQueue<>();
+  private int count;
+  private long iterations;
+
+  private LayoutReport(File file, PrintWriter writer, boolean json) {
+    this.file = file;
+    this.writer = writer;
+    this.json = json;
+    if (!json)
+      writer.println(HEADER);
+  }
+
+  /**
+   * Record a group after its layout is processed; the details of the group must not be cleared yet.
+   *
+   * @param layout
+   *          the name of the layout engine.
+   * @param warm
+   *          true if the layout is warm-started.
+   */
+  public void record(Group group, String layout, boolean warm, LayoutTelemetry telemetry) {
+    float[] trajectory = telemetry.getTrajectory();
+    String line = json ? toJson(group, layout, warm, telemetry, trajectory) : toCsv(group, layout, warm,
+        telemetry, trajectory);
+    synchronized (this) {
+      writer.println(line);
+      count++;
+      iterations += telemetry.getIterations();
+      top.add(new Entry(group.getName(), telemetry.getIterations(), telemetry.getNanos()));
+      if (top.size() > TOP_COUNT)
+        top.poll();
+    }
+  }
+
+  private String toCsv(Group group, String layout, boolean warm, LayoutTelemetry telemetry,
+      float[] trajectory) {
+    StringBuilder line = new StringBuilder();
+    line.append(group.getId()).append(',').append(quote(group.getName())).append(',');
+    line.append(group.getGenes().size()).append(',').append(group.getScores().size()).append(',');
+    line.append(layout).append(',').append(warm).append(',').append(telemetry.getIterations()).append(',');
+    line.append(formatStress(telemetry.getFinalStress())).append(',');
+    line.append(telemetry.getNanos() / 1000000).append(',').append(telemetry.getStride()).append(',');
+    for (int i = 0; i < trajectory.length; i++) {
+      if (i > 0)
+        line.append(' ');
+      line.append(formatStress(trajectory[i]));
+    }
+    return line.toString();
+  }
+
+  /**
+   * @return the value as a CSV field, in quotes with the quotes doubled if it has any special character.
+   */
+  private static String quote(String value) {
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+      return value;
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+
+  private String toJson(Group group, String layout, boolean warm, LayoutTelemetry telemetry,
+      float[] trajectory) {
+    try {
+      JSONObject json = new JSONObject();
+      json.put("id", group.getId());
+      json.put("name", group.getName());
+      json.put("genes", group.getGenes().size());
+      json.put("scores", group.getScores().size());
+      json.put("layout", layout);
+      json.put("warm", warm);
+      json.put("iterations", telemetry.getIterations());
+      json.put("finalStress", Double.valueOf(formatStress(telemetry.getFinalStress())));
+      json.put("millis", telemetry.getNanos() / 1000000);
+      json.put("stride", telemetry.getStride());
+      JSONArray jsStress = new JSONArray();
+      for (float stress : trajectory) {
+        jsStress.put(Double.valueOf(formatStress(stress)));
+      }
+      json.put("stress", jsStress);
+      return json.toString();
+    }
+    catch (JSONException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private static String formatStress(double stress) {
+    return String.format(Locale.ROOT, "%.4g", stress);
+  }
+
+  @Override
+  public synchronized void close() {
+    writer.close();
+
+    List<Entry> entries = new ArrayList<>(top);
+    Collections.sort(entries, Collections.reverseOrder());
+    StringBuilder message = new StringBuilder();
+    message.append(count + " groups and " + iterations + " iterations reported in " + file.getAbsolutePath());
+    if (!entries.isEmpty())
+      message.append("; the most iterations:");
+    for (Entry entry : entries) {
+      message.append(' ').append(entry.name).append(" (").append(entry.iterations).append(", ");
+      message.append(String.format("%.1f", entry.nanos / 1e9)).append("s)");
+    }
+    LOG.info(message.toString());
+  }
+
+  private static class Entry implements Comparable<Entry> {
+
+    private final String name;
+    private final int iterations;
+    private final long nanos;
+
+    private Entry(String name, int iterations, long nanos) {
+      this.name = name;
+      this.iterations = iterations;
+      this.nanos = nanos;
+    }
+
+    @Override
+    public int compareTo(Entry entry) {
+      return (iterations != entry.iterations) ? Integer.compare(iterations, entry.iterations) : Long.compare(
+          nanos, entry.nanos);
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+import org.orthomcl.data.common.layout.core.Group;
+
+/**
+ * Orders the groups longest-job-first, by a cost estimated from the number of members and edges of each
+ * group, and predicts the makespan of the layout run on the given number of tasks.
+ * 
+ * The spring layout computes the repulsion between all pairs of nodes, and the attraction along each edge,
+ * so the cost of a group grows with the square of its members plus its edges. The default coefficients are
+ * rough single-core calibrations, and are only meant to rank the groups and give the scale of the run time;
+ * they can be recalibrated for other hardware or engines.
+ */
+public class LayoutScheduler {
+
+  public static final double DEFAULT_SECONDS_PER_NODE_PAIR = 4e-6;
+  public static final double DEFAULT_SECONDS_PER_EDGE = 2e-5;
+  public static final double DEFAULT_SECONDS_PER_GROUP = 2e-3;
+
+  private static final Logger LOG = Logger.getLogger(LayoutScheduler.class);
+
+  private final int taskCount;
+  private final double secondsPerNodePair;
+  private final double secondsPerEdge;
+  private final double secondsPerGroup;
+
+  public LayoutScheduler(int taskCount) {
+    this(taskCount, DEFAULT_SECONDS_PER_NODE_PAIR, DEFAULT_SECONDS_PER_EDGE, DEFAULT_SECONDS_PER_GROUP);
+  }
+
+  public LayoutScheduler(int taskCount, double secondsPerNodePair, double secondsPerEdge,
+      double secondsPerGroup) {
+    this.taskCount = taskCount;
+    this.secondsPerNodePair = secondsPerNodePair;
+    this.secondsPerEdge = secondsPerEdge;
+    this.secondsPerGroup = secondsPerGroup;
+  }
+
+  /**
+   * @return the estimated time, in seconds, to lay out the group on one core.
+   */
+  public double estimateCost(Group group) {
+    double members = group.getMemberCount();
+    return secondsPerGroup + members * members * secondsPerNodePair + group.getEdgeCount() * secondsPerEdge;
+  }
+
+  /**
+   * Sort the groups by increasing cost, so that taking the groups from the end of the list, which lets the
+   * processed groups be discarded cheaply, dispatches the most expensive groups first.
+   */
+  public void sort(List<Group> groups) {
+    Collections.sort(groups, Comparator.comparingDouble(this::estimateCost));
+  }
+
+  /**
+   * Simulate the longest-job-first dispatch of the groups, where each group goes to the task that becomes
+   * free first, and return the time when the last task finishes.
+   * 
+   * @param groups
+   *          the groups, sorted by {@link #sort(List)}.
+   * @return the predicted makespan, in seconds.
+   */
+  public double predictMakespan(List<Group> groups) {
+    PriorityQueue<Double> tasks = new PriorityQueue<>(taskCount);
+    for (int i = 0; i < taskCount; i++) {
+      tasks.add(0D);
+    }
+    for (int i = groups.size() - 1; i >= 0; i--) {
+      tasks.add(tasks.poll() + estimateCost(groups.get(i)));
+    }
+    double makespan = 0;
+    for (double finish : tasks) {
+      makespan = Math.max(makespan, finish);
+    }
+    return makespan;
+  }
+
+  /**
+   * Log the estimated cost of the run.
+   * 
+   * @param groups
+   *          the groups, sorted by {@link #sort(List)}.
+   */
+  public void report(List<Group> groups) {
+    if (groups.isEmpty()) {
+      LOG.info("No groups to lay out.");
+      return;
+    }
+    double total = 0;
+    for (Group group : groups) {
+      total += estimateCost(group);
+    }
+    Group largest = groups.get(groups.size() - 1);
+    LOG.info("Estimated cost: " + groups.size() + " groups, total " + format(total) + " core seconds, " +
+        "largest group " + largest.getName() + " (" + largest.getMemberCount() + " members, " +
+        largest.getEdgeCount() + " edges) " + format(estimateCost(largest)) + " seconds.");
+    LOG.info("Predicted makespan on " + taskCount + " tasks: " + format(predictMakespan(groups)) +
+        " seconds (lower bound " + format(total / taskCount) + " seconds).");
+  }
+
+  private static String format(double seconds) {
+    return String.format("%.1f", seconds);
+  }
+}
@@ -0,0 +1,123 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.orthomcl.data.common.layout.core.Group;
+
+/**
+ * The groups whose layouts are removed by {@link LayoutGenerator#undo()}: the groups with ids in a range,
+ * with a number of members in a range, and with one of the given names, if any. A group is in the scope only
+ * if it meets all of them; the default scope has all the groups.
+ */
+public class LayoutScope {
+
+  private int minId = Integer.MIN_VALUE;
+  private int maxId = Integer.MAX_VALUE;
+  private int minMemberCount = 0;
+  private int maxMemberCount = Integer.MAX_VALUE;
+  private List<String> names;
+  private Set<String> nameSet;
+
+  public int getMinId() {
+    return minId;
+  }
+
+  public int getMaxId() {
+    return maxId;
+  }
+
+  /**
+   * @param minId
+   *          the smallest group id in the scope.
+   * @param maxId
+   *          the largest group id in the scope.
+   */
+  public void setIdRange(int minId, int maxId) {
+    this.minId = minId;
+    this.maxId = maxId;
+  }
+
+  public int getMinMemberCount() {
+    return minMemberCount;
+  }
+
+  public int getMaxMemberCount() {
+    return maxMemberCount;
+  }
+
+  public void setMemberCountRange(int minMemberCount, int maxMemberCount) {
+    this.minMemberCount = minMemberCount;
+    this.maxMemberCount = maxMemberCount;
+  }
+
+  /**
+   * @return true if the scope is limited by the number of members.
+   */
+  public boolean isMemberScoped() {
+    return minMemberCount > 0 || maxMemberCount < Integer.MAX_VALUE;
+  }
+
+  /**
+   * @return true if the scope is limited by the number of members or by the names, which only a layout with a
+   *         group can be matched by; otherwise a layout is in the scope by its group id alone.
+   */
+  public boolean isGroupScoped() {
+    return isMemberScoped() || names != null;
+  }
+
+  /**
+   * @return the names of the groups in the scope, or null if the scope is not limited by name.
+   */
+  public List<String> getNames() {
+    return names;
+  }
+
+  public void setNames(List<String> names) {
+    this.names = names;
+    this.nameSet = (names == null) ? null : new HashSet<>(names);
+  }
+
+  /**
+   * @return true if the scope has all the groups.
+   */
+  public boolean isAll() {
+    return minId == Integer.MIN_VALUE && maxId == Integer.MAX_VALUE && !isMemberScoped() && names == null;
+  }
+
+  /**
+   * @return true if the id is in the range of the scope.
+   */
+  public boolean containsId(int groupId) {
+    return groupId >= minId && groupId <= maxId;
+  }
+
+  /**
+   * @param group
+   *          a group with its id, name and number of members.
+   */
+  public boolean contains(Group group) {
+    return group.getId() >= minId && group.getId() <= maxId && group.getMemberCount() >= minMemberCount &&
+        group.getMemberCount() <= maxMemberCount && (nameSet == null || nameSet.contains(group.getName()));
+  }
+
+  @Override
+  public String toString() {
+    if (isAll())
+      return "all groups";
+    StringBuilder buffer = new StringBuilder("groups");
+    if (minId != Integer.MIN_VALUE || maxId != Integer.MAX_VALUE)
+      buffer.append(" with ids ").append(formatRange(minId, Integer.MIN_VALUE, maxId));
+    if (isMemberScoped())
+      buffer.append(" with members ").append(formatRange(minMemberCount, 0, maxMemberCount));
+    if (names != null)
+      buffer.append(" of ").append(names.size()).append(" names");
+    return buffer.toString();
+  }
+
+  private static String formatRange(int min, int lowest, int max) {
+    return ((min == lowest) ? "" : Integer.toString(min)) + ":" +
+        ((max == Integer.MAX_VALUE) ? "" : Integer.toString(max));
+  }
+}
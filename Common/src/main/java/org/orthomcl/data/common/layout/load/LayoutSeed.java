@@ -0,0 +1,46 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.util.Random;
+
+import org.orthomcl.data.common.layout.core.Group;
+
+/**
+ * Computes the seed of the layout of a group from the name of the group and the seed of the run, so that a
+ * group gets the same layout in every run with the same seed, regardless of the number of tasks or the order
+ * the groups are laid out in. The name is used instead of the id, since the names are kept from one release
+ * to the next, while the ids are assigned by the database.
+ * 
+ * The seed is the 64-bit FNV-1a hash of the name, mixed with the seed of the run by the finalizer of
+ * MurmurHash3, so that nearby names and seeds get unrelated random sequences.
+ */
+public class LayoutSeed {
+
+  public static final long DEFAULT_RUN_SEED = 0;
+
+  public static long compute(Group group, long runSeed) {
+    long hash = 0xcbf29ce484222325L;
+    String name = group.getName();
+    for (int i = 0; i < name.length(); i++) {
+      hash ^= name.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return mix(hash ^ mix(runSeed + 0x9E3779B97F4A7C15L));
+  }
+
+  /**
+   * @return a new random generator for the layout of the group; each layout of the group should take a new
+   *         generator, so that it doesn't depend on the layouts run before it.
+   */
+  public static Random createRandom(Group group, long runSeed) {
+    return new Random(compute(group, runSeed));
+  }
+
+  private static long mix(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return key;
+  }
+}
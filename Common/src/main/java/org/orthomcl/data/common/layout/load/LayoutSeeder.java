@@ -0,0 +1,118 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+import org.orthomcl.data.common.layout.core.BlastScore;
+import org.orthomcl.data.common.layout.core.Gene;
+import org.orthomcl.data.common.layout.core.Group;
+import org.orthomcl.shared.model.layout.Vector;
+
+/**
+ * Seed the positions of the genes of a group from a previous layout of the group, so that the layout can be
+ * warm-started. The genes in the previous layout keep their positions; each new gene is placed next to its
+ * strongest-scoring neighbour that has a position already, at the preferred length in a random direction.
+ * The new genes without any path to a positioned gene are placed randomly around the positioned genes.
+ */
+public class LayoutSeeder {
+
+  private final Random random;
+
+  public LayoutSeeder(Random random) {
+    this.random = random;
+  }
+
+  /**
+   * @param previousLayout
+   *          the stored layout of the group, in any of the layout formats.
+   * @return the number of genes positioned from the previous layout; if none, the positions of the genes are
+   *         not changed, and the layout should be cold-started.
+   */
+  public int seed(Group group, String previousLayout) throws OrthoMCLDataException {
+    Map<String, Gene> previous = LayoutFormat.decode(group.getId(), group.getName(), previousLayout)
+        .getGenes();
+
+    Map<String, Gene> genes = group.getGenes();
+    Set<Gene> placed = new HashSet<>();
+    double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+    for (Gene gene : genes.values()) {
+      Gene oldGene = previous.get(gene.getSourceId());
+      if (oldGene == null)
+        continue;
+      Vector point = oldGene.getPoint();
+      gene.getPoint().setLocation(point.x, point.y);
+      placed.add(gene);
+      minX = Math.min(minX, point.x);
+      minY = Math.min(minY, point.y);
+      maxX = Math.max(maxX, point.x);
+      maxY = Math.max(maxY, point.y);
+    }
+    int seeded = placed.size();
+    if (seeded == 0 || seeded == genes.size())
+      return seeded;
+
+    // grow the positioned genes along the strongest scores first, the same way as a minimum spanning tree.
+    Map<Gene, List<BlastScore>> neighbours = new HashMap<>();
+    for (BlastScore score : group.getScores().values()) {
+      addNeighbour(neighbours, genes.get(score.getQueryId()), score);
+      addNeighbour(neighbours, genes.get(score.getSubjectId()), score);
+    }
+    PriorityQueue<BlastScore> candidates = new PriorityQueue<>(
+        (a, b) -> Double.compare(a.getPreferredLength(), b.getPreferredLength()));
+    for (Gene gene : placed) {
+      addCandidates(candidates, neighbours.get(gene), placed, genes);
+    }
+    while (!candidates.isEmpty()) {
+      BlastScore score = candidates.poll();
+      Gene query = genes.get(score.getQueryId());
+      Gene subject = genes.get(score.getSubjectId());
+      boolean queryPlaced = placed.contains(query);
+      if (queryPlaced == placed.contains(subject))
+        continue;
+      Gene gene = queryPlaced ? subject : query;
+      Vector anchor = (queryPlaced ? query : subject).getPoint();
+      double angle = random.nextDouble() * 2 * Math.PI;
+      double length = Math.max(1, score.getPreferredLength());
+      gene.getPoint().setLocation(anchor.x + Math.cos(angle) * length, anchor.y + Math.sin(angle) * length);
+      placed.add(gene);
+      addCandidates(candidates, neighbours.get(gene), placed, genes);
+    }
+
+    // the remaining genes are not connected to any positioned gene
+    double margin = group.getMaxPreferredLength();
+    for (Gene gene : genes.values()) {
+      if (placed.contains(gene))
+        continue;
+      gene.getPoint().setLocation(minX - margin + random.nextDouble() * (maxX - minX + 2 * margin),
+          minY - margin + random.nextDouble() * (maxY - minY + 2 * margin));
+    }
+    return seeded;
+  }
+
+  private void addNeighbour(Map<Gene, List<BlastScore>> neighbours, Gene gene, BlastScore score) {
+    if (gene == null)
+      return;
+    List<BlastScore> scores = neighbours.get(gene);
+    if (scores == null) {
+      scores = new ArrayList<>();
+      neighbours.put(gene, scores);
+    }
+    scores.add(score);
+  }
+
+  private void addCandidates(PriorityQueue<BlastScore> candidates, List<BlastScore> scores,
+      Set<Gene> placed, Map<String, Gene> genes) {
+    if (scores == null)
+      return;
+    for (BlastScore score : scores) {
+      if (!placed.contains(genes.get(score.getQueryId())) || !placed.contains(genes.get(score.getSubjectId())))
+        candidates.add(score);
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.orthomcl.data.common.layout.core.Group;
+import org.orthomcl.data.common.layout.core.GroupGraph;
+import org.orthomcl.data.common.layout.engine.ForceLayout;
+import org.orthomcl.data.common.layout.engine.MultilevelLayout;
+import org.orthomcl.shared.model.layout.Layout;
+
+/**
+ * Choose the layout of each group by its size. The groups above the multilevel threshold are laid out with
+ * the {@link MultilevelLayout} within the time budget; the other groups are laid out with the chosen
+ * {@link LayoutEngine}. The groups from the parallel threshold up have their forces computed in the shared
+ * pool, which gives the same layouts as without it.
+ * If {@link ConvergenceCriteria} are given, the layouts are stopped once they meet them.
+ * 
+ * Each layout takes its random generator from {@link #createRandom(Group)}, seeded by the group and the seed
+ * of the run, so that the layouts are reproducible.
+ */
+public class LayoutSelector {
+
+  private final LayoutEngine engine;
+
+  private ForkJoinPool pool;
+  private int parallelThreshold;
+  private int multilevelThreshold;
+  private long multilevelBudget;
+  private ConvergenceCriteria convergence;
+  private long seed = LayoutSeed.DEFAULT_RUN_SEED;
+
+  public LayoutSelector(LayoutEngine engine) {
+    this.engine = engine;
+  }
+
+  /**
+   * @param pool
+   *          the pool to compute the forces of the large groups in.
+   * @param threshold
+   *          the number of genes from which a group is laid out in the pool.
+   */
+  public void setParallel(ForkJoinPool pool, int threshold) {
+    this.pool = pool;
+    this.parallelThreshold = threshold;
+  }
+
+  /**
+   * @param threshold
+   *          the number of genes above which a group is laid out with the multilevel layout.
+   * @param budget
+   *          the time in milliseconds each multilevel layout should take at most.
+   */
+  public void setMultilevel(int threshold, long budget) {
+    this.multilevelThreshold = threshold;
+    this.multilevelBudget = budget;
+  }
+
+  /**
+   * @param convergence
+   *          the criteria to stop the layouts early, or null to run the full schedule of the engines.
+   */
+  public void setConvergence(ConvergenceCriteria convergence) {
+    this.convergence = convergence;
+  }
+
+  /**
+   * @return the criteria to stop the layouts early, or null.
+   */
+  public ConvergenceCriteria getConvergence() {
+    return convergence;
+  }
+
+  /**
+   * @param seed
+   *          the seed of the run, which the seed of each group is computed from.
+   */
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * @return a new random generator for a layout of the group, always seeded the same for the same group.
+   */
+  public Random createRandom(Group group) {
+    return LayoutSeed.createRandom(group, seed);
+  }
+
+  public Layout createLayout(Group group, Random random) {
+    if (isMultilevel(group)) {
+      MultilevelLayout layout = new MultilevelLayout(new GroupGraph(group), random);
+      layout.setTimeBudget(multilevelBudget);
+      if (isParallel(group))
+        layout.setPool(pool);
+      return layout;
+    }
+    return engine.createLayout(group, random, isParallel(group) ? pool : null);
+  }
+
+  /**
+   * @return true if the group can be warm-started: the chosen engine can be, and the group is not laid out
+   *         with the multilevel layout, which always starts from the coarsest level.
+   */
+  public boolean canWarmStart(Group group) {
+    return engine.canWarmStart() && !isMultilevel(group);
+  }
+
+  /**
+   * @return a layout of the chosen engine, starting from the current positions of the genes; only for the
+   *         groups that {@link #canWarmStart(Group)}.
+   */
+  public ForceLayout createWarmLayout(Group group, Random random) {
+    ForceLayout layout = engine.createWarmLayout(group, random);
+    if (isParallel(group))
+      layout.setPool(pool);
+    return layout;
+  }
+
+  private boolean isParallel(Group group) {
+    return pool != null && group.getGenes().size() >= parallelThreshold;
+  }
+
+  private boolean isMultilevel(Group group) {
+    return multilevelThreshold > 0 && group.getGenes().size() > multilevelThreshold;
+  }
+}
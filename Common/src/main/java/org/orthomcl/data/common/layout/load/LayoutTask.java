@@ -1,80 +1,185 @@
 package org.orthomcl.data.common.layout.load;
 
-import org.apache.ibatis.session.ExecutorType;
-import org.apache.ibatis.session.SqlSession;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.log4j.Logger;
 import org.orthomcl.data.common.layout.core.Group;
+import org.orthomcl.data.common.layout.engine.ForceLayout;
 import org.orthomcl.shared.model.layout.GraphicsException;
-import org.orthomcl.shared.model.layout.SpringLayout;
+import org.orthomcl.shared.model.layout.Layout;
 
+/**
+ * The CPU-bound stage of the layout pipeline. It takes loaded groups, computes and serializes their
+ * layouts, and passes them on to the writer stage. A group that fails is retried, and is recorded and
+ * skipped if it still fails, so that one bad group doesn't stop the task. The task doesn't touch the
+ * database, and exits once it takes the {@link #END_OF_QUEUE} marker.
+ * 
+ * The layout of each group is chosen by the {@link LayoutSelector}. If the previous layout of a group is
+ * loaded, and the engine of the run can be warm-started, the new layout continues from the previous positions
+ * of the genes; otherwise the layout starts from scratch. If the run is reported, each layout is processed
+ * with a {@link LayoutTelemetry} observer.
+ * 
+ * Each attempt of a group starts from a random generator seeded for the group by the {@link LayoutSelector},
+ * and the layouts run only to compare with the kept one take their own generators, so that the layout of a
+ * group doesn't depend on the groups laid out before it, on the task, or on the sampling. Only the layouts
+ * cut short by a time budget are not reproducible.
+ */
 public class LayoutTask implements Runnable {
 
-  private static final long IDLE_INTERVAL = 500;
+  /**
+   * Marker put into the queue once for each task, to signal that no more groups will follow.
+   */
+  public static final Group END_OF_QUEUE = new Group(-1, "END_OF_QUEUE");
 
-  private final GroupFactory groupFactory;
-  private final SqlSession session;
+  private static final Logger LOG = Logger.getLogger(LayoutTask.class);
 
-  private Group group;
-  private boolean stopRequested;
-  private boolean stopped;
+  private final GroupSource groupSource;
+  private final LayoutSelector selector;
+  private final BlockingQueue<Group> layoutQueue;
+  private final BlockingQueue<Group> writeQueue;
+  private final int retryCount;
+  private final LayoutProgress progress;
 
-  public LayoutTask(GroupFactory groupFactory) {
-    this.groupFactory = groupFactory;
-    this.session = groupFactory.openSession(ExecutorType.REUSE);
+  public LayoutTask(GroupSource groupSource, LayoutSelector selector, BlockingQueue<Group> layoutQueue,
+      BlockingQueue<Group> writeQueue, int retryCount, LayoutProgress progress) {
+    this.groupSource = groupSource;
+    this.selector = selector;
+    this.layoutQueue = layoutQueue;
+    this.writeQueue = writeQueue;
+    this.retryCount = retryCount;
+    this.progress = progress;
   }
 
-  public boolean isAvailable() {
-    return (group == null);
-  }
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        Group group = layoutQueue.take();
+        if (group == END_OF_QUEUE)
+          break;
 
-  /**
-   * @param group
-   *          the group to set
-   */
-  public void setGroup(Group group) {
-    this.group = group;
-  }
+        Throwable error = layout(group);
 
-  public void stop() {
-    this.stopRequested = true;
+        // the writer only needs the serialized layout, release the graph before the group is queued.
+        group.clearDetails();
+        group.setPreviousLayout(null);
+        if (error == null)
+          writeQueue.put(group);
+        else
+          progress.groupFailed(group, "layout", error);
+      }
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
   }
 
-  public boolean isStopped() {
-    return stopped;
+  /**
+   * create layout, and retry if it fails.
+   * 
+   * @return null if the layout is created, or the error of the last attempt.
+   */
+  private Throwable layout(Group group) {
+    Exception error = null;
+    for (int attempt = 0; attempt <= retryCount; attempt++) {
+      try {
+        Random random = selector.createRandom(group);
+        if (group.getPreviousLayout() == null || !selector.canWarmStart(group) || !warmStart(group, random)) {
+          Layout layout = selector.createLayout(group, random);
+          if (selector.getConvergence() != null && progress.sampleConvergence())
+            compareConvergence(group, layout);
+          else
+            process(group, layout, false);
+        }
+        groupSource.createLayout(group);
+        return null;
+      }
+      catch (GraphicsException | OrthoMCLDataException | RuntimeException ex) {
+        error = ex;
+      }
+      catch (Error ex) {
+        // an error, such as running out of memory, is not retried, but the group is still recorded as failed
+        return ex;
+      }
+    }
+    return error;
   }
 
-  @Override
-  public void run() {
-    stopped = stopRequested = false;
+  /**
+   * Seed the genes from the previous layout, and continue the layout from there.
+   * 
+   * @return true if the layout is done; false if the previous layout can't be read, or no gene could be
+   *         seeded, and the layout should start from scratch.
+   */
+  private boolean warmStart(Group group, Random random) throws GraphicsException {
     try {
-      while (!stopRequested) {
-        if (group == null) { // no group is available
-          try {
-            Thread.sleep(IDLE_INTERVAL);
-          }
-          catch (InterruptedException ex) {}
-        }
-        else { // group available
-          // load group detail
-          groupFactory.loadGroupDetail(group, session);
-          // create layout
-          SpringLayout layout = new SpringLayout(group);
-          layout.process(null);
-
-          // save layout
-          groupFactory.saveLayout(group, session);
-          session.commit();
-
-          group = null;
-        }
-      }
+      if (new LayoutSeeder(random).seed(group, group.getPreviousLayout()) == 0)
+        return false;
+    }
+    catch (OrthoMCLDataException ex) {
+      // a previous layout that can't be read doesn't fail the group, it is only laid out from scratch
+      LOG.warn("Group " + group.getName() + " is cold-started: " + ex.getMessage(), ex);
+      return false;
     }
-    catch (GraphicsException | OrthoMCLDataException ex) {
-      session.rollback();
-      throw new RuntimeException(ex);
+
+    // the warm layout takes the seeded positions when its graph is created, so the layout the group would have
+    // without a warm start can run first on a sample of the groups, to compare the two.
+    ForceLayout warm = selector.createWarmLayout(group, random);
+    if (progress.sampleWarmStart()) {
+      Layout cold = selector.createLayout(group, selector.createRandom(group));
+      LayoutTelemetry coldTelemetry = new LayoutTelemetry();
+      cold.process(coldTelemetry);
+      coldTelemetry.done();
+
+      long warmNanos = process(group, warm, true);
+      progress.warmStartSampled(coldTelemetry.getIterations(), coldTelemetry.getNanos(), warm.getIteration(),
+          warmNanos);
+      progress.groupWarmStarted(warm.getIteration(), warmNanos);
     }
-    finally {
-      session.close();
-      stopped = true;
+    else {
+      long nanos = process(group, warm, true);
+      progress.groupWarmStarted(warm.getIteration(), nanos);
     }
+    return true;
+  }
+
+  /**
+   * Process the layout with the observers of the run: the telemetry if the run is reported, and the
+   * convergence monitor if the layouts are stopped early.
+   * 
+   * @return the time the layout took, in nanoseconds.
+   */
+  private long process(Group group, Layout layout, boolean warm) throws GraphicsException {
+    LayoutTelemetry telemetry = progress.createTelemetry();
+    ConvergenceCriteria convergence = selector.getConvergence();
+    ConvergenceMonitor monitor = (convergence != null) ? convergence.createMonitor(layout, telemetry) : null;
+    long start = System.nanoTime();
+    layout.process((monitor != null) ? monitor : telemetry);
+    long nanos = System.nanoTime() - start;
+    progress.groupLaidOut(group, layout, warm, telemetry);
+    if (monitor != null)
+      progress.groupMonitored(monitor, nanos);
+    return nanos;
+  }
+
+  /**
+   * Lay out the group with the full schedule of the engine first, then with the convergence criteria, to
+   * compare the two; the positions of the second layout are kept.
+   */
+  private void compareConvergence(Group group, Layout layout) throws GraphicsException {
+    Layout full = selector.createLayout(group, selector.createRandom(group));
+    LayoutTelemetry fullTelemetry = new LayoutTelemetry();
+    full.process(fullTelemetry);
+    fullTelemetry.done();
+
+    LayoutTelemetry telemetry = progress.createTelemetry();
+    ConvergenceMonitor monitor = selector.getConvergence().createMonitor(layout, telemetry);
+    long start = System.nanoTime();
+    layout.process(monitor);
+    long nanos = System.nanoTime() - start;
+    progress.groupLaidOut(group, layout, false, telemetry);
+    progress.groupMonitored(monitor, nanos);
+    progress.convergenceSampled(fullTelemetry, monitor, nanos);
   }
 }
@@ -0,0 +1,87 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.util.Arrays;
+
+import org.orthomcl.data.common.layout.engine.StressObserver;
+import org.orthomcl.shared.model.layout.Graph;
+
+/**
+ * A headless observer that records the convergence of one layout: the number of iterations, the final stress,
+ * the wall time, and a sample of the stress trajectory.
+ *
+ * The trajectory is kept in a fixed number of samples: the stress is sampled every stride iterations, and
+ * whenever the samples are full, every other sample is dropped and the stride is doubled. So the cost of
+ * each step is a few assignments, and the trajectory of any layout fits in {@link #MAX_SAMPLES} values.
+ *
+ * The observer is created right before the layout is processed, and {@link #done()} is called after it.
+ */
+public class LayoutTelemetry implements StressObserver {
+
+  public static final int MAX_SAMPLES = 64;
+
+  private final long start = System.nanoTime();
+  private final float[] samples = new float[MAX_SAMPLES];
+  private int sampleCount;
+  private int stride = 1;
+  private int iteration;
+  private double stress;
+  private long nanos;
+
+  @Override
+  public void step(Graph graph, int iteration, double globalStress) {
+    this.iteration = iteration;
+    this.stress = globalStress;
+    if (iteration % stride != 0)
+      return;
+    if (sampleCount == MAX_SAMPLES) { // keep the samples at the multiples of the doubled stride
+      for (int i = 0; i < MAX_SAMPLES / 2; i++) {
+        samples[i] = samples[2 * i + 1];
+      }
+      sampleCount = MAX_SAMPLES / 2;
+      stride *= 2;
+      if (iteration % stride != 0)
+        return;
+    }
+    samples[sampleCount++] = (float) globalStress;
+  }
+
+  @Override
+  public void finish(Graph graph, int iteration, double globalStress) {
+    this.iteration = iteration;
+    this.stress = globalStress;
+  }
+
+  /**
+   * Stop the clock of the layout.
+   */
+  public void done() {
+    nanos = System.nanoTime() - start;
+  }
+
+  public int getIterations() {
+    return iteration;
+  }
+
+  public double getFinalStress() {
+    return stress;
+  }
+
+  public long getNanos() {
+    return nanos;
+  }
+
+  /**
+   * @return the number of iterations between the samples of the trajectory; the first sample is at this
+   *         iteration.
+   */
+  public int getStride() {
+    return stride;
+  }
+
+  /**
+   * @return the sampled stress trajectory.
+   */
+  public float[] getTrajectory() {
+    return Arrays.copyOf(samples, sampleCount);
+  }
+}
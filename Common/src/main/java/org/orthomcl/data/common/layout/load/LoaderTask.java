@@ -0,0 +1,206 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.log4j.Logger;
+import org.orthomcl.data.common.layout.core.Group;
+
+/**
+ * The first stage of the layout pipeline. It takes batches of groups, loads the details of each batch at
+ * once, and passes the loaded groups on to the layout stage, so that the groups are prefetched while the
+ * layout tasks are busy. If a batch fails to load, its groups are loaded one at a time, with retries, and
+ * the groups that still fail are recorded and skipped. The task exits once it takes the
+ * {@link #END_OF_QUEUE} marker.
+ * 
+ * In an incremental run, the loader computes the fingerprint of each loaded group. A group whose fingerprint
+ * is the same as the one stored with its layout is skipped; if another group has a layout with the same
+ * fingerprint, the layout is copied and passed on to the writer stage directly. Only the other groups go to
+ * the layout stage. If the layouts are warm-started, the stored layout of each of these groups is loaded
+ * with it.
+ */
+public class LoaderTask implements Runnable {
+
+  /**
+   * Marker put into the queue once for each loader, to signal that no more batches will follow.
+   */
+  public static final List<Group> END_OF_QUEUE = new ArrayList<>();
+
+  private static final Logger LOG = Logger.getLogger(LoaderTask.class);
+
+  private final GroupSource groupSource;
+  private final BlockingQueue<List<Group>> loadQueue;
+  private final BlockingQueue<Group> layoutQueue;
+  private final BlockingQueue<Group> writeQueue;
+  private final Map<String, Integer> fingerprints;
+  private final boolean warm;
+  private final int retryCount;
+  private final LayoutProgress progress;
+
+  /**
+   * @param fingerprints
+   *          the ids of the groups with layouts, keyed by fingerprint, for an incremental run; or null if all
+   *          the groups are laid out.
+   * @param warm
+   *          true to load the stored layouts of the groups to be laid out, to warm-start their layouts.
+   */
+  public LoaderTask(GroupSource groupSource, BlockingQueue<List<Group>> loadQueue,
+      BlockingQueue<Group> layoutQueue, BlockingQueue<Group> writeQueue, Map<String, Integer> fingerprints,
+      boolean warm, int retryCount, LayoutProgress progress) {
+    this.groupSource = groupSource;
+    this.loadQueue = loadQueue;
+    this.layoutQueue = layoutQueue;
+    this.writeQueue = writeQueue;
+    this.fingerprints = fingerprints;
+    this.warm = warm;
+    this.retryCount = retryCount;
+    this.progress = progress;
+  }
+
+  @Override
+  public void run() {
+    GroupSession session;
+    try {
+      session = groupSource.openSession(false);
+    }
+    catch (OrthoMCLDataException ex) {
+      LOG.error("Failed to open a session, the groups of this loader are failed.", ex);
+      failAll(ex);
+      return;
+    }
+    try {
+      while (true) {
+        List<Group> groups = loadQueue.take();
+        if (groups == END_OF_QUEUE)
+          break;
+
+        if (loadBatch(groups, session)) {
+          for (Group group : groups) {
+            dispatch(group, session);
+          }
+        }
+        else {
+          for (Group group : groups) {
+            loadGroup(group, session);
+          }
+        }
+      }
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    finally {
+      session.close();
+    }
+  }
+
+  /**
+   * Record the groups taken from the queue as failed, so that the other stages aren't left waiting for them.
+   */
+  private void failAll(Exception error) {
+    try {
+      while (true) {
+        List<Group> groups = loadQueue.take();
+        if (groups == END_OF_QUEUE)
+          break;
+        for (Group group : groups) {
+          progress.groupFailed(group, "load", error);
+        }
+      }
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * load details of the whole batch.
+   * 
+   * @return true if the batch is loaded; false if failed, and the groups should be loaded one at a time.
+   */
+  private boolean loadBatch(List<Group> groups, GroupSession session) {
+    try {
+      session.loadGroupDetails(groups);
+      return true;
+    }
+    catch (OrthoMCLDataException | RuntimeException | Error ex) {
+      LOG.warn("Failed to load a batch of " + groups.size() + " groups, loading them one at a time.", ex);
+      session.rollback();
+      return false;
+    }
+  }
+
+  private void loadGroup(Group group, GroupSession session) throws InterruptedException {
+    Throwable error = null;
+    for (int attempt = 0; attempt <= retryCount; attempt++) {
+      // discard the details partially loaded by the failed attempt
+      group.clearDetails();
+      try {
+        session.loadGroupDetail(group);
+      }
+      catch (OrthoMCLDataException | RuntimeException ex) {
+        session.rollback();
+        error = ex;
+        continue;
+      }
+      catch (Error ex) {
+        // an error, such as running out of memory, is not retried, but the group is still recorded as failed
+        session.rollback();
+        error = ex;
+        break;
+      }
+      dispatch(group, session);
+      return;
+    }
+    group.clearDetails();
+    progress.groupFailed(group, "load", error);
+  }
+
+  /**
+   * Pass the loaded group on to the layout stage, unless the layout can be kept or copied in an incremental
+   * run.
+   */
+  private void dispatch(Group group, GroupSession session) throws InterruptedException {
+    if (fingerprints != null) {
+      String fingerprint = LayoutFingerprint.compute(group);
+      group.setFingerprint(fingerprint);
+      if (fingerprint.equals(group.getStoredFingerprint())) {
+        group.clearDetails();
+        progress.groupUnchanged(group);
+        return;
+      }
+
+      Integer sourceId = fingerprints.get(fingerprint);
+      if (sourceId != null) {
+        try {
+          // the source layout may have been replaced in this run, then it no longer has the fingerprint.
+          String layout = session.loadLayout(sourceId, fingerprint);
+          if (layout != null) {
+            group.setLayout(layout);
+            group.clearDetails();
+            progress.groupCopied();
+            writeQueue.put(group);
+            return;
+          }
+        }
+        catch (OrthoMCLDataException | RuntimeException ex) {
+          LOG.warn("Failed to copy the layout of group " + sourceId + " to " + group.getName() +
+              ", the layout will be created.", ex);
+        }
+      }
+    }
+    if (warm) {
+      try {
+        group.setPreviousLayout(session.loadPreviousLayout(group));
+      }
+      catch (OrthoMCLDataException | RuntimeException ex) {
+        LOG.warn("Failed to load the previous layout of group " + group.getName() +
+            ", the layout will start from scratch.", ex);
+      }
+    }
+    layoutQueue.put(group);
+  }
+
+}
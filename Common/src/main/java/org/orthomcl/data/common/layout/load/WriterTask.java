@@ -0,0 +1,138 @@
+package org.orthomcl.data.common.layout.load;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.log4j.Logger;
+import org.orthomcl.data.common.layout.core.Group;
+
+/**
+ * The last stage of the layout pipeline. It takes groups with serialized layouts, and inserts them in a batch
+ * session of the {@link GroupSource}, committing once every given number of groups. If a batch fails, its layouts are inserted
+ * one at a time, with retries, and the groups that still fail are recorded and skipped. The task exits
+ * once it takes the {@link #END_OF_QUEUE} marker, after committing the remaining layouts.
+ * 
+ * In an incremental run, the existing layout of each group is deleted before the new one is inserted, and the
+ * fingerprint of the group is stored with the layout.
+ */
+public class WriterTask implements Runnable {
+
+  /**
+   * Marker put into the queue to signal that no more groups will follow.
+   */
+  public static final Group END_OF_QUEUE = new Group(-1, "END_OF_QUEUE");
+
+  private static final Logger LOG = Logger.getLogger(WriterTask.class);
+
+  private final GroupSource groupSource;
+  private final BlockingQueue<Group> writeQueue;
+  private final int commitInterval;
+  private final int retryCount;
+  private final boolean replace;
+  private final LayoutProgress progress;
+
+  public WriterTask(GroupSource groupSource, BlockingQueue<Group> writeQueue, int commitInterval,
+      int retryCount, boolean replace, LayoutProgress progress) {
+    this.groupSource = groupSource;
+    this.writeQueue = writeQueue;
+    this.commitInterval = commitInterval;
+    this.retryCount = retryCount;
+    this.replace = replace;
+    this.progress = progress;
+  }
+
+  @Override
+  public void run() {
+    GroupSession session;
+    try {
+      session = groupSource.openSession(true);
+    }
+    catch (OrthoMCLDataException ex) {
+      LOG.error("Failed to open a session, the layouts are not written.", ex);
+      failAll(ex);
+      return;
+    }
+    try {
+      List<Group> pending = new ArrayList<>(commitInterval);
+      while (true) {
+        Group group = writeQueue.take();
+        if (group == END_OF_QUEUE)
+          break;
+
+        pending.add(group);
+        if (pending.size() >= commitInterval)
+          write(pending, session);
+      }
+      // commit the remaining layouts
+      if (!pending.isEmpty())
+        write(pending, session);
+    }
+    catch (InterruptedException ex) {
+      session.rollback();
+      Thread.currentThread().interrupt();
+    }
+    finally {
+      session.close();
+    }
+  }
+
+  /**
+   * Record the groups taken from the queue as failed, so that the layout tasks aren't blocked on a full queue.
+   */
+  private void failAll(Exception error) {
+    try {
+      while (true) {
+        Group group = writeQueue.take();
+        if (group == END_OF_QUEUE)
+          break;
+        progress.groupFailed(group, "write", error);
+      }
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void write(List<Group> pending, GroupSession session) {
+    try {
+      for (Group group : pending) {
+        session.insertLayout(group, replace);
+      }
+      session.commit();
+      progress.groupsFinished(pending);
+    }
+    catch (OrthoMCLDataException | RuntimeException | Error ex) {
+      LOG.warn("Failed to commit a batch of " + pending.size() + " layouts, inserting them one at a time.", ex);
+      session.rollback();
+      for (Group group : pending) {
+        writeGroup(group, session);
+      }
+    }
+    pending.clear();
+  }
+
+  private void writeGroup(Group group, GroupSession session) {
+    Throwable error = null;
+    for (int attempt = 0; attempt <= retryCount; attempt++) {
+      try {
+        session.insertLayout(group, replace);
+        session.commit();
+        progress.groupsFinished(Collections.singletonList(group));
+        return;
+      }
+      catch (OrthoMCLDataException | RuntimeException ex) {
+        session.rollback();
+        error = ex;
+      }
+      catch (Error ex) {
+        // an error, such as running out of memory, is not retried, but the group is still recorded as failed
+        session.rollback();
+        error = ex;
+        break;
+      }
+    }
+    progress.groupFailed(group, "write", error);
+  }
+}
@@ -2,6 +2,7 @@ package org.orthomcl.data.common.layout.load.mapper;
 
 import java.util.List;
 
+import org.apache.ibatis.session.ResultHandler;
 import org.orthomcl.data.common.layout.core.BlastScore;
 import org.orthomcl.data.common.layout.core.Gene;
 import org.orthomcl.data.common.layout.core.GenePair;
@@ -15,6 +16,11 @@ public interface GeneMapper {
   
   List<BlastScore> selectBlastScoresEx(Group group);
 
+  /**
+   * Select one row for each pair of genes, with the evalues of both directions.
+   */
+  List<BlastScore> selectMergedBlastScores(Group group);
+
   List<GenePair> selectOrthologs(Group group);
 
   List<GenePair> selectCoorthologs(Group group);
@@ -25,4 +31,36 @@ public interface GeneMapper {
 
   List<GenePair> selectPeripheralPeripheral(Group group);
 
+  /*
+   * The batch versions of the selects above, which load the details of a list of groups in one query each.
+   * The returned genes and pairs have the groupId set, so that they can be assigned to their groups.
+   */
+
+  List<Gene> selectGenesByGroups(List<Group> groups);
+
+  List<BlastScore> selectBlastScoresByGroups(List<Group> groups);
+
+  List<BlastScore> selectMergedBlastScoresByGroups(List<Group> groups);
+
+  List<GenePair> selectOrthologsByGroups(List<Group> groups);
+
+  List<GenePair> selectCoorthologsByGroups(List<Group> groups);
+
+  List<GenePair> selectInparalogsByGroups(List<Group> groups);
+
+  List<GenePair> selectPeripheralCoreByGroups(List<Group> groups);
+
+  List<GenePair> selectPeripheralPeripheralByGroups(List<Group> groups);
+
+  /*
+   * Stream all the pairs of each type, from both the Core and Residuals tables, to build the in-memory edge
+   * type index.
+   */
+
+  void selectAllOrthologs(ResultHandler<GenePair> handler);
+
+  void selectAllCoorthologs(ResultHandler<GenePair> handler);
+
+  void selectAllInparalogs(ResultHandler<GenePair> handler);
+
 }
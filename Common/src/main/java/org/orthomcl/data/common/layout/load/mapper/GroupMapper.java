@@ -2,6 +2,8 @@ package org.orthomcl.data.common.layout.load.mapper;
 
 import java.util.List;
 
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 import org.orthomcl.data.common.layout.core.Group;
 
 public interface GroupMapper {
@@ -14,12 +16,39 @@ public interface GroupMapper {
    */
   List<Group> selectGroups(int max);
 
+  /**
+   * Select groups with the # of members equal to, or less than, the given max, whether they have the layout
+   * or not, along with the fingerprint stored with the layout, if any.
+   */
+  List<Group> selectGroupsForUpdate(int max);
+
+  /**
+   * Select all the groups with a fingerprinted layout, with the fingerprint as the stored fingerprint.
+   */
+  List<Group> selectLayoutFingerprints();
+
+  /**
+   * Select the layout of the group, only if it is stored with the given fingerprint.
+   */
+  String selectLayoutByFingerprint(@Param("id") int id, @Param("fingerprint") String fingerprint);
+
   Group selectGroupById(int id);
 
   Group selectGroupByName(String name);
   
   String selectLayout(Group group);
 
+  /**
+   * Select the ids of the groups with layouts, in ascending order.
+   */
+  List<Integer> selectLayoutGroupIds();
+
+  /**
+   * Stream the stored layouts of the groups with ids in the given range, inclusive, each in a group with its
+   * id, name, layout, and the fingerprint stored with it.
+   */
+  void selectLayoutsByRange(@Param("minId") int minId, @Param("maxId") int maxId, ResultHandler<Group> handler);
+
   /**
    * Insert the generated group layout into database.
    * 
@@ -27,13 +56,27 @@ public interface GroupMapper {
    */
   int insertLayout(Group group);
 
-  int deleteLayout(Group group);
-  
   /**
-   * Delete all the group layouts
+   * Insert the group layout along with the fingerprint of the group.
+   */
+  int insertLayoutWithFingerprint(Group group);
+
+  /**
+   * Select the ids of the groups with layouts, with ids and numbers of members in the given ranges,
+   * inclusive, in ascending order.
    * 
-   * @param max
-   * @return
+   * @param names
+   *          the names of the groups, up to 1000 of them, as Oracle allows in an IN list; or null for all the
+   *          names.
+   */
+  List<Integer> selectLayoutGroupIdsInScope(@Param("minId") int minId, @Param("maxId") int maxId,
+      @Param("byGroup") boolean byGroup, @Param("minMembers") int minMembers, @Param("maxMembers") int maxMembers,
+      @Param("names") List<String> names);
+
+  int deleteLayout(Group group);
+
+  /**
+   * Delete the layouts of the groups of the given ids, up to 1000 of them.
    */
-  int deleteLayouts();
+  int deleteLayoutsByIds(List<Integer> ids);
 }
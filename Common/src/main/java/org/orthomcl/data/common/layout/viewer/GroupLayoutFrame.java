@@ -4,7 +4,7 @@ import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.Random;
+import java.io.File;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
@@ -20,7 +20,9 @@ import org.apache.ibatis.session.SqlSession;
 import org.apache.log4j.Logger;
 import org.orthomcl.data.common.layout.core.Group;
 import org.orthomcl.data.common.layout.load.GroupFactory;
+import org.orthomcl.data.common.layout.load.LayoutArchive;
 import org.orthomcl.data.common.layout.load.LayoutGenerator;
+import org.orthomcl.data.common.layout.load.LayoutSeed;
 import org.orthomcl.data.common.layout.load.OrthoMCLDataException;
 import org.orthomcl.data.common.layout.load.mapper.GroupMapper;
 import org.orthomcl.shared.model.layout.GraphicsException;
@@ -44,10 +46,13 @@ public class GroupLayoutFrame extends JFrame {
 
   /**
    * @param args
+   *          the file of a layout archive to show the stored layouts from, without the database; if none, the
+   *          groups are loaded from the database and laid out.
    * @throws OrthoMCLDataException
    */
   public static void main(String[] args) throws OrthoMCLDataException {
-    GroupLayoutFrame frame = new GroupLayoutFrame();
+    LayoutArchive archive = (args.length > 0) ? LayoutArchive.open(new File(args[0])) : null;
+    GroupLayoutFrame frame = new GroupLayoutFrame(archive);
     frame.setVisible(true);
     frame.drawGroup();
   }
@@ -58,17 +63,29 @@ public class GroupLayoutFrame extends JFrame {
   private final JCheckBox chkGeneLabel;
 
   private final GroupFactory groupFactory;
+  private final LayoutArchive archive;
   private Group group;
 
   private Layout layout;
 
   public GroupLayoutFrame() throws OrthoMCLDataException {
+    this(null);
+  }
+
+  /**
+   * @param archive
+   *          the archive to show the stored layouts from, or null to load and lay out the groups from the
+   *          database.
+   */
+  public GroupLayoutFrame(LayoutArchive archive) throws OrthoMCLDataException {
     this.layoutPanel = new GroupLayoutPanel();
     this.cmbGroups = new JComboBox<>(TEST_GROUPS);
     this.chkGeneLabel = new JCheckBox("Show Gene Info");
     this.chkScoreLabel = new JCheckBox("Show Blast Info");
 
-    this.groupFactory = new GroupFactory(Integer.valueOf(LayoutGenerator.DEFAULT_TASK_COUNT));
+    this.archive = archive;
+    this.groupFactory = (archive == null) ? new GroupFactory(Integer.valueOf(LayoutGenerator.DEFAULT_TASK_COUNT))
+        : null;
 
     JPanel contentPanel = new JPanel(new BorderLayout());
     contentPanel.add(createToolBar(), BorderLayout.NORTH);
@@ -121,6 +138,7 @@ public class GroupLayoutFrame extends JFrame {
         saveGroup();
       }
     });
+    btnSave.setEnabled(archive == null);
     toolBar.add(btnSave);
 
     return toolBar;
@@ -143,6 +161,10 @@ public class GroupLayoutFrame extends JFrame {
 
     try {
       String groupName = (String) cmbGroups.getSelectedItem();
+      if (archive != null) {
+        drawStoredGroup(groupName);
+        return;
+      }
       if (group == null || !group.getName().equals(groupName)) {
         LOG.debug("Loading group " + groupName);
         group = groupFactory.loadGroup(groupName);
@@ -157,7 +179,9 @@ public class GroupLayoutFrame extends JFrame {
           try {
             LOG.debug("Starting layout...");
             long start = System.currentTimeMillis();
-            layout = new SpringLayout(group, new Random(0));
+            // seeded as in the layout generator; the layout is the same as the generated one only if the group
+            // was laid out with the spring engine, the default seed and no convergence options
+            layout = new SpringLayout(group, LayoutSeed.createRandom(group, LayoutSeed.DEFAULT_RUN_SEED));
             layout.process(layoutPanel);
             LOG.debug("Layout finished in " + ((System.currentTimeMillis() - start) / 1000D) + " seconds.");
           }
@@ -173,6 +197,21 @@ public class GroupLayoutFrame extends JFrame {
     }
   }
 
+  /**
+   * Show the stored layout of the group from the archive.
+   */
+  private void drawStoredGroup(String groupName) throws OrthoMCLDataException {
+    long start = System.nanoTime();
+    group = archive.loadGroup(groupName);
+    if (group == null) {
+      JOptionPane.showMessageDialog(this, "The group " + groupName + " has no layout in " +
+          archive.getFile().getAbsolutePath(), "Error on Drawing", JOptionPane.ERROR_MESSAGE);
+      return;
+    }
+    LOG.debug("Layout of " + groupName + " read in " + ((System.nanoTime() - start) / 1000) + " microseconds.");
+    layoutPanel.drawGroup(group);
+  }
+
   private void saveGroup() {
     if (group != null) {
       SqlSession session = groupFactory.openSession(ExecutorType.SIMPLE);
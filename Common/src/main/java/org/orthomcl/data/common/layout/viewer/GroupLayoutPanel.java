@@ -13,11 +13,14 @@ import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.text.DecimalFormat;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 
 import javax.swing.JPanel;
 
+import org.orthomcl.data.common.layout.core.BlastScore;
 import org.orthomcl.data.common.layout.core.Gene;
+import org.orthomcl.data.common.layout.core.Group;
 import org.orthomcl.shared.model.layout.ForceEdge;
 import org.orthomcl.shared.model.layout.ForceGraph;
 import org.orthomcl.shared.model.layout.ForceNode;
@@ -148,6 +151,65 @@ public class GroupLayoutPanel extends JPanel implements LayoutObserver, Componen
     repaint();
   }
 
+  /**
+   * Draw a stored layout of the group, as it is, without running a layout.
+   */
+  public void drawGroup(Group group) {
+    int width = getWidth();
+    int height = getHeight();
+    Graphics2D g = (Graphics2D) back.getGraphics();
+    g.setColor(Color.WHITE);
+    g.fillRect(0, 0, width, height);
+
+    // scale the positions into the same area as the running layouts
+    double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+    double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+    for (Gene gene : group.getGenes().values()) {
+      minX = Math.min(minX, gene.getPoint().x);
+      minY = Math.min(minY, gene.getPoint().y);
+      maxX = Math.max(maxX, gene.getPoint().x);
+      maxY = Math.max(maxY, gene.getPoint().y);
+    }
+    double scaleX = (width - MARGIN - 10) / Math.max(maxX - minX, 1);
+    double scaleY = (height - 10 - 20) / Math.max(maxY - minY, 1);
+    Map<Gene, Point2D.Double> points = new HashMap<>();
+    for (Gene gene : group.getGenes().values()) {
+      points.put(gene, new Point2D.Double(10 + (gene.getPoint().x - minX) * scaleX, 20 +
+          (gene.getPoint().y - minY) * scaleY));
+    }
+
+    // draw edges
+    for (BlastScore score : group.getScores().values()) {
+      g.setColor(getEdgeColor(score.getPreferredLength()));
+      Point2D.Double pa = points.get(group.getGenes().get(score.getQueryId()));
+      Point2D.Double pb = points.get(group.getGenes().get(score.getSubjectId()));
+      g.draw(new Line2D.Double(pa, pb));
+      if (showScoreInfo)
+        g.drawString(score.toString(), (int) ((pa.x + pb.x) / 2), (int) ((pa.y + pb.y) / 2));
+    }
+
+    // draw nodes
+    for (Map.Entry<Gene, Point2D.Double> entry : points.entrySet()) {
+      Point2D.Double p = entry.getValue();
+      g.setColor(Color.GREEN);
+      g.fill(new Ellipse2D.Double(p.x - 4, p.y - 4, 7, 7));
+      if (showGeneInfo) {
+        g.setColor(Color.BLACK);
+        g.drawString(entry.getKey().getSourceId(), (int) p.x + 3, (int) p.y + 5);
+      }
+    }
+
+    g.setColor(Color.BLACK);
+    g.drawString("#Nodes: " + points.size() + "  Stored layout", 5, 10);
+
+    // flip front & back buffer
+    BufferedImage temp = front;
+    front = back;
+    back = temp;
+
+    repaint();
+  }
+
   private Color getEdgeColor(double preferredLength) {
     int scale = (int) Math.round(255 * (preferredLength - MIN_WEIGHT) / (MAX_WEIGHT - MIN_WEIGHT));
     if (scale < 0)
@@ -0,0 +1,106 @@
+package org.orthomcl.data.common.layout.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BinaryLayoutTest {
+
+  private static final EdgeType[] TYPES = { EdgeType.Ortholog, EdgeType.Coortholog, EdgeType.Inparalog,
+      EdgeType.PeripheralCore, EdgeType.PeripheralPeripheral, EdgeType.Normal };
+
+  /**
+   * @return a group with genes at negative and fractional positions, a non-ASCII source id, scores of every
+   *         type, and one score with a second evalue.
+   */
+  private static Group createGroup() {
+    Group group = new Group(7, "OG_7");
+    for (int i = 0; i < 8; i++) {
+      Gene gene = new Gene((i == 3) ? "g3_\u00e9" : "g" + i);
+      gene.getPoint().x = i * 12.345 - 40;
+      gene.getPoint().y = -i * 7.891;
+      group.addGene(gene);
+    }
+    List<Gene> genes = new ArrayList<>(group.getGenes().values());
+    for (int i = 0; i < 7; i++) {
+      BlastScore score = new BlastScore(genes.get(i).getSourceId(), genes.get(i + 1).getSourceId(), 1.5f + i,
+          -10 * (i + 1));
+      score.setType(TYPES[i % TYPES.length]);
+      score.setGroup(group);
+      group.addBlastScore(score);
+    }
+    BlastScore score = new BlastScore(genes.get(0).getSourceId(), genes.get(7).getSourceId(), 2.5f, -120, 3.5f,
+        -80);
+    score.setGroup(group);
+    group.addBlastScore(score);
+    return group;
+  }
+
+  private static void assertRoundTrip(boolean deflate) {
+    Group group = createGroup();
+    String layout = BinaryLayout.encode(group, deflate);
+    assertTrue(BinaryLayout.isBinary(layout));
+    assertEquals(deflate, BinaryLayout.isDeflated(layout));
+
+    Group decoded = new Group(group.getId(), group.getName());
+    BinaryLayout.decode(layout, decoded);
+    assertEquals(new ArrayList<>(group.getGenes().keySet()), new ArrayList<>(decoded.getGenes().keySet()));
+    for (Gene gene : group.getGenes().values()) {
+      Gene copy = decoded.getGenes().get(gene.getSourceId());
+      // the coordinates keep 2 decimals, rounded half up
+      assertEquals(gene.getPoint().x, copy.getPoint().x, 0.0051);
+      assertEquals(gene.getPoint().y, copy.getPoint().y, 0.0051);
+    }
+
+    assertEquals(group.getScores().size(), decoded.getScores().size());
+    List<BlastScore> scores = new ArrayList<>(group.getScores().values());
+    List<BlastScore> copies = new ArrayList<>(decoded.getScores().values());
+    for (int i = 0; i < scores.size(); i++) {
+      BlastScore score = scores.get(i);
+      BlastScore copy = copies.get(i);
+      assertEquals(score.getQueryIndex(), copy.getQueryIndex());
+      assertEquals(score.getSubjectIndex(), copy.getSubjectIndex());
+      assertEquals(score.getType(), copy.getType());
+      // the log evalues keep 3 decimals
+      assertEquals(score.getLogEvalue(), copy.getLogEvalue(), 0.0005);
+      assertEquals(score.getLogEvalue2(), copy.getLogEvalue2(), 0.0005);
+      assertEquals(score.hasEvalue2(), copy.hasEvalue2());
+    }
+  }
+
+  @Test
+  public void testRoundTrip() {
+    assertRoundTrip(false);
+  }
+
+  @Test
+  public void testDeflatedRoundTrip() {
+    assertRoundTrip(true);
+  }
+
+  @Test
+  public void testEmptyGroup() {
+    Group decoded = new Group(1, "OG_1");
+    BinaryLayout.decode(BinaryLayout.encode(new Group(1, "OG_1"), true), decoded);
+    assertTrue(decoded.getGenes().isEmpty());
+    assertTrue(decoded.getScores().isEmpty());
+  }
+
+  @Test
+  public void testNotBinary() {
+    assertFalse(BinaryLayout.isBinary("{\"N\":[],\"E\":[]}"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedVersion() {
+    String layout = BinaryLayout.encode(createGroup(), false);
+    // a version byte of 2 changes the first Base64 character from A to C
+    BinaryLayout.decode(BinaryLayout.PREFIX + "C" + layout.substring(BinaryLayout.PREFIX.length() + 1),
+        new Group(7, "OG_7"));
+  }
+}
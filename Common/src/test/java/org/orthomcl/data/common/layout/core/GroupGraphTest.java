@@ -0,0 +1,95 @@
+package org.orthomcl.data.common.layout.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.orthomcl.data.common.layout.core.GroupGraph.IndexEdge;
+
+public class GroupGraphTest {
+
+  /**
+   * @return a group of 4 genes, with a score of g2 with itself, which the view leaves out.
+   */
+  private static Group createGroup() {
+    Group group = new Group(1, "OG_TEST");
+    for (int i = 0; i < 4; i++) {
+      Gene gene = new Gene("g" + i);
+      gene.getPoint().x = i;
+      gene.getPoint().y = -i;
+      group.addGene(gene);
+    }
+    BlastScore[] scores = { new BlastScore("g0", "g1", 1, -10), new BlastScore("g2", "g2", 1, -100),
+        new BlastScore("g2", "g0", 2.5f, -50), new BlastScore("g1", "g3", 3, -3) };
+    for (BlastScore score : scores) {
+      score.setGroup(group);
+      group.addBlastScore(score);
+    }
+    return group;
+  }
+
+  @Test
+  public void testArrays() {
+    Group group = createGroup();
+    GroupGraph graph = new GroupGraph(group);
+    assertEquals(4, graph.getNodeCount());
+    assertEquals(3, graph.getEdgeCount());
+    assertArrayEquals(new int[] { 0, 2, 1 }, graph.getEdgeA());
+    assertArrayEquals(new int[] { 1, 0, 3 }, graph.getEdgeB());
+    assertArrayEquals(new double[] { 0, 1, 2, 3 }, graph.getX(), 0);
+    assertArrayEquals(new double[] { 0, -1, -2, -3 }, graph.getY(), 0);
+    assertEquals((float) group.getScore("g0", "g2").getPreferredLength(), graph.getLengths()[1], 0);
+    assertSame(group.getScore("g1", "g3"), graph.getScore(2));
+    assertSame(group.getGenes().get("g3"), graph.getGene(3));
+  }
+
+  @Test
+  public void testAdjacency() {
+    GroupGraph graph = new GroupGraph(createGroup());
+    assertArrayEquals(new int[] { 0, 2, 4, 5, 6 }, graph.getOffsets());
+    assertArrayEquals(new int[] { 1, 2, 0, 3, 0, 1 }, graph.getNeighbours());
+    assertArrayEquals(new int[] { 0, 1, 0, 2, 1, 2 }, graph.getNeighbourEdges());
+    assertEquals(2, graph.getDegree(0));
+    assertEquals(1, graph.getDegree(3));
+  }
+
+  @Test
+  public void testStore() {
+    Group group = createGroup();
+    GroupGraph graph = new GroupGraph(group);
+    graph.getX()[2] = 42;
+    graph.getY()[2] = 24;
+    assertEquals(2, group.getGenes().get("g2").getPoint().x, 0);
+    graph.store();
+    assertEquals(42, group.getGenes().get("g2").getPoint().x, 0);
+    assertEquals(24, group.getGenes().get("g2").getPoint().y, 0);
+  }
+
+  /**
+   * The view as a graph: the nodes are the genes, and the edges connect the genes of their scores.
+   */
+  @Test
+  public void testGraph() {
+    Group group = createGroup();
+    GroupGraph graph = new GroupGraph(group);
+    List<Gene> nodes = graph.getNodes();
+    assertEquals(4, nodes.size());
+    for (int i = 0; i < 4; i++) {
+      assertSame(group.getGenes().get("g" + i), nodes.get(i));
+    }
+
+    List<IndexEdge> edges = graph.getEdges();
+    assertEquals(3, edges.size());
+    for (IndexEdge edge : edges) {
+      BlastScore score = edge.getScore();
+      assertSame(score.getNodeA(), edge.getNodeA());
+      assertSame(score.getNodeB(), edge.getNodeB());
+      assertEquals(score.getPreferredLength(), edge.getPreferredLength(), 0);
+    }
+    assertSame(edges.get(1), graph.getEdges().get(1));
+    assertEquals(group.getMaxPreferredLength(), graph.getMaxPreferredLength(), 0);
+  }
+}
@@ -0,0 +1,89 @@
+package org.orthomcl.data.common.layout.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LogEvalueTest {
+
+  private static final double DELTA = 1e-9;
+
+  @Test
+  public void testValueOf() {
+    assertEquals(Math.log10(2.5) - 30, LogEvalue.valueOf(2.5f, -30), DELTA);
+    // the evalue 0 is stored as 0E0, and taken as 1E0
+    assertEquals(0, LogEvalue.valueOf(0, 0), DELTA);
+  }
+
+  @Test
+  public void testParse() {
+    assertEquals(Math.log10(2.5) - 30, LogEvalue.parse("2.5E-30"), DELTA);
+    assertEquals(Math.log10(2.5) - 30, LogEvalue.parse("2.5e-30"), DELTA);
+    assertEquals(Math.log10(7) + 12, LogEvalue.parse("7E+12"), DELTA);
+    assertEquals(Math.log10(5), LogEvalue.parse("5"), DELTA);
+    // the mantissa is kept as a float once normalized
+    assertEquals(Math.log10(0.003), LogEvalue.parse("0.003"), 1e-7);
+    assertEquals(-180, LogEvalue.parse("1.0E-180"), DELTA);
+  }
+
+  @Test
+  public void testParseRange() {
+    String text = "E=3.0E-5;";
+    assertEquals(Math.log10(3) - 5, LogEvalue.parse(text, 2, text.length() - 1), DELTA);
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testParseEmpty() {
+    LogEvalue.parse("");
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testParseMissingExponent() {
+    LogEvalue.parse("2.5E");
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testParseInvalid() {
+    LogEvalue.parse("2.5X-3");
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testParseTooManyDigits() {
+    LogEvalue.parse("1234567890123456789012");
+  }
+
+  @Test
+  public void testToString() {
+    assertEquals("2.5E-30", LogEvalue.toString(LogEvalue.valueOf(2.5f, -30)));
+    assertEquals("1.0E0", LogEvalue.toString(LogEvalue.valueOf(0, 0)));
+    assertEquals("1.0E-180", LogEvalue.toString(LogEvalue.valueOf(1, -180)));
+    // the mantissa is normalized into [1, 10)
+    assertEquals("3.0E-3", LogEvalue.toString(LogEvalue.valueOf(0.003f, 0)));
+    assertEquals("1.2E3", LogEvalue.toString(LogEvalue.valueOf(12f, 2)));
+  }
+
+  @Test
+  public void testExpAndMant() {
+    double log = LogEvalue.valueOf(9.99f, -7);
+    assertEquals(-7, LogEvalue.getExp(log));
+    assertEquals(9.99f, LogEvalue.getMant(log), 1e-5f);
+  }
+
+  /**
+   * The text of an evalue parses back to the same mantissa and exponent.
+   */
+  @Test
+  public void testRoundTrip() {
+    float[] mants = { 1f, 1.1f, 2.5f, 3.14159f, 4.2e-1f, 9.999f, 7.77f, 1.0000001f };
+    for (float mant : mants) {
+      for (int exp = -200; exp <= 10; exp += 13) {
+        double log = LogEvalue.valueOf(mant, exp);
+        String text = LogEvalue.toString(log);
+        double parsed = LogEvalue.parse(text);
+        assertEquals(text, LogEvalue.getExp(log), LogEvalue.getExp(parsed));
+        assertEquals(text, LogEvalue.getMant(log), LogEvalue.getMant(parsed), 0);
+        assertEquals(text, text, LogEvalue.toString(parsed));
+      }
+    }
+  }
+}
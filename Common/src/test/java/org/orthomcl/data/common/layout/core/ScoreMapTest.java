@@ -0,0 +1,113 @@
+package org.orthomcl.data.common.layout.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class ScoreMapTest {
+
+  private static BlastScore createScore(int a, int b) {
+    BlastScore score = new BlastScore("g" + a, "g" + b);
+    score.setIndices(a, b);
+    return score;
+  }
+
+  @Test
+  public void testKeyIsUnordered() {
+    assertEquals(ScoreMap.toKey(3, 7), ScoreMap.toKey(7, 3));
+    assertEquals(3L << 32 | 7, ScoreMap.toKey(7, 3));
+    assertFalse(ScoreMap.toKey(0, 1) == ScoreMap.toKey(1, 2));
+  }
+
+  @Test
+  public void testGetInEitherDirection() {
+    ScoreMap map = new ScoreMap();
+    BlastScore score = createScore(2, 5);
+    assertNull(map.put(score));
+    assertSame(score, map.get(2, 5));
+    assertSame(score, map.get(5, 2));
+    assertNull(map.get(2, 6));
+    assertEquals(1, map.size());
+  }
+
+  @Test
+  public void testPutReplaces() {
+    ScoreMap map = new ScoreMap();
+    BlastScore first = createScore(1, 4);
+    BlastScore second = createScore(4, 1);
+    map.put(first);
+    assertSame(first, map.put(second));
+    assertSame(second, map.get(1, 4));
+    assertEquals(1, map.size());
+  }
+
+  @Test
+  public void testPutIfAbsentKeeps() {
+    ScoreMap map = new ScoreMap();
+    BlastScore first = createScore(1, 4);
+    assertNull(map.putIfAbsent(first));
+    assertSame(first, map.putIfAbsent(createScore(4, 1)));
+    assertSame(first, map.get(1, 4));
+    assertEquals(1, map.size());
+  }
+
+  @Test
+  public void testInsertionOrderAcrossRehash() {
+    ScoreMap map = new ScoreMap();
+    int n = 100;
+    for (int a = 0; a < n; a++) {
+      for (int b = a + 1; b < n; b += 7) {
+        map.put(createScore(a, b));
+      }
+    }
+    List<BlastScore> values = map.values();
+    assertEquals(map.size(), values.size());
+    int i = 0;
+    for (int a = 0; a < n; a++) {
+      for (int b = a + 1; b < n; b += 7) {
+        BlastScore score = values.get(i++);
+        assertEquals(a, score.getQueryIndex());
+        assertEquals(b, score.getSubjectIndex());
+        assertSame(score, map.get(b, a));
+      }
+    }
+  }
+
+  @Test
+  public void testClear() {
+    ScoreMap map = new ScoreMap();
+    for (int i = 0; i < 50; i++) {
+      map.put(createScore(i, i + 1));
+    }
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertEquals(0, map.values().size());
+    assertNull(map.get(0, 1));
+    map.put(createScore(0, 1));
+    assertEquals(1, map.size());
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testValuesAreBounded() {
+    ScoreMap map = new ScoreMap();
+    map.put(createScore(0, 1));
+    map.values().get(1);
+  }
+
+  @Test
+  public void testGroupSkipsScoreOfUnknownGene() {
+    Group group = new Group(1, "OG_TEST");
+    group.addGene(new Gene("a"));
+    group.addGene(new Gene("b"));
+    assertTrue(group.addBlastScore(new BlastScore("a", "b", 1, -10)));
+    assertFalse(group.addBlastScore(new BlastScore("a", "c", 1, -10)));
+    assertFalse(group.addMergedBlastScore(new BlastScore("c", "b", 1, -10)));
+    assertEquals(1, group.getScores().size());
+  }
+}
@@ -0,0 +1,117 @@
+package org.orthomcl.data.common.layout.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.orthomcl.data.common.layout.core.BlastScore;
+import org.orthomcl.data.common.layout.core.Gene;
+import org.orthomcl.data.common.layout.core.Group;
+import org.orthomcl.data.common.layout.core.GroupGraph;
+
+/**
+ * The Barnes-Hut repulsions against the exact ones of the {@link ForceLayout}, on the same positions.
+ */
+public class BarnesHutLayoutTest {
+
+  private static final double MAX_LENGTH = Group.MAX_PREFERRED_LENGTH;
+
+  /**
+   * @return a group of genes at random positions, connected by a chain of scores and a random score per gene.
+   */
+  private static Group createGroup(int geneCount, long seed) {
+    Random random = new Random(seed);
+    Group group = new Group(1, "OG_TEST");
+    for (int i = 0; i < geneCount; i++) {
+      Gene gene = new Gene("g" + i);
+      gene.getPoint().x = random.nextDouble() * 1000;
+      gene.getPoint().y = random.nextDouble() * 1000;
+      group.addGene(gene);
+    }
+    for (int i = 1; i < geneCount; i++) {
+      group.addBlastScore(new BlastScore("g" + (i - 1), "g" + i, 1 + random.nextInt(9), -random.nextInt(180)));
+      int other = random.nextInt(geneCount);
+      if (other != i)
+        group.addBlastScore(new BlastScore("g" + other, "g" + i, 1 + random.nextInt(9), -random.nextInt(180)));
+    }
+    return group;
+  }
+
+  /**
+   * @return the x and y components of the repulsions of the layout, from the current positions.
+   */
+  private static double[][] computeRepulsion(ForceLayout layout, int nodeCount) {
+    double[][] repulsion = new double[2][nodeCount];
+    layout.computeRepulsion(repulsion[0], repulsion[1], MAX_LENGTH);
+    return repulsion;
+  }
+
+  @Test
+  public void testExactWithoutApproximation() {
+    Group group = createGroup(300, 1);
+    int n = group.getGenes().size();
+    double[][] exact = computeRepulsion(new ForceLayout(new GroupGraph(group), new Random(0), true), n);
+    double[][] tree = computeRepulsion(new BarnesHutLayout(new GroupGraph(group), new Random(0), true, 0), n);
+    for (int i = 0; i < n; i++) {
+      assertEquals(exact[0][i], tree[0][i], 1e-9 * Math.max(1, Math.abs(exact[0][i])));
+      assertEquals(exact[1][i], tree[1][i], 1e-9 * Math.max(1, Math.abs(exact[1][i])));
+    }
+  }
+
+  /**
+   * The error of the net repulsions, relative to their sizes, shrinks with theta.
+   */
+  @Test
+  public void testApproximationError() {
+    Group group = createGroup(1000, 2);
+    int n = group.getGenes().size();
+    double[][] exact = computeRepulsion(new ForceLayout(new GroupGraph(group), new Random(0), true), n);
+    double lastError = 0;
+    for (double theta : new double[] { 0.25, 0.5, BarnesHutLayout.DEFAULT_THETA }) {
+      double[][] tree = computeRepulsion(new BarnesHutLayout(new GroupGraph(group), new Random(0), true, theta),
+          n);
+      double error = 0, total = 0;
+      for (int i = 0; i < n; i++) {
+        error += Math.hypot(tree[0][i] - exact[0][i], tree[1][i] - exact[1][i]);
+        total += Math.hypot(exact[0][i], exact[1][i]);
+      }
+      error /= total;
+      assertTrue("relative error " + error + " at theta " + theta, error > lastError);
+      lastError = error;
+      if (theta == 0.25)
+        assertTrue("relative error " + error + " at theta " + theta, error < 0.01);
+    }
+  }
+
+  @Test
+  public void testOverlappingNodes() {
+    Group group = createGroup(50, 3);
+    // put all the nodes on top of each other, below the min distance of the layouts
+    for (Gene gene : group.getGenes().values()) {
+      gene.getPoint().x = 100;
+      gene.getPoint().y = 100;
+    }
+    int n = group.getGenes().size();
+    double[][] exact = computeRepulsion(new ForceLayout(new GroupGraph(group), new Random(0), true), n);
+    double[][] tree = computeRepulsion(new BarnesHutLayout(new GroupGraph(group), new Random(0), true, 0), n);
+    for (int i = 0; i < n; i++) {
+      assertTrue(!Double.isNaN(tree[0][i]) && !Double.isNaN(tree[1][i]));
+      assertEquals(exact[0][i], tree[0][i], 1e-6 * Math.max(1, Math.abs(exact[0][i])));
+      assertEquals(exact[1][i], tree[1][i], 1e-6 * Math.max(1, Math.abs(exact[1][i])));
+    }
+  }
+
+  @Test
+  public void testLayoutConverges() throws Exception {
+    Group group = createGroup(200, 4);
+    ForceLayout exact = new ForceLayout(new GroupGraph(group), new Random(5), false);
+    exact.process(null);
+    BarnesHutLayout tree = new BarnesHutLayout(new GroupGraph(group), new Random(5), false);
+    tree.process(null);
+    // both layouts settle, with stresses of the same order
+    assertTrue("exact stress " + exact.getStress(), exact.getStress() < 1);
+    assertTrue("tree stress " + tree.getStress(), tree.getStress() < 1);
+  }
+}
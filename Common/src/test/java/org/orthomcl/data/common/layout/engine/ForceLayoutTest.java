@@ -0,0 +1,118 @@
+package org.orthomcl.data.common.layout.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.orthomcl.data.common.layout.core.BlastScore;
+import org.orthomcl.data.common.layout.core.Gene;
+import org.orthomcl.data.common.layout.core.Group;
+import org.orthomcl.data.common.layout.core.GroupGraph;
+
+/**
+ * The layouts computed in a pool against the ones computed in the calling thread.
+ */
+public class ForceLayoutTest {
+
+  private static final int ITERATIONS = 40;
+
+  /**
+   * @return a group of genes at the origin, connected by a chain of scores and a random score per gene.
+   */
+  private static Group createGroup(int geneCount, long seed) {
+    Random random = new Random(seed);
+    Group group = new Group(1, "OG_TEST");
+    for (int i = 0; i < geneCount; i++) {
+      group.addGene(new Gene("g" + i));
+    }
+    for (int i = 1; i < geneCount; i++) {
+      group.addBlastScore(new BlastScore("g" + (i - 1), "g" + i, 1 + random.nextInt(9), -random.nextInt(180)));
+      int other = random.nextInt(geneCount);
+      if (other != i)
+        group.addBlastScore(new BlastScore("g" + other, "g" + i, 1 + random.nextInt(9), -random.nextInt(180)));
+    }
+    return group;
+  }
+
+  private static ForceLayout createLayout(Group group, boolean barnesHut, ForkJoinPool pool) {
+    GroupGraph graph = new GroupGraph(group);
+    ForceLayout layout = barnesHut ? new BarnesHutLayout(graph, new Random(11), false) : new ForceLayout(graph,
+        new Random(11), false);
+    layout.setMaxIterations(ITERATIONS);
+    layout.setStopStress(0);
+    layout.setPool(pool);
+    return layout;
+  }
+
+  private static void assertSameLayout(Group expected, Group actual) {
+    for (Gene gene : expected.getGenes().values()) {
+      Gene other = actual.getGenes().get(gene.getSourceId());
+      assertEquals(gene.getSourceId(), gene.getPoint().x, other.getPoint().x, 0);
+      assertEquals(gene.getSourceId(), gene.getPoint().y, other.getPoint().y, 0);
+    }
+  }
+
+  private static void testParallel(boolean barnesHut) throws Exception {
+    Group serial = createGroup(700, 3);
+    ForceLayout layout = createLayout(serial, barnesHut, null);
+    assertTrue("chunks " + layout.getChunkCount(), layout.getChunkCount() > 1);
+    layout.process(null);
+    assertEquals(ITERATIONS, layout.getIteration());
+
+    for (int threads : new int[] { 1, 3, 8 }) {
+      ForkJoinPool pool = new ForkJoinPool(threads);
+      try {
+        Group parallel = createGroup(700, 3);
+        createLayout(parallel, barnesHut, pool).process(null);
+        assertSameLayout(serial, parallel);
+      }
+      finally {
+        pool.shutdown();
+      }
+    }
+  }
+
+  @Test
+  public void testParallelSameAsSerial() throws Exception {
+    testParallel(false);
+  }
+
+  @Test
+  public void testBarnesHutParallelSameAsSerial() throws Exception {
+    testParallel(true);
+  }
+
+  @Test
+  public void testChunkCount() {
+    assertEquals(1, ForceLayout.getChunkCount(0, 0));
+    assertEquals(1, ForceLayout.getChunkCount(100, 300));
+    assertTrue(ForceLayout.getChunkCount(1000, 3000) > 1);
+    // the partial sums of the largest graphs are bounded
+    int nodeCount = 500000;
+    assertTrue(ForceLayout.getChunkCount(nodeCount, 0) * 4L * nodeCount <= 1 << 22);
+  }
+
+  /**
+   * The rows of node pairs are split into chunks of about the same number of pairs, covering all the rows.
+   */
+  @Test
+  public void testSplitRows() {
+    ForceLayout layout = createLayout(createGroup(10, 1), false, null);
+    int n = 1000;
+    int[] starts = layout.splitRows(n, 4);
+    assertEquals(0, starts[0]);
+    assertEquals(n, starts[4]);
+    long total = (long) n * (n - 1) / 2;
+    for (int c = 0; c < 4; c++) {
+      assertTrue(starts[c] <= starts[c + 1]);
+      long pairs = 0;
+      for (int row = starts[c]; row < starts[c + 1]; row++) {
+        pairs += n - 1 - row;
+      }
+      assertEquals(total / 4.0, pairs, n);
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package org.orthomcl.data.common.layout.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.orthomcl.data.common.layout.core.BlastScore;
+import org.orthomcl.data.common.layout.core.Gene;
+import org.orthomcl.data.common.layout.core.Group;
+import org.orthomcl.data.common.layout.core.GroupGraph;
+import org.orthomcl.shared.model.layout.Vector;
+
+public class MultilevelLayoutTest {
+
+  /**
+   * @return a group of genes at the origin, connected by a chain of scores and a random score per gene.
+   */
+  private static Group createGroup(int geneCount, long seed) {
+    Random random = new Random(seed);
+    Group group = new Group(1, "OG_TEST");
+    for (int i = 0; i < geneCount; i++) {
+      group.addGene(new Gene("g" + i));
+    }
+    for (int i = 1; i < geneCount; i++) {
+      group.addBlastScore(new BlastScore("g" + (i - 1), "g" + i, 1 + random.nextInt(9), -random.nextInt(180)));
+      int other = random.nextInt(geneCount);
+      if (other != i)
+        group.addBlastScore(new BlastScore("g" + other, "g" + i, 1 + random.nextInt(9), -random.nextInt(180)));
+    }
+    return group;
+  }
+
+  @Test
+  public void testCoarsensAndStores() throws Exception {
+    Group group = createGroup(1000, 1);
+    MultilevelLayout layout = new MultilevelLayout(new GroupGraph(group), new Random(1));
+    layout.process(null);
+    assertTrue(layout.isStopped());
+    assertTrue("levels " + layout.getLevelCount(), layout.getLevelCount() > 2);
+    assertTrue(layout.getIteration() > 0);
+
+    // the positions are stored in the genes, and the genes are spread apart
+    double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
+    for (Gene gene : group.getGenes().values()) {
+      Vector point = gene.getPoint();
+      assertTrue(!Double.isNaN(point.x) && !Double.isNaN(point.y));
+      minX = Math.min(minX, point.x);
+      maxX = Math.max(maxX, point.x);
+    }
+    assertTrue(maxX - minX > Group.MAX_PREFERRED_LENGTH);
+  }
+
+  @Test
+  public void testSmallGroupIsOneLevel() throws Exception {
+    Group group = createGroup(MultilevelLayout.COARSEST_SIZE, 2);
+    MultilevelLayout layout = new MultilevelLayout(new GroupGraph(group), new Random(2));
+    layout.process(null);
+    assertEquals(1, layout.getLevelCount());
+  }
+
+  @Test
+  public void testReproducible() throws Exception {
+    Group first = createGroup(500, 3);
+    new MultilevelLayout(new GroupGraph(first), new Random(7)).process(null);
+    Group second = createGroup(500, 3);
+    new MultilevelLayout(new GroupGraph(second), new Random(7)).process(null);
+    for (Gene gene : first.getGenes().values()) {
+      Vector other = second.getGenes().get(gene.getSourceId()).getPoint();
+      assertEquals(gene.getPoint().x, other.x, 0);
+      assertEquals(gene.getPoint().y, other.y, 0);
+    }
+  }
+
+  @Test
+  public void testTimeBudget() throws Exception {
+    Group group = createGroup(3000, 4);
+    MultilevelLayout layout = new MultilevelLayout(new GroupGraph(group), new Random(4));
+    layout.setTimeBudget(1);
+    long start = System.nanoTime();
+    layout.process(null);
+    // past the budget, the remaining levels are only split
+    assertTrue((System.nanoTime() - start) / 1000000 < 5000);
+    for (Gene gene : group.getGenes().values()) {
+      assertTrue(!Double.isNaN(gene.getPoint().x) && !Double.isNaN(gene.getPoint().y));
+    }
+  }
+}
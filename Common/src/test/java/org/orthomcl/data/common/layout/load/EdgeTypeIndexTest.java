@@ -0,0 +1,88 @@
+package org.orthomcl.data.common.layout.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.orthomcl.data.common.layout.core.EdgeType;
+import org.orthomcl.data.common.layout.core.GenePair;
+import org.orthomcl.data.common.layout.load.EdgeTypeIndex.PairSetBuilder;
+
+public class EdgeTypeIndexTest {
+
+  /**
+   * @return an index of the pairs, given as query and subject ids, loaded in the order given, so that the
+   *         positions the ids are loaded in differ from their sorted positions.
+   */
+  private static EdgeTypeIndex createIndex(String[][] orthologs, String[][] coorthologs, String[][] inparalogs) {
+    Map<String, Integer> sequenceIds = new HashMap<>();
+    PairSetBuilder[] builders = { new PairSetBuilder(sequenceIds), new PairSetBuilder(sequenceIds),
+        new PairSetBuilder(sequenceIds) };
+    String[][][] pairs = { orthologs, coorthologs, inparalogs };
+    for (int i = 0; i < builders.length; i++) {
+      for (String[] pair : pairs[i]) {
+        builders[i].add(new GenePair(pair[0], pair[1]));
+      }
+    }
+    return EdgeTypeIndex.build(sequenceIds, builders[0], builders[1], builders[2]);
+  }
+
+  @Test
+  public void testToKey() {
+    assertEquals(EdgeTypeIndex.toKey(3, 9), EdgeTypeIndex.toKey(9, 3));
+    assertEquals((3L << 32) | 9, EdgeTypeIndex.toKey(9, 3));
+    assertEquals(EdgeTypeIndex.toKey(0, Integer.MAX_VALUE), EdgeTypeIndex.toKey(Integer.MAX_VALUE, 0));
+  }
+
+  @Test
+  public void testLookup() throws OrthoMCLDataException {
+    EdgeTypeIndex index = createIndex(new String[][] { { "z1", "a1" }, { "m1", "b1" }, { "z1", "a1" } },
+        new String[][] { { "a1", "m1" } }, new String[][] { { "b1", "b2" }, { "z1", "b2" } });
+
+    assertEquals(EdgeType.Ortholog, index.getType("z1", "a1"));
+    assertEquals(EdgeType.Ortholog, index.getType("a1", "z1"));
+    assertEquals(EdgeType.Ortholog, index.getType("b1", "m1"));
+    assertEquals(EdgeType.Coortholog, index.getType("m1", "a1"));
+    assertEquals(EdgeType.Inparalog, index.getType("b2", "b1"));
+    assertEquals(EdgeType.Inparalog, index.getType("z1", "b2"));
+  }
+
+  @Test
+  public void testMissingPair() throws OrthoMCLDataException {
+    EdgeTypeIndex index = createIndex(new String[][] { { "a", "b" }, { "c", "d" } }, new String[0][],
+        new String[0][]);
+
+    // both ids are known, but not as a pair with each other
+    assertNull(index.getType("a", "c"));
+    assertNull(index.getType("b", "d"));
+    assertNull(index.getType("a", "a"));
+    // unknown ids
+    assertNull(index.getType("a", "x"));
+    assertNull(index.getType("x", "y"));
+  }
+
+  @Test
+  public void testManyPairs() throws OrthoMCLDataException {
+    // more pairs than the initial capacity of a builder, with ids loaded out of their sorted order
+    int count = 100000;
+    String[][] orthologs = new String[count][];
+    for (int i = 0; i < count; i++) {
+      orthologs[i] = new String[] { "s" + (count - i), "s" + (count + i) };
+    }
+    EdgeTypeIndex index = createIndex(orthologs, new String[0][], new String[0][]);
+    for (int i = 0; i < count; i += 997) {
+      assertEquals(EdgeType.Ortholog, index.getType("s" + (count + i), "s" + (count - i)));
+      assertNull(index.getType("s" + (count - i), "s" + (count + i + 1)));
+    }
+  }
+
+  @Test(expected = OrthoMCLDataException.class)
+  public void testConflictingTypes() throws OrthoMCLDataException {
+    EdgeTypeIndex index = createIndex(new String[][] { { "a", "b" } }, new String[][] { { "b", "a" } },
+        new String[0][]);
+    index.getType("a", "b");
+  }
+}
@@ -0,0 +1,182 @@
+package org.orthomcl.data.common.layout.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.orthomcl.data.common.layout.core.EdgeType;
+import org.orthomcl.data.common.layout.core.Gene;
+import org.orthomcl.data.common.layout.core.Group;
+
+public class FileGroupSourceTest {
+
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("file-source").toFile();
+    write(FileGroupSource.GROUP_FILE, "1\tOG_1\t3\t3\n", "2\tOG_2\t2\t1\n", "3\tOG_3\t1\t0\n",
+        "4\tOG_4\t9\t0\n", "5\tOG_5\t4\t0\n");
+    // Windows line breaks and blank lines are accepted
+    write(FileGroupSource.GENE_FILE, "1\ta1\t10\r\n", "1\ta2\t11\r\n", "1\ta3\t10\r\n", "\n", "2\tb1\t12\n",
+        "2\tb2\t13\n", "3\tc1\t10\n");
+    write(FileGroupSource.SCORE_FILE, "1\ta1\ta2\t1.5\t-20\n", "1\ta2\ta3\t2\t-30\n", "1\ta3\ta1\t3\t-5\n",
+        "2\tb1\tb2\t4.5\t-100\n");
+    write(FileGroupSource.EDGE_FILE, "1\ta2\ta1\tO\n", "1\ta3\ta2\tP\n");
+  }
+
+  @After
+  public void tearDown() {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  private void write(String name, String... lines) throws IOException {
+    Files.write(new File(directory, name).toPath(), String.join("", lines).getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static List<Integer> getIds(List<Group> groups) {
+    List<Integer> ids = new ArrayList<>();
+    for (Group group : groups) {
+      ids.add(group.getId());
+    }
+    return ids;
+  }
+
+  /**
+   * Load the group with its details, lay it out at fixed positions, and insert its layout.
+   */
+  private static void insertLayout(FileGroupSource source, GroupSession session, int id, double x)
+      throws OrthoMCLDataException {
+    Group group = new Group(id, "OG_" + id);
+    session.loadGroupDetail(group);
+    for (Gene gene : group.getGenes().values()) {
+      gene.getPoint().x = x;
+    }
+    source.createLayout(group);
+    session.insertLayout(group, false);
+  }
+
+  @Test
+  public void testLoadGroups() throws OrthoMCLDataException {
+    FileGroupSource source = new FileGroupSource(directory);
+    // the groups of one member, and above the max, are left out; the largest groups come first
+    assertEquals(Arrays.asList(5, 1, 2), getIds(source.loadGroups(5)));
+    assertEquals(Arrays.asList(4, 5, 1, 2), getIds(source.loadGroups(100)));
+
+    Group group = source.loadGroup("OG_2");
+    assertEquals(2, group.getId());
+    assertEquals(2, group.getMemberCount());
+    assertEquals(1, group.getEdgeCount());
+    assertNull(source.loadGroup("OG_9"));
+  }
+
+  @Test
+  public void testLoadGroupDetail() throws OrthoMCLDataException {
+    FileGroupSource source = new FileGroupSource(directory);
+    try (GroupSession session = source.openSession(false)) {
+      List<Group> groups = Arrays.asList(new Group(2, "OG_2"), new Group(1, "OG_1"), new Group(5, "OG_5"));
+      session.loadGroupDetails(groups);
+
+      Group group = groups.get(1);
+      assertEquals(Arrays.asList("a1", "a2", "a3"), new ArrayList<>(group.getGenes().keySet()));
+      assertEquals(11, group.getGenes().get("a2").getTaxonId());
+      assertEquals(3, group.getScores().size());
+      assertEquals(EdgeType.Ortholog, group.getScore("a1", "a2").getType());
+      assertEquals(EdgeType.Inparalog, group.getScore("a2", "a3").getType());
+      assertEquals(EdgeType.Normal, group.getScore("a1", "a3").getType());
+
+      assertEquals(Arrays.asList("b1", "b2"), new ArrayList<>(groups.get(0).getGenes().keySet()));
+      assertEquals(1, groups.get(0).getScores().size());
+      // a group without any lines
+      assertTrue(groups.get(2).getGenes().isEmpty());
+    }
+  }
+
+  @Test(expected = OrthoMCLDataException.class)
+  public void testSplitGroupLines() throws OrthoMCLDataException, IOException {
+    write(FileGroupSource.GENE_FILE, "1\ta1\t10\n", "2\tb1\t12\n", "1\ta2\t11\n");
+    new FileGroupSource(directory);
+  }
+
+  @Test(expected = OrthoMCLDataException.class)
+  public void testMissingScoreFile() throws OrthoMCLDataException {
+    new File(directory, FileGroupSource.SCORE_FILE).delete();
+    new FileGroupSource(directory);
+  }
+
+  @Test
+  public void testLayouts() throws OrthoMCLDataException {
+    FileGroupSource source = new FileGroupSource(directory);
+    try (GroupSession session = source.openSession(true)) {
+      insertLayout(source, session, 2, 1);
+      insertLayout(source, session, 1, 1);
+      session.commit();
+      // a rolled back layout is not written
+      insertLayout(source, session, 5, 1);
+      session.rollback();
+      // the later line of a group replaces the earlier one
+      insertLayout(source, session, 2, 2);
+      session.commit();
+    }
+
+    assertEquals(Arrays.asList(1, 2), source.loadLayoutGroupIds());
+    assertEquals(Arrays.asList(4, 5), getIds(source.loadGroups(100)));
+
+    final List<Group> exported = new ArrayList<>();
+    source.exportLayouts(0, 10, new GroupSource.LayoutHandler() {
+
+      @Override
+      public void handleLayout(Group group) throws OrthoMCLDataException {
+        exported.add(LayoutFormat.decode(group.getId(), group.getName(), group.getLayout()));
+      }
+    });
+    assertEquals(Arrays.asList(1, 2), getIds(exported));
+    assertEquals("OG_2", exported.get(1).getName());
+    assertEquals(2, exported.get(1).getGenes().get("b1").getPoint().x, 0);
+    assertEquals(1, exported.get(0).getGenes().get("a1").getPoint().x, 0);
+  }
+
+  @Test
+  public void testRemoveLayouts() throws OrthoMCLDataException {
+    FileGroupSource source = new FileGroupSource(directory);
+    try (GroupSession session = source.openSession(true)) {
+      insertLayout(source, session, 1, 0);
+      insertLayout(source, session, 2, 0);
+      insertLayout(source, session, 2, 1);
+      insertLayout(source, session, 5, 0);
+      session.commit();
+    }
+
+    LayoutScope scope = new LayoutScope();
+    scope.setIdRange(2, 4);
+    // the two lines of group 2 are one layout
+    assertEquals(1, source.removeLayouts(scope, 100));
+    assertEquals(Arrays.asList(1, 5), source.loadLayoutGroupIds());
+
+    assertEquals(2, source.removeLayouts(new LayoutScope(), 100));
+    assertEquals(Collections.emptyList(), source.loadLayoutGroupIds());
+    assertFalse(new File(directory, FileGroupSource.LAYOUT_FILE).exists());
+    assertEquals(0, source.removeLayouts(new LayoutScope(), 100));
+  }
+
+  @Test(expected = OrthoMCLDataException.class)
+  public void testIncrementalNotSupported() throws OrthoMCLDataException {
+    new FileGroupSource(directory).loadGroupsForUpdate(100);
+  }
+}
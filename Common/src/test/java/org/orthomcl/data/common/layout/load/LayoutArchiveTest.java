@@ -0,0 +1,152 @@
+package org.orthomcl.data.common.layout.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.orthomcl.data.common.layout.core.BlastScore;
+import org.orthomcl.data.common.layout.core.Gene;
+import org.orthomcl.data.common.layout.core.Group;
+
+public class LayoutArchiveTest {
+
+  private static final String UNICODE_NAME = "OG_\u00e9\u4e2d";
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("layouts", ".ola");
+    file.delete();
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+    new File(file.getAbsolutePath() + ".tmp").delete();
+  }
+
+  private static Group createGroup(int id, String name) {
+    Group group = new Group(id, name);
+    for (int i = 0; i < 4; i++) {
+      Gene gene = new Gene(name + "_g" + i);
+      gene.getPoint().x = i * 10.5;
+      gene.getPoint().y = 100 - i;
+      group.addGene(gene);
+    }
+    for (int i = 1; i < 4; i++) {
+      group.addBlastScore(new BlastScore(name + "_g" + (i - 1), name + "_g" + i, 2.5f, -20 * i));
+    }
+    return group;
+  }
+
+  @Test
+  public void testRoundTrip() throws OrthoMCLDataException {
+    LayoutArchiveWriter writer = LayoutArchiveWriter.create(file);
+    writer.add(30, "OG_30", "{\"layout\":30}");
+    writer.add(10, "OG_10", "{\"layout\":10}");
+    writer.add(42, UNICODE_NAME, "{\"name\":\"\u00e9\u4e2d\"}");
+    writer.add(20, "OG_20", "");
+    assertEquals(4, writer.size());
+    writer.finish();
+    assertFalse(new File(file.getAbsolutePath() + ".tmp").exists());
+
+    LayoutArchive archive = LayoutArchive.open(file);
+    assertEquals(4, archive.size());
+    // the index is sorted by the UTF-8 bytes of the names
+    assertEquals("OG_10", archive.getName(0));
+    assertEquals("OG_20", archive.getName(1));
+    assertEquals("OG_30", archive.getName(2));
+    assertEquals(UNICODE_NAME, archive.getName(3));
+
+    assertTrue(archive.contains("OG_30"));
+    assertEquals(30, archive.getGroupId("OG_30"));
+    assertEquals("{\"layout\":30}", archive.getLayout("OG_30"));
+    assertEquals(10, archive.getGroupId("OG_10"));
+    assertEquals("{\"layout\":10}", archive.getLayout("OG_10"));
+    assertEquals(42, archive.getGroupId(UNICODE_NAME));
+    assertEquals("{\"name\":\"\u00e9\u4e2d\"}", archive.getLayout(UNICODE_NAME));
+    assertEquals("", archive.getLayout("OG_20"));
+
+    assertFalse(archive.contains("OG_1"));
+    assertFalse(archive.contains("OG_31"));
+    assertEquals(-1, archive.getGroupId("OG_99"));
+    assertNull(archive.getLayout("OG_99"));
+    assertNull(archive.loadGroup("OG_99"));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testNameOutOfBounds() throws OrthoMCLDataException {
+    LayoutArchiveWriter writer = LayoutArchiveWriter.create(file);
+    writer.add(1, "OG_1", "{}");
+    writer.finish();
+    LayoutArchive.open(file).getName(1);
+  }
+
+  @Test
+  public void testEmptyArchive() throws OrthoMCLDataException {
+    LayoutArchiveWriter.create(file).finish();
+    LayoutArchive archive = LayoutArchive.open(file);
+    assertEquals(0, archive.size());
+    assertFalse(archive.contains("OG_1"));
+    assertNull(archive.getLayout("OG_1"));
+  }
+
+  @Test
+  public void testLoadGroup() throws OrthoMCLDataException {
+    Group group = createGroup(7, "OG_7");
+    LayoutArchiveWriter writer = LayoutArchiveWriter.create(file);
+    writer.add(7, "OG_7", LayoutFormat.Json.encode(group));
+    writer.add(8, "OG_8", LayoutFormat.Binary.encode(createGroup(8, "OG_8")));
+    writer.finish();
+
+    LayoutArchive archive = LayoutArchive.open(file);
+    for (Group expected : new Group[] { group, createGroup(8, "OG_8") }) {
+      Group loaded = archive.loadGroup(expected.getName());
+      assertNotNull(loaded);
+      assertEquals(expected.getId(), loaded.getId());
+      assertEquals(expected.getName(), loaded.getName());
+      assertEquals(expected.getGenes().size(), loaded.getGenes().size());
+      for (Gene gene : expected.getGenes().values()) {
+        Gene other = loaded.getGenes().get(gene.getSourceId());
+        assertNotNull(other);
+        assertEquals(gene.getPoint().x, other.getPoint().x, 0.01);
+        assertEquals(gene.getPoint().y, other.getPoint().y, 0.01);
+      }
+      assertEquals(expected.getScores().size(), loaded.getScores().size());
+    }
+  }
+
+  @Test
+  public void testDuplicateNames() throws OrthoMCLDataException {
+    LayoutArchiveWriter writer = LayoutArchiveWriter.create(file);
+    writer.add(1, "OG_1", "{}");
+    writer.add(2, "OG_2", "{}");
+    writer.add(3, "OG_1", "{}");
+    try {
+      writer.finish();
+      fail("The duplicate name is not rejected.");
+    }
+    catch (OrthoMCLDataException ex) {
+      // expected
+    }
+    assertFalse(file.exists());
+    assertFalse(new File(file.getAbsolutePath() + ".tmp").exists());
+  }
+
+  @Test(expected = OrthoMCLDataException.class)
+  public void testNotAnArchive() throws OrthoMCLDataException, IOException {
+    Files.write(file.toPath(), new byte[LayoutArchive.HEADER_SIZE]);
+    LayoutArchive.open(file);
+  }
+}
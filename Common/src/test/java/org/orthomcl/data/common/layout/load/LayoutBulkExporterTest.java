@@ -0,0 +1,199 @@
+package org.orthomcl.data.common.layout.load;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.orthomcl.data.common.layout.load.LayoutBulkExporter.Shard;
+
+public class LayoutBulkExporterTest {
+
+  private static final int LAYOUT_COUNT = 10;
+
+  private File source;
+  private File output;
+
+  @Before
+  public void setUp() throws IOException {
+    source = Files.createTempDirectory("export-source").toFile();
+    output = Files.createTempDirectory("export-output").toFile();
+    for (String name : new String[] { FileGroupSource.GROUP_FILE, FileGroupSource.GENE_FILE,
+        FileGroupSource.SCORE_FILE }) {
+      new File(source, name).createNewFile();
+    }
+    // the layouts of the ids 3, 6, ..., 30, with an earlier line of group 9 that is replaced
+    StringBuilder layouts = new StringBuilder("9\tOG_9\t\t{\"old\":9}\n");
+    for (int i = LAYOUT_COUNT; i >= 1; i--) {
+      layouts.append(getLine(3 * i)).append('\n');
+    }
+    Files.write(new File(source, FileGroupSource.LAYOUT_FILE).toPath(), layouts.toString().getBytes(
+        StandardCharsets.UTF_8));
+  }
+
+  @After
+  public void tearDown() {
+    delete(source);
+    delete(output);
+  }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File child : files) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private static String getLine(int id) {
+    return id + "\tOG_" + id + "\t" + ((id % 2 == 0) ? "f" + id : "") + "\t{\"id\":" + id + "}";
+  }
+
+  private static List<String> readShard(File file) throws IOException {
+    List<String> lines = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(
+        new FileInputStream(file)), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+
+  private static String sha256(File file) throws IOException, NoSuchAlgorithmException {
+    return LayoutFingerprint.toHex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(
+        file.toPath())));
+  }
+
+  private List<Shard> export(int shardCount) throws OrthoMCLDataException {
+    return new LayoutBulkExporter(new FileGroupSource(source), 2).export(output, shardCount);
+  }
+
+  private String[] listOutput() {
+    String[] names = output.list();
+    Arrays.sort(names);
+    return names;
+  }
+
+  @Test
+  public void testExport() throws Exception {
+    List<Shard> shards = export(3);
+
+    assertEquals(3, shards.size());
+    List<String> lines = new ArrayList<>();
+    int nextId = 3;
+    for (Shard shard : shards) {
+      // the ranges are contiguous, in order, and split the layouts evenly
+      assertEquals(nextId, shard.getMinId());
+      assertTrue(shard.getRows() >= LAYOUT_COUNT / 3 && shard.getRows() <= LAYOUT_COUNT / 3 + 1);
+      nextId = shard.getMaxId() + 3;
+      assertEquals(shard.getFile().length(), shard.getBytes());
+      assertEquals(sha256(shard.getFile()), shard.getChecksum());
+      List<String> shardLines = readShard(shard.getFile());
+      assertEquals(shard.getRows(), shardLines.size());
+      lines.addAll(shardLines);
+    }
+    assertEquals(3 * LAYOUT_COUNT + 3, nextId);
+
+    // the lines are in the order of the ids, with the last line of each group only
+    List<String> expected = new ArrayList<>();
+    for (int i = 1; i <= LAYOUT_COUNT; i++) {
+      expected.add(getLine(3 * i));
+    }
+    assertEquals(expected, lines);
+
+    List<String> manifest = Files.readAllLines(new File(output, LayoutBulkExporter.MANIFEST_FILE).toPath(),
+        StandardCharsets.UTF_8);
+    assertEquals(shards.size() + 1, manifest.size());
+    assertEquals("file\tmin_id\tmax_id\trows\tbytes\tsha256", manifest.get(0));
+    for (int i = 0; i < shards.size(); i++) {
+      Shard shard = shards.get(i);
+      assertEquals(shard.getFile().getName() + "\t" + shard.getMinId() + "\t" + shard.getMaxId() + "\t" +
+          shard.getRows() + "\t" + shard.getBytes() + "\t" + shard.getChecksum(), manifest.get(i + 1));
+    }
+    // no staging directory is left
+    assertArrayEquals(new String[] { "layouts-0000.txt.gz", "layouts-0001.txt.gz", "layouts-0002.txt.gz",
+        LayoutBulkExporter.MANIFEST_FILE }, listOutput());
+  }
+
+  @Test
+  public void testReexport() throws Exception {
+    export(4);
+    assertEquals(5, listOutput().length);
+
+    // the shards beyond the new number of shards are removed
+    List<Shard> shards = export(2);
+    assertArrayEquals(new String[] { "layouts-0000.txt.gz", "layouts-0001.txt.gz",
+        LayoutBulkExporter.MANIFEST_FILE }, listOutput());
+    assertEquals(LAYOUT_COUNT, shards.get(0).getRows() + shards.get(1).getRows());
+  }
+
+  @Test
+  public void testMoreShardsThanLayouts() throws Exception {
+    List<Shard> shards = export(LAYOUT_COUNT * 2);
+    assertEquals(LAYOUT_COUNT, shards.size());
+    for (Shard shard : shards) {
+      assertEquals(1, shard.getRows());
+      assertEquals(shard.getMinId(), shard.getMaxId());
+    }
+  }
+
+  @Test
+  public void testNoLayouts() throws Exception {
+    new File(source, FileGroupSource.LAYOUT_FILE).delete();
+    assertTrue(export(3).isEmpty());
+    assertArrayEquals(new String[] { LayoutBulkExporter.MANIFEST_FILE }, listOutput());
+  }
+
+  @Test
+  public void testFailedExport() throws Exception {
+    export(2);
+    String manifest = new String(Files.readAllBytes(new File(output, LayoutBulkExporter.MANIFEST_FILE)
+        .toPath()), StandardCharsets.UTF_8);
+
+    FileGroupSource failing = new FileGroupSource(source) {
+
+      @Override
+      public void exportLayouts(int minId, int maxId, LayoutHandler handler) throws OrthoMCLDataException {
+        if (minId > 3)
+          throw new OrthoMCLDataException("The range " + minId + ":" + maxId + " failed.");
+        super.exportLayouts(minId, maxId, handler);
+      }
+    };
+    try {
+      new LayoutBulkExporter(failing, 2).export(output, 3);
+      fail("The export should fail.");
+    }
+    catch (OrthoMCLDataException ex) {
+      assertTrue(ex.getMessage().contains("failed"));
+    }
+
+    // the previous export is kept as it is, and the staged shards are removed
+    assertArrayEquals(new String[] { "layouts-0000.txt.gz", "layouts-0001.txt.gz",
+        LayoutBulkExporter.MANIFEST_FILE }, listOutput());
+    assertEquals(manifest, new String(Files.readAllBytes(new File(output, LayoutBulkExporter.MANIFEST_FILE)
+        .toPath()), StandardCharsets.UTF_8));
+    assertFalse(new File(output, ".staging").exists());
+  }
+}
@@ -0,0 +1,85 @@
+package org.orthomcl.data.common.layout.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.orthomcl.data.common.layout.core.BlastScore;
+import org.orthomcl.data.common.layout.core.EdgeType;
+import org.orthomcl.data.common.layout.core.Gene;
+import org.orthomcl.data.common.layout.core.Group;
+
+public class LayoutFingerprintTest {
+
+  private static Group createGroup(String[] geneIds, BlastScore... scores) {
+    Group group = new Group(1, "OG_1");
+    for (String geneId : geneIds) {
+      group.addGene(new Gene(geneId));
+    }
+    for (BlastScore score : scores) {
+      score.setGroup(group);
+      group.addBlastScore(score);
+    }
+    return group;
+  }
+
+  private static BlastScore createScore(String queryId, String subjectId, int exp, int exp2, EdgeType type) {
+    BlastScore score = new BlastScore(queryId, subjectId, 1.5f, exp, 1.5f, exp2);
+    score.setType(type);
+    return score;
+  }
+
+  private static Group createGroup() {
+    return createGroup(new String[] { "a", "b", "c" }, createScore("a", "b", -10, -12, EdgeType.Ortholog),
+        createScore("b", "c", -20, -20, EdgeType.Normal), createScore("c", "a", -30, -31, EdgeType.Inparalog));
+  }
+
+  @Test
+  public void testFormat() {
+    String fingerprint = LayoutFingerprint.compute(createGroup());
+    assertEquals(40, fingerprint.length());
+    assertTrue(fingerprint.matches("[0-9a-f]{40}"));
+    assertEquals("00ff7f80", LayoutFingerprint.toHex(new byte[] { 0, -1, 127, -128 }));
+  }
+
+  @Test
+  public void testOrderIndependent() {
+    // the same content, with the genes and scores loaded in another order
+    Group group = createGroup(new String[] { "c", "a", "b" }, createScore("c", "a", -30, -31,
+        EdgeType.Inparalog), createScore("b", "c", -20, -20, EdgeType.Normal), createScore("a", "b", -10, -12,
+            EdgeType.Ortholog));
+    assertEquals(LayoutFingerprint.compute(createGroup()), LayoutFingerprint.compute(group));
+  }
+
+  @Test
+  public void testDirectionIndependent() {
+    // the scores stored in the other direction, with their two evalues swapped with them
+    Group group = createGroup(new String[] { "a", "b", "c" }, createScore("b", "a", -12, -10,
+        EdgeType.Ortholog), createScore("c", "b", -20, -20, EdgeType.Normal), createScore("a", "c", -31, -30,
+            EdgeType.Inparalog));
+    assertEquals(LayoutFingerprint.compute(createGroup()), LayoutFingerprint.compute(group));
+  }
+
+  @Test
+  public void testContentDependent() {
+    String fingerprint = LayoutFingerprint.compute(createGroup());
+
+    // a different evalue
+    assertNotEquals(fingerprint, LayoutFingerprint.compute(createGroup(new String[] { "a", "b", "c" },
+        createScore("a", "b", -10, -13, EdgeType.Ortholog), createScore("b", "c", -20, -20, EdgeType.Normal),
+        createScore("c", "a", -30, -31, EdgeType.Inparalog))));
+    // a different edge type
+    assertNotEquals(fingerprint, LayoutFingerprint.compute(createGroup(new String[] { "a", "b", "c" },
+        createScore("a", "b", -10, -12, EdgeType.Coortholog), createScore("b", "c", -20, -20, EdgeType.Normal),
+        createScore("c", "a", -30, -31, EdgeType.Inparalog))));
+    // the evalues swapped without the direction
+    assertNotEquals(fingerprint, LayoutFingerprint.compute(createGroup(new String[] { "a", "b", "c" },
+        createScore("a", "b", -12, -10, EdgeType.Ortholog), createScore("b", "c", -20, -20, EdgeType.Normal),
+        createScore("c", "a", -30, -31, EdgeType.Inparalog))));
+    // an extra gene without scores
+    assertNotEquals(fingerprint, LayoutFingerprint.compute(createGroup(new String[] { "a", "b", "c", "d" },
+        createScore("a", "b", -10, -12, EdgeType.Ortholog), createScore("b", "c", -20, -20, EdgeType.Normal),
+        createScore("c", "a", -30, -31, EdgeType.Inparalog))));
+  }
+}
@@ -0,0 +1,54 @@
+package org.orthomcl.data.common.layout.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.orthomcl.data.common.layout.core.BlastScore;
+import org.orthomcl.data.common.layout.core.Gene;
+import org.orthomcl.data.common.layout.core.Group;
+
+public class LayoutFormatTest {
+
+  private static Group createGroup() {
+    Group group = new Group(3, "OG_3");
+    for (int i = 0; i < 3; i++) {
+      Gene gene = new Gene("g" + i);
+      gene.getPoint().x = i * 1.25;
+      gene.getPoint().y = -i;
+      group.addGene(gene);
+    }
+    for (int i = 1; i < 3; i++) {
+      BlastScore score = new BlastScore("g" + (i - 1), "g" + i, 4.5f, -30 * i);
+      score.setGroup(group);
+      group.addBlastScore(score);
+    }
+    return group;
+  }
+
+  @Test
+  public void testColumnValue() {
+    assertNull(LayoutFormat.Json.getColumnValue());
+    assertEquals("binary", LayoutFormat.Binary.getColumnValue());
+    assertEquals("deflate", LayoutFormat.Deflate.getColumnValue());
+  }
+
+  @Test
+  public void testOf() {
+    Group group = createGroup();
+    for (LayoutFormat format : LayoutFormat.values()) {
+      assertEquals(format, LayoutFormat.of(format.encode(group)));
+    }
+  }
+
+  @Test
+  public void testDecodeAnyFormat() throws OrthoMCLDataException {
+    Group group = createGroup();
+    for (LayoutFormat format : LayoutFormat.values()) {
+      Group decoded = LayoutFormat.decode(group.getId(), group.getName(), format.encode(group));
+      assertEquals(group.getGenes().keySet(), decoded.getGenes().keySet());
+      assertEquals(1.25, decoded.getGenes().get("g1").getPoint().x, 0);
+      assertEquals(2, decoded.getScores().size());
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package org.orthomcl.data.common.layout.load;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LayoutGeneratorTest {
+
+  @Test
+  public void testParseCount() throws OrthoMCLDataException {
+    assertEquals(1, LayoutGenerator.parseCount("commit", "1", 1, 1000));
+    assertEquals(1000, LayoutGenerator.parseCount("commit", " 1000 ", 1, 1000));
+    assertEquals(0, LayoutGenerator.parseCount("retry", "0", 0, Integer.MAX_VALUE));
+  }
+
+  @Test(expected = OrthoMCLDataException.class)
+  public void testParseZeroCount() throws OrthoMCLDataException {
+    LayoutGenerator.parseCount("commit", "0", 1, 1000);
+  }
+
+  @Test(expected = OrthoMCLDataException.class)
+  public void testParseNegativeCount() throws OrthoMCLDataException {
+    LayoutGenerator.parseCount("loader", "-2", 1, Integer.MAX_VALUE);
+  }
+
+  @Test(expected = OrthoMCLDataException.class)
+  public void testParseCountAboveMax() throws OrthoMCLDataException {
+    LayoutGenerator.parseCount("batch", "1001", 1, 1000);
+  }
+
+  @Test(expected = OrthoMCLDataException.class)
+  public void testParseCountNotNumber() throws OrthoMCLDataException {
+    LayoutGenerator.parseCount("commit", "ten", 1, 1000);
+  }
+}
@@ -0,0 +1,76 @@
+package org.orthomcl.data.common.layout.load;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.DecimalFormat;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LayoutJsonWriterTest {
+
+  private static String format(double value) {
+    StringBuilder out = new StringBuilder();
+    LayoutJsonWriter.appendFixed(value, out);
+    return out.toString();
+  }
+
+  /**
+   * @return the value formatted by DecimalFormat, except that the writer has no negative zero.
+   */
+  private static String expected(DecimalFormat format, double value) {
+    String text = format.format(value);
+    return text.equals("-0.00") ? "0.00" : text;
+  }
+
+  private static void assertFormat(DecimalFormat format, double value) {
+    assertEquals("value " + value, expected(format, value), format(value));
+  }
+
+  @Test
+  public void testTies() {
+    // the binary values of these are just above or below half a cent, so they don't round as written
+    assertEquals("97.91", format(97.905));
+    assertEquals("2.67", format(2.675));
+    assertEquals("1.01", format(1.005 + 1e-12));
+    assertEquals("0.12", format(0.125));
+    assertEquals("0.14", format(0.135));
+    assertEquals("-97.91", format(-97.905));
+    assertEquals("-0.12", format(-0.125));
+  }
+
+  @Test
+  public void testNegativeZero() {
+    assertEquals("0.00", format(-0.0));
+    assertEquals("0.00", format(-0.001));
+    assertEquals("0.00", format(-0.004));
+    // the binary value of 0.005 is just above half a cent
+    assertEquals("-0.01", format(-0.005));
+    assertEquals("0.00", format(0.0));
+  }
+
+  @Test
+  public void testLargeValues() {
+    assertEquals("100000000000000000.00", format(1e17));
+    assertEquals("-12345678.90", format(-12345678.9));
+    assertEquals("9223372036854775808.00", format(0x1p63));
+  }
+
+  @Test
+  public void testAgainstDecimalFormat() {
+    DecimalFormat format = new DecimalFormat("0.00");
+    double[] values = { 97.905, 2.675, 0.125, 0.135, 0.005, -0.005, -0.015, 1.115, 1e7 + 0.005, 123.455 };
+    for (double value : values) {
+      assertFormat(format, value);
+      assertFormat(format, -value);
+    }
+
+    Random random = new Random(8);
+    for (int i = 0; i < 200000; i++) {
+      // the coordinates with 3 decimals hit a tie in the written value on every 10th draw
+      double value = (random.nextInt(20000000) - 10000000) / 1000.0;
+      assertFormat(format, value);
+      assertFormat(format, random.nextGaussian() * 1000);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package org.orthomcl.data.common.layout.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.orthomcl.data.common.layout.core.Group;
+
+public class LayoutLedgerTest {
+
+  private static final String ODD_NAME = "OG\t1\n\\x\u00e9";
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("ledger", ".tsv");
+    file.delete();
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  private static Group createGroup(int id, String name) {
+    Group group = new Group(id, name);
+    group.setMemberCount(id * 10);
+    group.setEdgeCount(id * 100);
+    return group;
+  }
+
+  private static List<Group> createGroups() {
+    return new ArrayList<>(Arrays.asList(createGroup(1, "OG_1"), createGroup(2, ODD_NAME), createGroup(3,
+        "OG_3"), createGroup(4, "OG_4")));
+  }
+
+  private static Map<String, String> createSettings() {
+    Map<String, String> settings = new LinkedHashMap<>();
+    settings.put("max", "500");
+    settings.put("source", "C:\\data\\groups");
+    settings.put("empty", "");
+    return settings;
+  }
+
+  private static List<Integer> getIds(LayoutLedger ledger) {
+    List<Integer> ids = new ArrayList<>();
+    for (Group group : ledger.getGroups()) {
+      ids.add(group.getId());
+    }
+    return ids;
+  }
+
+  private void append(String text) throws IOException {
+    Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+  }
+
+  @Test
+  public void testEscape() {
+    assertEquals("OG\\t1\\n\\\\x\u00e9", LayoutLedger.escape(ODD_NAME));
+    assertEquals(ODD_NAME, LayoutLedger.unescape(LayoutLedger.escape(ODD_NAME)));
+    assertEquals("\r\\", LayoutLedger.unescape(LayoutLedger.escape("\r\\")));
+    assertEquals("OG_1", LayoutLedger.escape("OG_1"));
+  }
+
+  @Test
+  public void testResume() throws OrthoMCLDataException {
+    try (LayoutLedger ledger = LayoutLedger.create(file, createGroups(), createSettings())) {
+      ledger.done(Arrays.asList(createGroup(1, "OG_1"), createGroup(3, "OG_3")));
+      ledger.failed(createGroup(2, ODD_NAME), "layout", new IllegalStateException("bad\ngroup"));
+    }
+
+    try (LayoutLedger ledger = LayoutLedger.resume(file)) {
+      // the failed group is retried
+      assertEquals(Arrays.asList(2, 4), getIds(ledger));
+      Group group = ledger.getGroups().get(0);
+      assertEquals(ODD_NAME, group.getName());
+      assertEquals(20, group.getMemberCount());
+      assertEquals(200, group.getEdgeCount());
+      assertEquals("500", ledger.getSetting("max"));
+      assertEquals("C:\\data\\groups", ledger.getSetting("source"));
+      assertEquals("", ledger.getSetting("empty"));
+      assertNull(ledger.getSetting("engine"));
+      ledger.done(Collections.singletonList(group));
+    }
+
+    try (LayoutLedger ledger = LayoutLedger.resume(file)) {
+      assertEquals(Arrays.asList(4), getIds(ledger));
+    }
+  }
+
+  @Test
+  public void testIncompleteLastLine() throws OrthoMCLDataException, IOException {
+    try (LayoutLedger ledger = LayoutLedger.create(file, createGroups(), createSettings())) {
+      ledger.done(Collections.singletonList(createGroup(1, "OG_1")));
+    }
+    // a run that stops while writing the line of group 3
+    append("DONE\t");
+
+    try (LayoutLedger ledger = LayoutLedger.resume(file)) {
+      assertEquals(Arrays.asList(2, 3, 4), getIds(ledger));
+      ledger.done(Collections.singletonList(createGroup(4, "OG_4")));
+    }
+
+    // the line appended after the dropped one is read on its own
+    try (LayoutLedger ledger = LayoutLedger.resume(file)) {
+      assertEquals(Arrays.asList(2, 3), getIds(ledger));
+    }
+    assertTrue(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).endsWith("DONE\t4" +
+        System.lineSeparator()));
+  }
+
+  @Test(expected = OrthoMCLDataException.class)
+  public void testMalformedLine() throws OrthoMCLDataException, IOException {
+    LayoutLedger.create(file, createGroups(), createSettings()).close();
+    append("DONE\tx\n");
+    LayoutLedger.resume(file);
+  }
+
+  @Test(expected = OrthoMCLDataException.class)
+  public void testCreateExisting() throws OrthoMCLDataException {
+    LayoutLedger.create(file, createGroups(), createSettings()).close();
+    LayoutLedger.create(file, createGroups(), createSettings());
+  }
+
+  @Test(expected = OrthoMCLDataException.class)
+  public void testResumeMissing() throws OrthoMCLDataException {
+    LayoutLedger.resume(file);
+  }
+}
@@ -0,0 +1,108 @@
+package org.orthomcl.data.common.layout.load;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.orthomcl.data.common.layout.core.Group;
+
+public class LayoutScopeTest {
+
+  private static Group createGroup(int id, String name, int memberCount) {
+    Group group = new Group(id, name);
+    group.setMemberCount(memberCount);
+    return group;
+  }
+
+  @Test
+  public void testParseRange() throws OrthoMCLDataException {
+    assertArrayEquals(new int[] { 1, 10 }, LayoutGenerator.parseRange("ids", "1:10", Integer.MIN_VALUE));
+    assertArrayEquals(new int[] { 0, 10 }, LayoutGenerator.parseRange("members", ":10", 0));
+    assertArrayEquals(new int[] { 5, Integer.MAX_VALUE }, LayoutGenerator.parseRange("ids", "5:", 0));
+    assertArrayEquals(new int[] { Integer.MIN_VALUE, Integer.MAX_VALUE },
+        LayoutGenerator.parseRange("ids", ":", Integer.MIN_VALUE));
+    assertArrayEquals(new int[] { 3, 3 }, LayoutGenerator.parseRange("ids", " 3 : 3 ", 0));
+  }
+
+  @Test(expected = OrthoMCLDataException.class)
+  public void testParseRangeWithoutColon() throws OrthoMCLDataException {
+    LayoutGenerator.parseRange("ids", "10", 0);
+  }
+
+  @Test(expected = OrthoMCLDataException.class)
+  public void testParseEmptyRange() throws OrthoMCLDataException {
+    LayoutGenerator.parseRange("ids", "9:3", 0);
+  }
+
+  @Test(expected = OrthoMCLDataException.class)
+  public void testParseRangeNotNumber() throws OrthoMCLDataException {
+    LayoutGenerator.parseRange("members", "a:10", 0);
+  }
+
+  @Test
+  public void testAll() {
+    LayoutScope scope = new LayoutScope();
+    assertTrue(scope.isAll());
+    assertFalse(scope.isGroupScoped());
+    assertTrue(scope.containsId(Integer.MIN_VALUE));
+    assertTrue(scope.contains(createGroup(1, "OG_1", 0)));
+    assertEquals("all groups", scope.toString());
+  }
+
+  @Test
+  public void testIdRange() {
+    LayoutScope scope = new LayoutScope();
+    scope.setIdRange(10, 20);
+    assertFalse(scope.isAll());
+    // a layout is in the scope by its id alone
+    assertFalse(scope.isGroupScoped());
+    assertTrue(scope.containsId(10));
+    assertTrue(scope.containsId(20));
+    assertFalse(scope.containsId(9));
+    assertFalse(scope.containsId(21));
+    assertTrue(scope.contains(createGroup(15, "OG_15", 3)));
+    assertFalse(scope.contains(createGroup(21, "OG_21", 3)));
+    assertEquals("groups with ids 10:20", scope.toString());
+  }
+
+  @Test
+  public void testMemberRange() {
+    LayoutScope scope = new LayoutScope();
+    scope.setMemberCountRange(0, 100);
+    assertFalse(scope.isAll());
+    assertTrue(scope.isMemberScoped());
+    assertTrue(scope.isGroupScoped());
+    assertTrue(scope.contains(createGroup(1, "OG_1", 100)));
+    assertFalse(scope.contains(createGroup(1, "OG_1", 101)));
+    assertEquals("groups with members :100", scope.toString());
+  }
+
+  @Test
+  public void testNames() {
+    LayoutScope scope = new LayoutScope();
+    scope.setNames(Arrays.asList("OG_1", "OG_3"));
+    assertFalse(scope.isAll());
+    assertFalse(scope.isMemberScoped());
+    assertTrue(scope.isGroupScoped());
+    assertTrue(scope.contains(createGroup(1, "OG_1", 5)));
+    assertFalse(scope.contains(createGroup(2, "OG_2", 5)));
+    assertEquals("groups of 2 names", scope.toString());
+  }
+
+  @Test
+  public void testAllConditions() {
+    LayoutScope scope = new LayoutScope();
+    scope.setIdRange(1, 10);
+    scope.setMemberCountRange(5, Integer.MAX_VALUE);
+    scope.setNames(Arrays.asList("OG_1", "OG_20"));
+    assertTrue(scope.contains(createGroup(1, "OG_1", 5)));
+    assertFalse(scope.contains(createGroup(1, "OG_1", 4)));
+    assertFalse(scope.contains(createGroup(20, "OG_20", 5)));
+    assertFalse(scope.contains(createGroup(2, "OG_2", 5)));
+    assertEquals("groups with ids 1:10 with members 5: of 2 names", scope.toString());
+  }
+}
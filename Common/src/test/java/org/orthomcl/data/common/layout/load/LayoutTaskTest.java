@@ -0,0 +1,141 @@
+package org.orthomcl.data.common.layout.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.orthomcl.data.common.layout.core.BlastScore;
+import org.orthomcl.data.common.layout.core.Gene;
+import org.orthomcl.data.common.layout.core.Group;
+
+public class LayoutTaskTest {
+
+  /**
+   * A source whose layouts fail to serialize for the first given number of attempts of each group.
+   */
+  private static class FailingSource extends FileGroupSource {
+
+    private final int failures;
+    private int attempts;
+
+    public FailingSource(File directory, int failures) throws OrthoMCLDataException {
+      super(directory);
+      this.failures = failures;
+    }
+
+    @Override
+    public void createLayout(Group group) throws OrthoMCLDataException {
+      attempts++;
+      if (group.getName().startsWith("BAD") || attempts <= failures)
+        throw new OrthoMCLDataException("Attempt " + attempts + " of " + group.getName() + " failed.");
+      super.createLayout(group);
+    }
+  }
+
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("layout-task").toFile();
+    for (String name : new String[] { FileGroupSource.GROUP_FILE, FileGroupSource.GENE_FILE,
+        FileGroupSource.SCORE_FILE }) {
+      new File(directory, name).createNewFile();
+    }
+  }
+
+  @After
+  public void tearDown() {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  private static Group createGroup(int id, String name) {
+    Group group = new Group(id, name);
+    for (int i = 0; i < 4; i++) {
+      group.addGene(new Gene(name + "_g" + i));
+    }
+    for (int i = 1; i < 4; i++) {
+      BlastScore score = new BlastScore(name + "_g" + (i - 1), name + "_g" + i, 2.5f, -20 * i);
+      score.setGroup(group);
+      group.addBlastScore(score);
+    }
+    return group;
+  }
+
+  /**
+   * Run a task over the groups until the end of the queue, in the current thread.
+   */
+  private static BlockingQueue<Group> run(GroupSource source, int retryCount, LayoutProgress progress,
+      Group... groups) throws InterruptedException {
+    BlockingQueue<Group> layoutQueue = new ArrayBlockingQueue<>(groups.length + 1);
+    BlockingQueue<Group> writeQueue = new ArrayBlockingQueue<>(groups.length);
+    for (Group group : groups) {
+      layoutQueue.put(group);
+    }
+    layoutQueue.put(LayoutTask.END_OF_QUEUE);
+    new LayoutTask(source, new LayoutSelector(LayoutEngine.Force), layoutQueue, writeQueue, retryCount,
+        progress).run();
+    return writeQueue;
+  }
+
+  @Test
+  public void testRetried() throws Exception {
+    FailingSource source = new FailingSource(directory, 2);
+    LayoutProgress progress = new LayoutProgress(null);
+    Group group = createGroup(1, "OG_1");
+    BlockingQueue<Group> writeQueue = run(source, 2, progress, group);
+
+    assertEquals(3, source.attempts);
+    assertSame(group, writeQueue.poll());
+    assertNotNull(group.getLayout());
+    assertEquals(0, progress.getFailed());
+  }
+
+  @Test
+  public void testFailedAfterRetries() throws Exception {
+    FailingSource source = new FailingSource(directory, 3);
+    LayoutProgress progress = new LayoutProgress(null);
+    BlockingQueue<Group> writeQueue = run(source, 2, progress, createGroup(1, "OG_1"));
+
+    assertEquals(3, source.attempts);
+    assertTrue(writeQueue.isEmpty());
+    assertEquals(1, progress.getFailed());
+  }
+
+  @Test
+  public void testNoRetry() throws Exception {
+    FailingSource source = new FailingSource(directory, 1);
+    LayoutProgress progress = new LayoutProgress(null);
+    BlockingQueue<Group> writeQueue = run(source, 0, progress, createGroup(1, "OG_1"));
+
+    assertEquals(1, source.attempts);
+    assertTrue(writeQueue.isEmpty());
+    assertEquals(1, progress.getFailed());
+  }
+
+  @Test
+  public void testContinuesAfterFailedGroup() throws Exception {
+    FailingSource source = new FailingSource(directory, 0);
+    LayoutProgress progress = new LayoutProgress(null);
+    Group good = createGroup(2, "OG_2");
+    BlockingQueue<Group> writeQueue = run(source, 1, progress, createGroup(1, "BAD_1"), good);
+
+    // 2 attempts of the bad group, and 1 of the good one
+    assertEquals(3, source.attempts);
+    assertSame(good, writeQueue.poll());
+    assertTrue(writeQueue.isEmpty());
+    assertEquals(1, progress.getFailed());
+  }
+}
@@ -0,0 +1,208 @@
+package org.orthomcl.data.common.layout.load;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.orthomcl.data.common.layout.core.Group;
+
+public class LoaderTaskTest {
+
+  /**
+   * A file source whose sessions can fail to load the batches, or the groups named BAD, or fail to open.
+   */
+  private static class FailingSource extends FileGroupSource {
+
+    private final boolean failBatches;
+    private final boolean failSessions;
+    private int batchLoads;
+    private int groupLoads;
+
+    public FailingSource(File directory, boolean failBatches, boolean failSessions)
+        throws OrthoMCLDataException {
+      super(directory);
+      this.failBatches = failBatches;
+      this.failSessions = failSessions;
+    }
+
+    @Override
+    public GroupSession openSession(boolean batch) throws OrthoMCLDataException {
+      if (failSessions)
+        throw new OrthoMCLDataException("No session.");
+      final GroupSession session = super.openSession(batch);
+      return new GroupSession() {
+
+        @Override
+        public void loadGroupDetail(Group group) throws OrthoMCLDataException {
+          groupLoads++;
+          session.loadGroupDetail(group);
+          if (group.getName().startsWith("BAD"))
+            throw new OrthoMCLDataException("Group " + group.getName() + " failed to load.");
+        }
+
+        @Override
+        public void loadGroupDetails(List<Group> groups) throws OrthoMCLDataException {
+          batchLoads++;
+          session.loadGroupDetails(groups);
+          if (failBatches)
+            throw new IllegalStateException("The batch failed to load.");
+        }
+
+        @Override
+        public String loadLayout(int groupId, String fingerprint) {
+          return null;
+        }
+
+        @Override
+        public String loadPreviousLayout(Group group) {
+          return null;
+        }
+
+        @Override
+        public void insertLayout(Group group, boolean replace) throws OrthoMCLDataException {
+          session.insertLayout(group, replace);
+        }
+
+        @Override
+        public void commit() throws OrthoMCLDataException {
+          session.commit();
+        }
+
+        @Override
+        public void rollback() {
+          session.rollback();
+        }
+
+        @Override
+        public void close() {
+          session.close();
+        }
+      };
+    }
+  }
+
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("loader-task").toFile();
+    // 3 groups of 3 genes, in a triangle of scores
+    String[] names = { "OG_1", "BAD_2", "OG_3" };
+    StringBuilder groups = new StringBuilder();
+    StringBuilder genes = new StringBuilder();
+    StringBuilder scores = new StringBuilder();
+    for (int id = 1; id <= names.length; id++) {
+      groups.append(id + "\t" + names[id - 1] + "\t3\t3\n");
+      for (int i = 0; i < 3; i++) {
+        genes.append(id + "\tg" + id + "_" + i + "\t" + (10 + i) + "\n");
+        scores.append(id + "\tg" + id + "_" + i + "\tg" + id + "_" + ((i + 1) % 3) + "\t2.5\t-" + (10 * (i + 1)) +
+            "\n");
+      }
+    }
+    write(FileGroupSource.GROUP_FILE, groups);
+    write(FileGroupSource.GENE_FILE, genes);
+    write(FileGroupSource.SCORE_FILE, scores);
+  }
+
+  private void write(String name, CharSequence content) throws IOException {
+    Files.write(new File(directory, name).toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  @After
+  public void tearDown() {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  /**
+   * Run a loader over the batches until the end of the queue, in the current thread.
+   *
+   * @return the groups passed on to the layout stage.
+   */
+  private static List<Group> run(GroupSource source, LayoutProgress progress, List<List<Group>> batches)
+      throws InterruptedException {
+    BlockingQueue<List<Group>> loadQueue = new ArrayBlockingQueue<>(batches.size() + 1);
+    BlockingQueue<Group> layoutQueue = new ArrayBlockingQueue<>(16);
+    BlockingQueue<Group> writeQueue = new ArrayBlockingQueue<>(16);
+    for (List<Group> batch : batches) {
+      loadQueue.put(batch);
+    }
+    loadQueue.put(LoaderTask.END_OF_QUEUE);
+    new LoaderTask(source, loadQueue, layoutQueue, writeQueue, null, false, 2, progress).run();
+    assertTrue(writeQueue.isEmpty());
+    return new ArrayList<>(layoutQueue);
+  }
+
+  private static List<String> getNames(List<Group> groups) {
+    List<String> names = new ArrayList<>();
+    for (Group group : groups) {
+      names.add(group.getName());
+    }
+    return names;
+  }
+
+  @Test
+  public void testBatches() throws Exception {
+    FailingSource source = new FailingSource(directory, false, false);
+    List<Group> groups = source.loadGroups(100);
+    LayoutProgress progress = new LayoutProgress(null);
+    List<Group> loaded = run(source, progress, Arrays.asList(groups.subList(0, 2), groups.subList(2, 3)));
+
+    assertEquals(2, source.batchLoads);
+    assertEquals(0, source.groupLoads);
+    assertEquals(getNames(groups), getNames(loaded));
+    for (Group group : loaded) {
+      assertEquals(3, group.getGenes().size());
+      assertEquals(3, group.getScores().size());
+    }
+    assertEquals(0, progress.getFailed());
+  }
+
+  @Test
+  public void testFailedBatch() throws Exception {
+    FailingSource source = new FailingSource(directory, true, false);
+    List<Group> groups = source.loadGroups(100);
+    LayoutProgress progress = new LayoutProgress(null);
+    List<Group> loaded = run(source, progress, Arrays.asList(groups));
+
+    // the groups are loaded again one at a time; the bad group is retried twice, then failed
+    assertEquals(1, source.batchLoads);
+    assertEquals(2 + 3, source.groupLoads);
+    assertEquals(Arrays.asList("OG_1", "OG_3"), getNames(loaded));
+    for (Group group : loaded) {
+      // the details loaded by the failed batch are not added twice
+      assertEquals(3, group.getGenes().size());
+      assertEquals(3, group.getScores().size());
+    }
+    assertEquals(1, progress.getFailed());
+    // the failed group doesn't keep the details of its last attempt
+    Group bad = groups.get(1);
+    assertEquals("BAD_2", bad.getName());
+    assertTrue(bad.getGenes().isEmpty());
+  }
+
+  @Test
+  public void testFailedSession() throws Exception {
+    FailingSource source = new FailingSource(directory, false, true);
+    List<Group> groups = source.loadGroups(100);
+    LayoutProgress progress = new LayoutProgress(null);
+    List<Group> loaded = run(source, progress, Arrays.asList(groups.subList(0, 1), groups.subList(1, 3)));
+
+    assertTrue(loaded.isEmpty());
+    assertEquals(3, progress.getFailed());
+  }
+}
@@ -0,0 +1,14 @@
+-- the content fingerprint of the group at layout time, used by orthomclClusterLayout -incremental.
+-- The column is only added if the table doesn't have it yet, so the script can be run more than once.
+DECLARE
+  column_count NUMBER;
+BEGIN
+  SELECT count(*) INTO column_count
+  FROM all_tab_columns
+  WHERE owner = 'APIDB' AND table_name = 'ORTHOLOGGROUPLAYOUTCORE' AND column_name = 'FINGERPRINT';
+
+  IF column_count = 0 THEN
+    EXECUTE IMMEDIATE 'ALTER TABLE apidb.OrthologGroupLayoutCore ADD (fingerprint VARCHAR2(40))';
+  END IF;
+END;
+/
@@ -0,0 +1,16 @@
+-- the format of the layout, written by orthomclClusterLayout -format binary or deflate. The column is null for
+-- the JSON layouts, so readers must parse the layout as JSON if it is null, and otherwise decode the layout
+-- as a BinaryLayout (Base64 after a 'BL' prefix), or skip it.
+-- The column is only added if the table doesn't have it yet, so the script can be run more than once.
+DECLARE
+  column_count NUMBER;
+BEGIN
+  SELECT count(*) INTO column_count
+  FROM all_tab_columns
+  WHERE owner = 'APIDB' AND table_name = 'ORTHOLOGGROUPLAYOUTCORE' AND column_name = 'LAYOUT_FORMAT';
+
+  IF column_count = 0 THEN
+    EXECUTE IMMEDIATE 'ALTER TABLE apidb.OrthologGroupLayoutCore ADD (layout_format VARCHAR2(10))';
+  END IF;
+END;
+/
@@ -0,0 +1,141 @@
+package org.apidb.orthomcl.load.plugin;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses the blast similarity file read by {@link UpdateSimilarityPlugin}, one line at a time, and computes
+ * the non-overlapping match length of each query-subject pair with more than one HSP. The HSP segments are
+ * taken on the longer of the two sequences.
+ *
+ * The pairs whose segments overlap are passed to the {@link PairHandler}; the other pairs keep their match
+ * length, and are skipped. The parser doesn't touch the database, so that it can be run on its own.
+ */
+public class SimilarityParser {
+
+    /**
+     * Receives each pair whose non-overlapping match length differs from its total match length.
+     */
+    public interface PairHandler {
+        void handle(String queryId, String subjectId, int matchLength) throws SQLException;
+    }
+
+    public static class Segment implements Comparable<Segment> {
+        public int Start;
+        public int Length;
+
+        public Segment(int start, int length) {
+            Start = start;
+            Length = length;
+        }
+
+        @Override
+        public int compareTo(Segment o) {
+            int startDiff = this.Start - o.Start;
+            return (startDiff == 0) ? (o.Length - this.Length) : startDiff;
+        }
+    }
+
+    private final Map<String, Integer> lengthMap;
+    private final PairHandler handler;
+
+    private String queryId;
+    private String subjectId;
+    private boolean useQuery = true;
+    private List<Segment> segments;
+
+    /**
+     * @param lengthMap
+     *            the length of each sequence, by its id.
+     */
+    public SimilarityParser(Map<String, Integer> lengthMap, PairHandler handler) {
+        this.lengthMap = lengthMap;
+        this.handler = handler;
+    }
+
+    public void parseLine(String line) throws SQLException {
+        line = line.trim();
+        if (line.startsWith(">")) {
+            // update previous query-subject
+            flush();
+
+            // get next query id
+            queryId = line.substring(1, line.indexOf('(')).trim();
+            subjectId = null;
+            segments = null;
+        } else if (line.startsWith("Sum")) {
+            // update previous query-subject
+            flush();
+
+            // get next subject
+            String[] parts = line.split(":");
+            subjectId = parts[1].trim();
+            segments = null;
+            int matchCount = Integer.parseInt(parts[8].trim());
+            // only update the pairs with more than one match
+            if (matchCount > 1) {
+                int queryLength = lengthMap.get(queryId);
+                int subjectLength = lengthMap.get(subjectId);
+                useQuery = (queryLength >= subjectLength);
+                segments = new ArrayList<Segment>();
+            }
+        } else if (line.startsWith("HSP")) {
+            if (segments != null) {
+                String[] parts = line.split(":");
+                int start, end;
+                if (useQuery) {
+                    start = Integer.parseInt(parts[9]);
+                    end = Integer.parseInt(parts[10]);
+                } else {
+                    start = Integer.parseInt(parts[7]);
+                    end = Integer.parseInt(parts[8]);
+                }
+                segments.add(new Segment(start, end - start + 1));
+            }
+        }
+    }
+
+    /**
+     * Pass on the last pair of the file, if its segments overlap.
+     */
+    public void finish() throws SQLException {
+        flush();
+        segments = null;
+    }
+
+    private void flush() throws SQLException {
+        if (segments == null || segments.size() <= 1)
+            return;
+        int matchLength = getNonOverlapLength(segments);
+        if (matchLength >= 0)
+            handler.handle(queryId, subjectId, matchLength);
+    }
+
+    /**
+     * Merge the segments, sorting them in place.
+     *
+     * @return the total length covered by the segments, or -1 if none of the segments overlap.
+     */
+    public static int getNonOverlapLength(List<Segment> segments) {
+        Collections.sort(segments);
+        int totalLength = 0;
+        int pos = 0;
+        boolean overlap = false;
+        for (Segment segment : segments) {
+            int nextPos = segment.Start + segment.Length;
+            if (nextPos <= pos) continue;
+
+            if (segment.Start >= pos) {
+                totalLength += segment.Length;
+            } else {// has overlap
+                totalLength += nextPos - pos;
+                overlap = true;
+            }
+            pos = nextPos;
+        }
+        return overlap ? totalLength : -1;
+    }
+}
@@ -9,10 +9,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
@@ -65,22 +62,6 @@ import org.gusdb.fgputil.db.pool.SimpleDbConfig;
  */
 public class UpdateSimilarityPlugin implements Plugin {
 
-    private class Segment implements Comparable<Segment> {
-        public int Start;
-        public int Length;
-
-        Segment(int start, int length) {
-            Start = start;
-            Length = length;
-        }
-
-        @Override
-        public int compareTo(Segment o) {
-            int startDiff = this.Start - o.Start;
-            return (startDiff == 0) ? (o.Length - this.Length) : startDiff;
-        }
-    }
-
     private static final Logger LOG = Logger.getLogger(UpdateSimilarityPlugin.class);
 
     private ConnectionPoolConfig _dbConfig;
@@ -104,80 +85,21 @@ public class UpdateSimilarityPlugin implements Plugin {
             Map<String, Integer> lengthMap = getLengthMap(connection);
 
             LOG.info("Updating non-overlap match lengths...");
-            String line = null, queryId = null, subjectId = null;
-            boolean useQuery = true;
-            List<Segment> segments = null;
-            int updateCount = 0;
+            BatchUpdater updater = new BatchUpdater(psUpdate);
+            SimilarityParser parser = new SimilarityParser(lengthMap, updater);
+            String line = null;
             int lineCount = 0;
             while ((line = reader.readLine()) != null) {
                 lineCount++;
                 if (lineCount % 100000 == 0)
                     LOG.debug("Read " + lineCount + " lines.");
 
-                line = line.trim();
-                if (line.startsWith(">")) {
-                    // update previous query-subjet
-                    if (segments != null && segments.size() > 1)
-                        if (update(queryId, subjectId, segments, psUpdate)) {
-                            updateCount++;
-                            if (updateCount % 1000 == 0) {
-                                psUpdate.executeBatch();
-                                LOG.info(updateCount + " pairs updated.");
-                            }
-                        }
-
-                    // get next query id
-                    queryId = line.substring(1, line.indexOf('(')).trim();
-                    subjectId = null;
-                    segments = null;
-                } else if (line.startsWith("Sum")) {
-                    // update previous query-subject
-                    if (segments != null && segments.size() > 1)
-                        if (update(queryId, subjectId, segments, psUpdate)) {
-                            updateCount++;
-                            if (updateCount % 1000 == 0) {
-                                psUpdate.executeBatch();
-                                LOG.info(updateCount + " pairs updated.");
-                            }
-                        }
-
-                    // get next subject
-                    String[] parts = line.split(":");
-                    subjectId = parts[1].trim();
-                    segments = null;
-                    int matchCount = Integer.parseInt(parts[8].trim());
-                    // only update the pairs with more than one match
-                    if (matchCount > 1) {
-                        int queryLength = lengthMap.get(queryId);
-                        int subjectLength = lengthMap.get(subjectId);
-                        useQuery = (queryLength >= subjectLength);
-                        segments = new ArrayList<Segment>();
-                    }
-                } else if (line.startsWith("HSP")) {
-                    if (segments != null) {
-                        String[] parts = line.split(":");
-                        int start, end;
-                        if (useQuery) {
-                            start = Integer.parseInt(parts[9]);
-                            end = Integer.parseInt(parts[10]);
-                        } else {
-                            start = Integer.parseInt(parts[7]);
-                            end = Integer.parseInt(parts[8]);
-                        }
-                        segments.add(new Segment(start, end - start + 1));
-                    }
-                }
+                parser.parseLine(line);
             }
-            if (segments != null && segments.size() > 1)
-                if (update(queryId, subjectId, segments, psUpdate)) {
-                    updateCount++;
-                    if (updateCount % 1000 == 0) {
-                        psUpdate.executeBatch();
-                        LOG.info(updateCount + " pairs updated.");
-                    }
-                }
+            parser.finish();
 
             // commit remaining updates
+            int updateCount = updater.updateCount;
             if (updateCount % 1000 != 0) psUpdate.executeBatch();
             LOG.info("Total " + updateCount + " rows updated.");
             
@@ -233,34 +155,33 @@ public class UpdateSimilarityPlugin implements Plugin {
         }
     }
 
-    private boolean update(String queryId, String subjectId,
-            List<Segment> segments, PreparedStatement psUpdate)
-            throws SQLException {
-        Collections.sort(segments);
-        int totalLength = 0;
-        int pos = 0;
-        boolean overlap = false;
-        for (Segment segment : segments) {
-            int nextPos = segment.Start + segment.Length;
-            if (nextPos <= pos) continue;
+    /**
+     * Adds the update of each pair with overlapping segments to the batch, and executes the batch every
+     * 1000 pairs.
+     */
+    private static class BatchUpdater implements SimilarityParser.PairHandler {
 
-            if (segment.Start >= pos) {
-                totalLength += segment.Length;
-            } else {// has overlap
-                totalLength += nextPos - pos;
-                overlap = true;
-            }
-            pos = nextPos;
+        private final PreparedStatement psUpdate;
+        private int updateCount;
+
+        BatchUpdater(PreparedStatement psUpdate) {
+            this.psUpdate = psUpdate;
         }
-        if (overlap) {
+
+        @Override
+        public void handle(String queryId, String subjectId, int matchLength) throws SQLException {
             //logger.debug("Updating queryId: " + queryId + ", subjectId: "
-            //        + subjectId + ", match-length: " + totalLength);
+            //        + subjectId + ", match-length: " + matchLength);
 
-            psUpdate.setInt(1, totalLength);
+            psUpdate.setInt(1, matchLength);
             psUpdate.setInt(2, Integer.parseInt(queryId));
             psUpdate.setInt(3, Integer.parseInt(subjectId));
             psUpdate.addBatch();
+            updateCount++;
+            if (updateCount % 1000 == 0) {
+                psUpdate.executeBatch();
+                LOG.info(updateCount + " pairs updated.");
+            }
         }
-        return overlap;
     }
 }